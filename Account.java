@@ -1,31 +1,49 @@
-/**
- * Stores the account information.
- *
- * @author Angela Li
- *
- */
-public class Account {
-    public long accountNumber;
-    public String name;
-    public String address;
-    public double creditLimit;
-    public double balance;
-
-    /**
-     * Constructor for Account.
-     */
-    public Account() {
-        this.accountNumber = 0L;
-        this.name = "";
-        this.address = "";
-        this.creditLimit = 0D;
-        this.balance = 0D;
-    }
-
-    @Override
-    public String toString() {
-        return "Account " + accountNumber + "\n" + "name " + name + "\n" + "address " + address + "\n" + "creditLimit "
-                + creditLimit + "\n" + "balance " + balance;
-    }
-
-}
+/**
+ * Stores the account information.
+ *
+ * @author Angela Li
+ *
+ */
+public class Account {
+    public long accountNumber;
+    public String name;
+    public String address;
+    public long creditLimit; // in cents
+    public long balance; // in cents
+
+    /**
+     * Constructor for Account.
+     */
+    public Account() {
+        this.accountNumber = 0L;
+        this.name = "";
+        this.address = "";
+        this.creditLimit = 0L;
+        this.balance = 0L;
+    }
+
+    /**
+     * Overwrites every field, so one Account can be reused as the view of many
+     * accounts.
+     *
+     * @param accountNumber : unique number associated with the account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the account in cents.
+     * @param balance       : current balance of the account in cents.
+     */
+    public void set(long accountNumber, String name, String address, long creditLimit, long balance) {
+        this.accountNumber = accountNumber;
+        this.name = name;
+        this.address = address;
+        this.creditLimit = creditLimit;
+        this.balance = balance;
+    }
+
+    @Override
+    public String toString() {
+        return "Account " + accountNumber + "\n" + "name " + name + "\n" + "address " + address + "\n" + "creditLimit "
+                + Money.toDollars(creditLimit) + "\n" + "balance " + Money.toDollars(balance);
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Unchangeable copy of an account as it was at one moment. Unlike Account, it
+ * can be handed to other threads and kept while the database changes, and all
+ * of its fields always belong to the same state of the account.
+ *
+ * @author Angela Li
+ */
+public final class AccountRecord {
+    private final long accountNumber;
+    private final String name;
+    private final String address;
+    private final long creditLimit; // in cents
+    private final long balance; // in cents
+
+    /**
+     * Constructor for AccountRecord objects.
+     *
+     * @param accountNumber : unique number associated with the account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the account in cents.
+     * @param balance       : current balance of the account in cents.
+     */
+    public AccountRecord(long accountNumber, String name, String address, long creditLimit, long balance) {
+        this.accountNumber = accountNumber;
+        this.name = name;
+        this.address = address;
+        this.creditLimit = creditLimit;
+        this.balance = balance;
+    }
+
+    /**
+     * Constructor for AccountRecord objects copying an account.
+     *
+     * @param account : the account to copy.
+     */
+    public AccountRecord(Account account) {
+        this(account.accountNumber, account.name, account.address, account.creditLimit, account.balance);
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public double getCreditLimit() {
+        return Money.toDollars(creditLimit);
+    }
+
+    public double getBalance() {
+        return Money.toDollars(balance);
+    }
+
+    public long getCreditLimitCents() {
+        return creditLimit;
+    }
+
+    public long getBalanceCents() {
+        return balance;
+    }
+
+    /**
+     * Formats the account the same way as Account.toString, as getAccount returns
+     * it.
+     */
+    @Override
+    public String toString() {
+        return "Account " + accountNumber + "\n" + "name " + name + "\n" + "address " + address + "\n" + "creditLimit "
+                + Money.toDollars(creditLimit) + "\n" + "balance " + Money.toDollars(balance);
+    }
+}
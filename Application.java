@@ -1,81 +1,71 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Scanner;
-
-/**
- * Application being run by main.
- *
- * @author Angela Li
- */
-public class Application {
-    /**
-     * Parses a text file with operands that implement the CCDatabase interface and
-     * makes a database based on the structure.
-     *
-     * @param structure : Chosen structure type of CCDatabase
-     */
-    public void run(CCDatabase structure) {
-        Instant start = null;
-        Instant stop = null;
-        try {
-            String choice;
-            File tests = new File("src/Test4.txt");
-            Scanner input = new Scanner(tests);
-            long accountNumber;
-            String name;
-            String address;
-            double creditLimit;
-            double balance;
-            double price;
-            while (input.hasNextLine()) {
-                choice = input.nextLine();
-                switch (choice) {
-                    case "start":
-                        start = Instant.now();
-                        break;
-                    case "stop":
-                        stop = Instant.now();
-                        break;
-                    case "cre":
-                        accountNumber = Long.parseLong(input.nextLine());
-                        name = input.nextLine();
-                        address = input.nextLine();
-                        creditLimit = Double.valueOf(input.nextLine());
-                        balance = Double.valueOf(input.nextLine());
-                        structure.createAccount(accountNumber, name, address, creditLimit, balance);
-                        break;
-                    case "del":
-                        accountNumber = Long.parseLong(input.nextLine());
-                        structure.deleteAccount(accountNumber);
-                        break;
-                    case "lim":
-                        accountNumber = Long.parseLong(input.nextLine());
-                        creditLimit = Double.valueOf(input.nextLine());
-                        structure.adjustCreditLimit(accountNumber, creditLimit);
-                        break;
-                    case "pur":
-                        accountNumber = Long.parseLong(input.nextLine());
-                        price = Double.valueOf(input.nextLine());
-                        try {
-                            structure.makePurchase(accountNumber, price);
-                        } catch (Exception invalidFunds) {
-                            // invalidFunds.printStackTrace();
-                        }
-                        break;
-                    default:
-                        System.out.println("Invalid text commands: " + choice);
-                }
-            }
-            input.close();
-            long time = Duration.between(start, stop).toMillis();
-            System.out.println("Time: " + time);
-        } catch (FileNotFoundException notOpen) {
-            // notOpen.printStackTrace();
-            return;
-        }
-        return;
-    }
-
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Application being run by main.
+ *
+ * @author Angela Li
+ */
+public class Application {
+    /**
+     * Parses a text file with operands that implement the CCDatabase interface and
+     * makes a database based on the structure.
+     *
+     * @param structure : Chosen structure type of CCDatabase
+     */
+    public void run(CCDatabase structure) {
+        try {
+            long time = replay(structure, "src/Test4.txt");
+            System.out.println("Time: " + time);
+        } catch (IOException notOpen) {
+            // notOpen.printStackTrace();
+            return;
+        }
+        return;
+    }
+
+    /**
+     * Parses a text file of commands and applies every command to the given
+     * database.
+     *
+     * @param structure : Chosen structure type of CCDatabase
+     * @param fileName  : path of the command file.
+     * @return long : milliseconds between the start and stop commands of the file.
+     * @throws IOException : if the command file cannot be read.
+     */
+    public long replay(CCDatabase structure, String fileName) throws IOException {
+        Instant start = null;
+        Instant stop = null;
+        try (CommandReader input = new CommandReader(fileName)) {
+            CommandReader.Command choice;
+            while ((choice = input.next()) != null) {
+                switch (choice) {
+                    case START:
+                        start = Instant.now();
+                        break;
+                    case STOP:
+                        stop = Instant.now();
+                        break;
+                    case CREATE:
+                        structure.createAccount(input.getAccountNumber(), input.getName(), input.getAddress(),
+                                input.getCreditLimit(), input.getBalance());
+                        break;
+                    case DELETE:
+                        structure.deleteAccount(input.getAccountNumber());
+                        break;
+                    case LIMIT:
+                        structure.adjustCreditLimit(input.getAccountNumber(), input.getCreditLimit());
+                        break;
+                    case PURCHASE:
+                        structure.purchase(input.getAccountNumber(), input.getPrice());
+                        break;
+                    default:
+                        System.out.println("Invalid text commands: " + input.getText());
+                }
+            }
+        }
+        return Duration.between(start, stop).toMillis();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,1654 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.ref.Reference;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Replays the test command files against the database structures and reports
+ * the time and the heap used by each structure, then compares CCHash and
+ * CCPrimitiveHash holding a million accounts. Given one of these modes as its
+ * argument it runs that benchmark instead:
+ *
+ * contention : hammers CCStriped with purchases from several threads.
+ * reads      : checks that lock-free reads of CCStriped never see half of a change.
+ * latency    : compares the createAccount latencies of the two CCHash resize modes.
+ * churn      : watches the CCHash probe lengths under a long create and delete workload.
+ * parallel   : compares the sharded replay of ParallelReplay with the serial one.
+ * batch      : compares the batch operations with one call per account.
+ * decline    : times declined purchases with and without exceptions.
+ * metrics    : shows what CCMetrics costs and reports.
+ * wal        : times the durability modes of CCDurable and checks its recovery.
+ * snapshot   : compares restoring from a checkpoint with replaying the whole log, and
+ *              recovers from a crash after a checkpoint in every durability mode.
+ * offheap    : compares the heap and GC time of CCOffHeap with CCPrimitiveHash.
+ * money      : checks that long runs of small purchases add up exactly.
+ * text       : compares names and addresses in a StringArena with Account objects.
+ * index      : times CCIndexed against CCHash and its lookups against a scan.
+ * filter     : compares CCHash and CCSorted with and without a CCFiltered.
+ * adaptive   : runs scan, churn and lookup phases against CCAdaptive and its parts.
+ * search     : times the searches of CCSorted from 10^5 to 10^7 accounts.
+ * shards     : runs CCShardRouter against ShardServer processes on this machine.
+ * server     : replays the test files through CommandServer with CommandClient.
+ * ordered    : times random creates and deletes in the ordered structures.
+ *
+ * @author Angela Li
+ */
+public class Benchmark {
+
+    /**
+     * Runs the benchmark named by the first argument, or replays every command
+     * file given as an argument, or Test1.txt to Test3.txt if there are none,
+     * against each database structure.
+     *
+     * @param args : a mode from the class comment, or paths of command files.
+     */
+    public static void main(String[] args) {
+        switch (args.length > 0 ? args[0] : "") {
+            case "contention":
+                contention(Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "reads":
+                reads(Math.max(4, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "latency":
+                createLatency("CCHash", new CCHash(false));
+                createLatency("CCHash incremental", new CCHash(true));
+                break;
+            case "churn":
+                churn();
+                break;
+            case "parallel": {
+                int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    parallel(file, workers);
+                }
+                break;
+            }
+            case "batch":
+                batch("CCHash", new CCHash(), new CCHash());
+                batch("CCSorted", new CCSorted(), new CCSorted());
+                break;
+            case "decline":
+                declines("CCHash", new CCHash());
+                declines("CCPrimitiveHash", new CCPrimitiveHash());
+                declines("CCBTree", new CCBTree());
+                break;
+            case "metrics":
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    metrics(file);
+                }
+                break;
+            case "wal":
+                for (WriteAheadLog.Durability durability : WriteAheadLog.Durability.values()) {
+                    durable("Test1.txt", durability);
+                }
+                groupCommit(8);
+                break;
+            case "snapshot":
+                snapshot(500_000);
+                for (WriteAheadLog.Durability durability : WriteAheadLog.Durability.values()) {
+                    crash(durability, 100_000);
+                }
+                break;
+            case "offheap":
+                offHeap("CCPrimitiveHash", new CCPrimitiveHash(), 2_000_000);
+                offHeap("CCOffHeap", new CCOffHeap(), 2_000_000);
+                break;
+            case "money":
+                money("CCHash", new CCHash());
+                money("CCPrimitiveHash", new CCPrimitiveHash());
+                money("CCSorted", new CCSorted());
+                money("CCBTree", new CCBTree());
+                money("CCOffHeap", new CCOffHeap());
+                break;
+            case "text":
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    textFootprint(file);
+                }
+                break;
+            case "index":
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    index(file);
+                }
+                break;
+            case "filter":
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    filtered(file);
+                }
+                misses("CCHash", new CCHash(), new CCFiltered(new CCHash()));
+                misses("CCSorted", new CCSorted(), new CCFiltered(new CCSorted()));
+                break;
+            case "adaptive":
+                adaptive("CCHash", new CCHash());
+                adaptive("CCSorted", new CCSorted());
+                adaptive("CCAdaptive", new CCAdaptive());
+                break;
+            case "search":
+                for (int accounts = 100_000; accounts <= 10_000_000; accounts *= 10) {
+                    search(accounts);
+                }
+                break;
+            case "shards":
+                shards(3);
+                break;
+            case "server":
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    server(file);
+                }
+                break;
+            case "ordered":
+                for (int accounts = 12_500; accounts <= 100_000; accounts *= 2) {
+                    createAndDelete(accounts, "CCSorted", new CCSorted());
+                    createAndDelete(accounts, "CCBTree", new CCBTree());
+                }
+                break;
+            default:
+                String files[] = args;
+                if (files.length == 0) {
+                    files = new String[] { "Test1.txt", "Test2.txt", "Test3.txt" };
+                }
+                for (String file : files) {
+                    System.out.println(file);
+                    replay(file, "CCHash", new CCHash());
+                    replay(file, "CCPrimitiveHash", new CCPrimitiveHash());
+                    replay(file, "CCSorted", new CCSorted());
+                    replay(file, "CCBTree", new CCBTree());
+                }
+                liveSet("CCHash", new CCHash(), 1_000_000);
+                liveSet("CCPrimitiveHash", new CCPrimitiveHash(), 1_000_000);
+        }
+    }
+
+    /**
+     * Replays a command file into the given database and prints the time between
+     * the start and stop commands and the heap kept alive by the database.
+     *
+     * @param file      : path of the command file.
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to replay into.
+     */
+    private static void replay(String file, String label, CCDatabase structure) {
+        long before = usedHeap();
+        try {
+            long time = new Application().replay(structure, file);
+            long heap = usedHeap() - before;
+            System.out.println("  " + label + " time: " + time + " ms, heap: " + heap / 1024 + " KB");
+        } catch (IOException notOpen) {
+            System.out.println("  cannot open " + file);
+        }
+        Reference.reachabilityFence(structure); // the heap figure must include the structure
+    }
+
+    /**
+     * Creates many accounts, then makes a purchase on each of them in a random
+     * order, and prints both times and the heap the structure keeps after a full
+     * collection. The test files leave too few accounts alive for their heap
+     * figures to say much, so this is the comparison of the structures at size.
+     *
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     * @param accounts  : number of accounts to create.
+     */
+    private static void liveSet(String label, CCDatabase structure, int accounts) {
+        long numbers[] = new long[accounts];
+        Random random = new Random(11);
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+        }
+        long before = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            structure.createAccount(numbers[i], "name " + i, i + " Main Street", 5000, 0);
+        }
+        long created = System.nanoTime() - start;
+        long heap = usedHeap() - before;
+        for (int i = accounts - 1; i > 0; i--) { // purchases in another order than the creates
+            int j = random.nextInt(i + 1);
+            long swap = numbers[i];
+            numbers[i] = numbers[j];
+            numbers[j] = swap;
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            structure.purchase(numbers[i], 12.5);
+        }
+        long purchased = System.nanoTime() - start;
+        System.out.println(label + " " + accounts + " live accounts: create " + created / accounts
+                + " ns each, purchase " + purchased / accounts + " ns each, heap " + heap / (1024 * 1024) + " MB");
+        Reference.reachabilityFence(structure); // the heap figure must include the structure
+    }
+
+    /**
+     * Replays a command file serially and with ParallelReplay, and prints the
+     * times and whether both end in the same accounts.
+     *
+     * @param file    : path of the command file.
+     * @param workers : number of worker threads of the parallel replay.
+     */
+    private static void parallel(String file, int workers) {
+        try {
+            CCDatabase serial = new CCPrimitiveHash();
+            long serialTime = new Application().replay(serial, file);
+            ParallelReplay sharded = new ParallelReplay(workers, CCPrimitiveHash::new);
+            long parallelTime = sharded.replay(file);
+            long expected = ParallelReplay.checksum(serial);
+            long actual = ParallelReplay.checksum(sharded.getShards());
+            System.out.println(file + ": serial " + serialTime + " ms, " + workers + " workers " + parallelTime
+                    + " ms, checksums " + (expected == actual ? "match" : "differ") + " (" + Long.toHexString(actual)
+                    + ")");
+        } catch (IOException notOpen) {
+            System.out.println("cannot open " + file);
+        }
+    }
+
+    /**
+     * Creates 100,000 accounts, makes a million purchases and deletes the accounts
+     * again, once through the batch operations in batches of 4096 and once with a
+     * call per account, and prints the time of each.
+     *
+     * @param label  : name printed for the database structure.
+     * @param single : the empty database called once per account.
+     * @param batch  : an empty database of the same structure called per batch.
+     */
+    private static void batch(String label, CCDatabase single, CCDatabase batch) {
+        final int accounts = 100_000;
+        final int purchases = 1_000_000;
+        final int batchSize = 4096;
+        Random random = new Random(11);
+        long numbers[] = new long[accounts];
+        String names[] = new String[accounts];
+        double limits[] = new double[accounts];
+        double balances[] = new double[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+            names[i] = "name";
+            limits[i] = 5000;
+        }
+        long buyers[] = new long[purchases];
+        double prices[] = new double[purchases];
+        for (int i = 0; i < purchases; i++) {
+            buyers[i] = numbers[random.nextInt(accounts)];
+            prices[i] = 1 + random.nextInt(100);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            single.createAccount(numbers[i], names[i], names[i], limits[i], balances[i]);
+        }
+        long created = System.nanoTime();
+        for (int i = 0; i < purchases; i++) {
+            single.purchase(buyers[i], prices[i]);
+        }
+        long purchased = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            single.deleteAccount(numbers[i]);
+        }
+        long deleted = System.nanoTime();
+        System.out.println(label + " single: create " + (created - start) / 1_000_000 + " ms, purchase "
+                + (purchased - created) / 1_000_000 + " ms, delete " + (deleted - purchased) / 1_000_000 + " ms");
+
+        start = System.nanoTime();
+        for (int from = 0; from < accounts; from += batchSize) {
+            int to = Math.min(accounts, from + batchSize);
+            batch.createAccounts(Arrays.copyOfRange(numbers, from, to), Arrays.copyOfRange(names, from, to),
+                    Arrays.copyOfRange(names, from, to), Arrays.copyOfRange(limits, from, to),
+                    Arrays.copyOfRange(balances, from, to));
+        }
+        created = System.nanoTime();
+        for (int from = 0; from < purchases; from += batchSize) {
+            int to = Math.min(purchases, from + batchSize);
+            batch.makePurchases(Arrays.copyOfRange(buyers, from, to), Arrays.copyOfRange(prices, from, to));
+        }
+        purchased = System.nanoTime();
+        for (int from = 0; from < accounts; from += batchSize) {
+            batch.deleteAccounts(Arrays.copyOfRange(numbers, from, Math.min(accounts, from + batchSize)));
+        }
+        deleted = System.nanoTime();
+        System.out.println(label + " batch:  create " + (created - start) / 1_000_000 + " ms, purchase "
+                + (purchased - created) / 1_000_000 + " ms, delete " + (deleted - purchased) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Creates two million accounts with random account numbers and prints the
+     * latency percentiles of createAccount, which include the resizes.
+     *
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     */
+    private static void createLatency(String label, CCDatabase structure) {
+        final int accounts = 2_000_000;
+        Random random = new Random(42);
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < accounts; i++) {
+            long accountNumber = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+            long start = System.nanoTime();
+            structure.createAccount(accountNumber, "name", "address", 1000, 0);
+            histogram.record(System.nanoTime() - start);
+        }
+        System.out.println(label + ": " + histogram);
+    }
+
+    /**
+     * Keeps about 100,000 accounts in a CCHash while deleting a random account and
+     * creating a new one ten million times, and prints the probe length
+     * statistics after every million operations.
+     */
+    private static void churn() {
+        final int live = 100_000;
+        CCHash structure = new CCHash();
+        Random random = new Random(7);
+        long accounts[] = new long[live];
+        long next = 1_000_000_000_000_000L;
+        for (int i = 0; i < live; i++) {
+            accounts[i] = next;
+            structure.createAccount(next++, "name", "address", 1000, 0);
+        }
+        structure.resetProbeStatistics();
+        for (int round = 1; round <= 10; round++) {
+            for (int i = 0; i < 1_000_000; i++) {
+                int victim = random.nextInt(live);
+                structure.deleteAccount(accounts[victim]);
+                structure.getAccount(accounts[random.nextInt(live)] + 1); // usually a miss
+                accounts[victim] = next;
+                structure.createAccount(next, "name", "address", 1000, 0);
+                next += 1 + random.nextInt(1000);
+            }
+            System.out.println(round + "M: average probe " + Math.round(structure.getAverageProbeLength() * 100) / 100.0
+                    + ", max probe " + structure.getMaxProbeLength() + ", tombstones "
+                    + Math.round(structure.getTombstoneRatio() * 1000) / 10.0 + "%");
+            structure.resetProbeStatistics();
+        }
+    }
+
+    /**
+     * Creates the given number of accounts in random order and then deletes them
+     * in another random order, and prints the time of each half.
+     *
+     * @param accounts  : number of accounts.
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     */
+    private static void createAndDelete(int accounts, String label, CCDatabase structure) {
+        Random random = new Random(accounts);
+        long numbers[] = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            structure.createAccount(numbers[i], "name", "address", 1000, 0);
+        }
+        long created = System.nanoTime();
+        for (int i = accounts - 1; i > 0; i--) { // shuffle for the deletes
+            int j = random.nextInt(i + 1);
+            long swap = numbers[i];
+            numbers[i] = numbers[j];
+            numbers[j] = swap;
+        }
+        for (int i = 0; i < accounts; i++) {
+            structure.deleteAccount(numbers[i]);
+        }
+        long deleted = System.nanoTime();
+        System.out.println(label + " " + accounts + " accounts: create " + (created - start) / 1_000_000
+                + " ms, delete " + (deleted - created) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Replays a command file into a CCHash with and without CCMetrics around it,
+     * prints both times, and prints the metrics after the last run.
+     *
+     * @param file : path of the command file.
+     */
+    private static void metrics(String file) {
+        try {
+            long plain = 0;
+            long measured = 0;
+            CCMetrics metrics = null;
+            for (int round = 0; round < 5; round++) {
+                plain = new Application().replay(new CCHash(), file);
+                metrics = new CCMetrics(new CCHash());
+                measured = new Application().replay(metrics, file);
+            }
+            System.out.println(file + ": CCHash " + plain + " ms, with metrics " + measured + " ms");
+            System.out.print(metrics.toPrometheus());
+        } catch (IOException notOpen) {
+            System.out.println("cannot open " + file);
+        }
+    }
+
+    /**
+     * Replays a command file into a CCHash behind a write-ahead log, then recovers
+     * the log into a CCSorted, once as written and once with a torn record at its
+     * end, and prints the time and the number of forces. Throws if a recovery
+     * differs from the accounts that were logged.
+     *
+     * @param file       : path of the command file.
+     * @param durability : durability mode of the log.
+     */
+    private static void durable(String file, WriteAheadLog.Durability durability) {
+        try {
+            Path logFile = Files.createTempFile("ccdb", ".wal");
+            CCHash memory = new CCHash();
+            long time;
+            long records;
+            long syncs;
+            try (CCDurable structure = new CCDurable(memory, logFile.toString(), durability)) {
+                time = new Application().replay(structure, file);
+                records = structure.getLog().getRecordCount();
+                syncs = structure.getLog().getSyncCount();
+            }
+            long expected = ParallelReplay.checksum(memory);
+            long length = Files.size(logFile);
+            try {
+                CCSorted recovered = new CCSorted();
+                WriteAheadLog.replay(logFile.toString(), recovered);
+                if (ParallelReplay.checksum(recovered) != expected) {
+                    throw new IllegalStateException(durability + ": the recovered accounts differ from the logged "
+                            + "ones");
+                }
+
+                Files.write(logFile, new byte[] { 40, 0, 0, 0, 1, 2 }, StandardOpenOption.APPEND); // torn record
+                CCSorted reopened = new CCSorted();
+                new CCDurable(reopened, logFile.toString(), WriteAheadLog.Durability.NONE).close();
+                if (ParallelReplay.checksum(reopened) != expected || Files.size(logFile) != length) {
+                    throw new IllegalStateException(durability + ": a torn record at the end of the log was not "
+                            + "dropped");
+                }
+            } catch (IOException notRecovered) {
+                throw new IllegalStateException(durability + ": the log could not be recovered", notRecovered);
+            }
+            Files.delete(logFile);
+            System.out.println(durability + ": " + time + " ms, " + records + " records in " + length / 1024
+                    + " KB, " + syncs + " forces, recovery matches, torn tail dropped");
+        } catch (IOException notOpen) {
+            System.out.println("cannot replay " + file + ": " + notOpen);
+        }
+    }
+
+    /**
+     * Fills a database behind a write-ahead log, takes a checkpoint, makes a
+     * purchase per account, and then times three ways back: replaying a log of
+     * the whole history, written by the same changes without a checkpoint, and
+     * loading the snapshot plus the log started after it into a CCHash and into a
+     * CCSorted.
+     *
+     * @param accounts : number of accounts created.
+     */
+    private static void snapshot(int accounts) {
+        try {
+            Path historyFile = Files.createTempFile("ccdb", ".wal");
+            Path directory = Files.createTempDirectory("ccdb");
+            String logFile = directory.resolve("log").toString();
+            String snapshotFile = directory.resolve("snapshot").toString();
+            CCHash withoutCheckpoint = new CCHash();
+            try (CCDurable history = new CCDurable(withoutCheckpoint, historyFile.toString(),
+                    WriteAheadLog.Durability.NONE)) {
+                checkpointed(history, accounts, false);
+            }
+            CCHash original = new CCHash();
+            String tailFile;
+            try (CCDurable structure = new CCDurable(original, logFile, snapshotFile, WriteAheadLog.Durability.NONE)) {
+                checkpointed(structure, accounts, true);
+                tailFile = structure.getLogFile();
+            }
+            long expected = ParallelReplay.checksum(original);
+            if (ParallelReplay.checksum(withoutCheckpoint) != expected) {
+                throw new IllegalStateException("the changes with and without a checkpoint differ");
+            }
+            System.out.println("whole log " + Files.size(historyFile) / 1024 + " KB, snapshot "
+                    + Files.size(Paths.get(snapshotFile)) / 1024 + " KB and log after it "
+                    + Files.size(Paths.get(tailFile)) / 1024 + " KB");
+
+            long start = System.nanoTime();
+            CCHash replayed = new CCHash();
+            WriteAheadLog.replay(historyFile.toString(), replayed);
+            long replayTime = (System.nanoTime() - start) / 1_000_000;
+            if (ParallelReplay.checksum(replayed) != expected) {
+                throw new IllegalStateException("CCHash differs after a full log replay");
+            }
+            System.out.println("CCHash full log replay: " + replayTime + " ms");
+            replayed = null;
+
+            CCDatabase targets[] = { new CCHash(), new CCSorted() };
+            String labels[] = { "CCHash", "CCSorted" };
+            for (int i = 0; i < targets.length; i++) {
+                start = System.nanoTime();
+                new CCDurable(targets[i], logFile, snapshotFile, WriteAheadLog.Durability.NONE).close();
+                long time = (System.nanoTime() - start) / 1_000_000;
+                if (ParallelReplay.checksum(targets[i]) != expected) {
+                    throw new IllegalStateException(labels[i] + " differs after loading the snapshot and log tail");
+                }
+                System.out.println(labels[i] + " snapshot and log tail: " + time + " ms");
+                targets[i] = null;
+            }
+            Files.delete(historyFile);
+            Files.delete(Paths.get(tailFile));
+            Files.delete(Paths.get(snapshotFile));
+            Files.delete(directory);
+        } catch (IOException notRecovered) {
+            throw new IllegalStateException("the snapshot could not be written or restored", notRecovered);
+        }
+    }
+
+    /**
+     * Creates accounts through a CCDurable and makes a purchase per account on
+     * random accounts, the same ones on every call, with a timed checkpoint in
+     * between if asked for.
+     *
+     * @param structure  : the empty database.
+     * @param accounts   : number of accounts created.
+     * @param checkpoint : whether to take a checkpoint after the creates.
+     * @throws IOException : if the checkpoint cannot be written.
+     */
+    private static void checkpointed(CCDurable structure, int accounts, boolean checkpoint) throws IOException {
+        Random random = new Random(5);
+        long numbers[] = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+            structure.createAccount(numbers[i], "name " + i, i + " Main Street", 5000, 0);
+        }
+        if (checkpoint) {
+            long start = System.nanoTime();
+            structure.checkpoint();
+            System.out.println("checkpoint of " + accounts + " accounts: " + (System.nanoTime() - start) / 1_000_000
+                    + " ms");
+        }
+        for (int i = 0; i < accounts; i++) {
+            structure.purchase(numbers[random.nextInt(accounts)], 1 + random.nextInt(100));
+        }
+    }
+
+    /**
+     * Takes a checkpoint while other threads keep making purchases and opens a
+     * copy of the files as a crash right after it would leave them, which has to
+     * hold every account. Then takes a checkpoint with nothing running and checks
+     * that a crash right after it recovers exactly the accounts of the checkpoint.
+     *
+     * @param durability : durability mode of the log.
+     * @param accounts   : number of accounts created.
+     */
+    private static void crash(WriteAheadLog.Durability durability, int accounts) {
+        try {
+            Path directory = Files.createTempDirectory("ccdb");
+            Path copies = Files.createTempDirectory("ccdb");
+            CCHash memory = new CCHash();
+            CCDurable structure = new CCDurable(memory, directory.resolve("log").toString(),
+                    directory.resolve("snapshot").toString(), durability);
+            for (int first = 1; first <= accounts; first += 1000) {
+                int count = Math.min(1000, accounts - first + 1);
+                long numbers[] = new long[count];
+                String texts[] = new String[count];
+                double limits[] = new double[count];
+                for (int i = 0; i < count; i++) {
+                    numbers[i] = first + i;
+                    texts[i] = "account " + (first + i);
+                    limits[i] = 1_000_000;
+                }
+                structure.createAccounts(numbers, texts, texts, limits, new double[count]);
+            }
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread workers[] = new Thread[4];
+            for (int t = 0; t < workers.length; t++) {
+                final long seed = t;
+                workers[t] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    while (running.get()) {
+                        structure.purchase(1 + random.nextInt(accounts), 1 + random.nextInt(100));
+                    }
+                });
+                workers[t].start();
+            }
+            CCHash busy;
+            try {
+                Thread.sleep(20);
+                structure.checkpoint();
+                busy = recoverCopy(directory, copies, structure);
+            } finally {
+                running.set(false);
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+            int recoveredAccounts = 0;
+            for (Iterator<Account> all = busy.scan(Long.MIN_VALUE, Long.MAX_VALUE); all.hasNext(); all.next()) {
+                recoveredAccounts++;
+            }
+            if (recoveredAccounts != accounts) {
+                throw new IllegalStateException(durability + ": " + recoveredAccounts + " of " + accounts
+                        + " accounts recovered after a crash during a checkpoint");
+            }
+
+            structure.checkpoint();
+            long expected = ParallelReplay.checksum(memory);
+            CCHash quiet = recoverCopy(directory, copies, structure);
+            if (ParallelReplay.checksum(quiet) != expected) {
+                throw new IllegalStateException(durability + ": the accounts recovered after a crash differ from "
+                        + "the checkpoint");
+            }
+            structure.close();
+            Files.delete(Paths.get(structure.getLogFile()));
+            Files.delete(directory.resolve("snapshot"));
+            Files.delete(directory);
+            Files.delete(copies);
+            System.out.println(durability + ": crash after a checkpoint recovers " + accounts + " accounts");
+        } catch (IOException lost) {
+            throw new IllegalStateException(durability + ": recovery after a crash failed", lost);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copies the snapshot and the current log of a database that is still open, as
+     * a crash of the machine would leave them on disk, and recovers the copies into
+     * a new CCHash. The copy of the log loses every record that is not forced yet.
+     *
+     * @param directory : the directory holding the snapshot, named snapshot, and
+     *                  the logs, named after log.
+     * @param copies    : an empty directory for the copies, emptied again after.
+     * @param structure : the open database.
+     * @return CCHash : the recovered accounts.
+     * @throws IOException : if the files cannot be copied or recovered.
+     */
+    private static CCHash recoverCopy(Path directory, Path copies, CCDurable structure) throws IOException {
+        Path logFile = Paths.get(structure.getLogFile());
+        long forced = structure.getLog().getForcedPosition();
+        Path logCopy = copies.resolve(logFile.getFileName());
+        Files.copy(directory.resolve("snapshot"), copies.resolve("snapshot"));
+        Files.copy(logFile, logCopy);
+        try (FileChannel log = FileChannel.open(logCopy, StandardOpenOption.WRITE)) {
+            log.truncate(forced);
+        }
+        CCHash recovered = new CCHash();
+        try {
+            new CCDurable(recovered, copies.resolve("log").toString(), copies.resolve("snapshot").toString(),
+                    WriteAheadLog.Durability.NONE).close();
+        } finally {
+            Files.delete(logCopy);
+            Files.delete(copies.resolve("snapshot"));
+        }
+        return recovered;
+    }
+
+    /**
+     * Creates the given number of accounts with distinct names and prints the
+     * time, the heap kept alive by the database, and how long a full garbage
+     * collection takes with the database alive.
+     *
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     * @param accounts  : number of accounts.
+     */
+    private static void offHeap(String label, CCDatabase structure, int accounts) {
+        long before = usedHeap();
+        Random random = new Random(9);
+        long start = System.nanoTime();
+        for (int i = 0; i < accounts; i++) {
+            long number = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+            structure.createAccount(number, "name " + i, i + " Main Street", 5000, 0);
+        }
+        long created = System.nanoTime();
+        long heap = usedHeap() - before;
+        long collectStart = System.nanoTime();
+        System.gc();
+        long collect = System.nanoTime() - collectStart;
+        System.out.println(label + " " + accounts + " accounts: create " + (created - start) / 1_000_000
+                + " ms, heap " + heap / (1024 * 1024) + " MB, full GC " + collect / 1_000_000 + " ms");
+        Reference.reachabilityFence(structure);
+    }
+
+    /**
+     * Makes purchases from several threads on a CCStriped behind a write-ahead log
+     * in GROUP mode and prints how many records shared each force.
+     *
+     * @param threads : number of purchasing threads.
+     */
+    private static void groupCommit(int threads) {
+        int purchasesPerThread = 2_000;
+        try {
+            Path logFile = Files.createTempFile("ccdb", ".wal");
+            try (CCDurable structure = new CCDurable(new CCStriped(), logFile.toString(),
+                    WriteAheadLog.Durability.GROUP)) {
+                for (int i = 0; i < 1000; i++) {
+                    structure.createAccount(i, "name", "address", 1_000_000, 0);
+                }
+                long syncsBefore = structure.getLog().getSyncCount();
+                long recordsBefore = structure.getLog().getRecordCount();
+                Thread workers[] = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    final long seed = t;
+                    workers[t] = new Thread(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < purchasesPerThread; i++) {
+                            structure.purchase(random.nextInt(1000), 1 + random.nextInt(100));
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (Thread worker : workers) {
+                    worker.start();
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                long records = structure.getLog().getRecordCount() - recordsBefore;
+                long syncs = structure.getLog().getSyncCount() - syncsBefore;
+                System.out.println("GROUP " + threads + " threads: " + records + " purchases in " + millis + " ms, "
+                        + syncs + " forces, " + records / Math.max(1, syncs) + " records per force");
+            } finally {
+                Files.delete(logFile);
+            }
+        } catch (IOException notOpen) {
+            System.out.println("cannot write the log: " + notOpen);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Makes purchases that are almost all over the credit limit, once through
+     * makePurchase, which throws for every decline, and once through purchase,
+     * which returns a result code, and prints the time of both.
+     *
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     */
+    private static void declines(String label, CCDatabase structure) {
+        int accounts = 100_000;
+        int purchases = 2_000_000;
+        Random random = new Random(3);
+        for (int i = 0; i < accounts; i++) {
+            structure.createAccount(i, "name", "address", 100, 0);
+        }
+        long buyers[] = new long[purchases];
+        double prices[] = new double[purchases];
+        for (int i = 0; i < purchases; i++) {
+            buyers[i] = random.nextInt(accounts);
+            prices[i] = 100 + random.nextInt(100); // at or over every limit
+        }
+        for (int round = 0; round < 3; round++) {
+            int declined = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < purchases; i++) {
+                try {
+                    structure.makePurchase(buyers[i], prices[i]);
+                } catch (Exception invalidFunds) {
+                    declined++;
+                }
+            }
+            long thrown = System.nanoTime();
+            for (int i = 0; i < purchases; i++) {
+                if (structure.purchase(buyers[i], prices[i]) == CCDatabase.DECLINED_OVER_LIMIT) {
+                    declined++;
+                }
+            }
+            long returned = System.nanoTime();
+            System.out.println(label + " " + declined / 2 + " declines: exception " + (thrown - start) / 1_000_000
+                    + " ms, result code " + (returned - thrown) / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * Creates the accounts of the create commands of a command file in a database.
+     *
+     * @param structure : the empty database to fill.
+     * @param file      : path of the command file.
+     * @return Account[] : every account of the database afterwards, by account number.
+     * @throws IOException : if the command file cannot be read.
+     */
+    private static Account[] load(CCDatabase structure, String file) throws IOException {
+        try (CommandReader input = new CommandReader(file)) {
+            CommandReader.Command command;
+            while ((command = input.next()) != null) {
+                if (command == CommandReader.Command.CREATE) {
+                    structure.createAccount(input.getAccountNumber(), input.getName(), input.getAddress(),
+                            input.getCreditLimit(), input.getBalance());
+                }
+            }
+        }
+        ArrayList<Account> accounts = new ArrayList<>();
+        Iterator<Account> all = structure.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+        while (all.hasNext()) {
+            accounts.add(all.next());
+        }
+        return accounts.toArray(new Account[0]);
+    }
+
+    /**
+     * Keeps the accounts created by a command file once as Account objects, the
+     * way CCSorted and CCBTree hold them, and once as primitive arrays with the
+     * names and addresses in a StringArena, the way CCPrimitiveHash holds them,
+     * and prints the heap per account of both and the time to rebuild every text.
+     *
+     * @param file : path of the command file.
+     */
+    private static void textFootprint(String file) {
+        Account loaded[];
+        try {
+            loaded = load(new CCBTree(), file);
+        } catch (IOException notOpen) {
+            System.out.println("cannot open " + file);
+            return;
+        }
+        int count = loaded.length;
+
+        usedHeap(); // the first round does not free everything the reader left behind
+        long before = usedHeap();
+        Account accounts[] = new Account[count];
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new Account();
+            accounts[i].accountNumber = loaded[i].accountNumber;
+            accounts[i].name = new String(loaded[i].name.toCharArray()); // a copy, as each account reads its own
+            accounts[i].address = new String(loaded[i].address.toCharArray());
+        }
+        long objects = usedHeap() - before;
+
+        before = usedHeap();
+        StringArena text = new StringArena();
+        long numbers[] = new long[count];
+        long limits[] = new long[count];
+        long balances[] = new long[count];
+        int nameReferences[] = new int[count];
+        int addressReferences[] = new int[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = loaded[i].accountNumber;
+            nameReferences[i] = text.add(loaded[i].name);
+            addressReferences[i] = text.add(loaded[i].address);
+        }
+        long arena = usedHeap() - before;
+
+        long start = System.nanoTime();
+        long characters = 0;
+        for (int i = 0; i < count; i++) {
+            String name = text.get(nameReferences[i]);
+            String address = text.get(addressReferences[i]);
+            if (!name.equals(loaded[i].name) || !address.equals(loaded[i].address)) {
+                throw new IllegalStateException("StringArena changed the text of account " + loaded[i].accountNumber);
+            }
+            characters += name.length() + address.length();
+        }
+        long rebuild = System.nanoTime() - start;
+        System.out.println(file + " " + count + " accounts: Account objects " + objects / count
+                + " B/account, StringArena " + arena / count + " B/account (" + text.getSize() / count
+                + " B of codes, " + text.getWordCount() + " distinct words), rebuild " + rebuild / count
+                + " ns/account for " + characters / count + " characters");
+        Reference.reachabilityFence(accounts);
+        Reference.reachabilityFence(numbers);
+        Reference.reachabilityFence(limits);
+        Reference.reachabilityFence(balances);
+    }
+
+    /**
+     * Creates the accounts of a command file in a CCHash with and without
+     * CCIndexed around it, looks up names and addresses through the indexes and
+     * through a scan of every account, and deletes the accounts again. Prints the
+     * time per create, delete and lookup, and checks that both lookups agree.
+     *
+     * @param file : path of the command file.
+     */
+    private static void index(String file) {
+        Account loaded[];
+        try {
+            loaded = load(new CCBTree(), file);
+        } catch (IOException notOpen) {
+            System.out.println("cannot open " + file);
+            return;
+        }
+        int count = loaded.length;
+
+        long plain[] = new long[2];
+        long indexed[] = new long[2];
+        CCIndexed structure = null;
+        for (int round = 0; round < 3; round++) { // the last round is measured, the others warm up
+            CCDatabase databases[] = { new CCHash(), new CCIndexed(new CCHash()) };
+            for (int d = 0; d < databases.length; d++) {
+                long times[] = d == 0 ? plain : indexed;
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    databases[d].createAccount(loaded[i].accountNumber, loaded[i].name, loaded[i].address, 1000, 0);
+                }
+                times[0] = System.nanoTime() - start;
+                if (round == 2 && d == 1) {
+                    structure = (CCIndexed) databases[d];
+                    break; // keeps the indexed accounts for the lookups
+                }
+                start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    databases[d].deleteAccount(loaded[i].accountNumber);
+                }
+                times[1] = System.nanoTime() - start;
+            }
+        }
+
+        Random random = new Random(9);
+        final int lookups = 1000;
+        final int scans = 20;
+        long indexTime = 0;
+        long scanTime = 0;
+        long matches = 0;
+        for (int i = 0; i < lookups; i++) {
+            int pick = random.nextInt(count);
+            boolean prefix = i % 2 == 1;
+            boolean byName = i % 4 < 2;
+            String text = byName ? loaded[pick].name : loaded[pick].address;
+            if (prefix) {
+                text = text.substring(0, Math.min(4, text.length()));
+            }
+            long start = System.nanoTime();
+            long found[];
+            if (byName) {
+                found = prefix ? structure.findByNamePrefix(text, Integer.MAX_VALUE) : structure.findByName(text);
+            } else {
+                found = prefix ? structure.findByAddressPrefix(text, Integer.MAX_VALUE)
+                        : structure.findByAddress(text);
+            }
+            indexTime += System.nanoTime() - start;
+            matches += found.length;
+            if (i < scans) {
+                start = System.nanoTime();
+                int scanned = 0;
+                Iterator<Account> accounts = structure.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+                while (accounts.hasNext()) {
+                    Account current = accounts.next();
+                    String value = byName ? current.name : current.address;
+                    if (prefix ? value.startsWith(text) : value.equals(text)) {
+                        scanned++;
+                    }
+                }
+                scanTime += System.nanoTime() - start;
+                if (scanned != found.length) {
+                    throw new IllegalStateException("CCIndexed found " + found.length + " accounts for \"" + text
+                            + "\" where a scan finds " + scanned);
+                }
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            structure.deleteAccount(loaded[i].accountNumber);
+        }
+        indexed[1] = System.nanoTime() - start;
+        if (structure.getNameCount() != 0 || structure.getAddressCount() != 0) {
+            throw new IllegalStateException("CCIndexed kept index entries of deleted accounts");
+        }
+        System.out.println(file + " " + count + " accounts: create " + plain[0] / count + " -> " + indexed[0] / count
+                + " ns, delete " + plain[1] / count + " -> " + indexed[1] / count
+                + " ns with indexes (longest posting list " + structure.getLongestPostings() + "), lookup "
+                + indexTime / lookups / 1000 + " us (" + matches / lookups + " matches) against scan "
+                + scanTime / scans / 1000 + " us");
+    }
+
+    /**
+     * Replays a command file into CCHash and CCSorted with and without a
+     * CCFiltered in front, and prints the times and how many lookups of absent
+     * accounts the filter answered.
+     *
+     * @param file : path of the command file.
+     */
+    private static void filtered(String file) {
+        try {
+            StringBuilder line = new StringBuilder(file);
+            for (int round = 0; round < 2; round++) { // the first round warms up
+                line.setLength(file.length());
+                CCFiltered filteredHash = new CCFiltered(new CCHash());
+                CCFiltered filteredSorted = new CCFiltered(new CCSorted());
+                long hash = new Application().replay(new CCHash(), file);
+                long hashFiltered = new Application().replay(filteredHash, file);
+                long sorted = new Application().replay(new CCSorted(), file);
+                long sortedFiltered = new Application().replay(filteredSorted, file);
+                line.append(": CCHash ").append(hash).append(" -> ").append(hashFiltered).append(" ms, CCSorted ")
+                        .append(sorted).append(" -> ").append(sortedFiltered).append(" ms with the filter, ")
+                        .append(filteredHash.getRejectedCount()).append(" absent lookups rejected, ")
+                        .append(filteredHash.getFalsePositiveCount()).append(" false positives (")
+                        .append(Math.round(filteredHash.getFalsePositiveRate() * 10000) / 100.0).append("%)");
+                if (ParallelReplay.checksum(filteredHash) != ParallelReplay.checksum(filteredSorted)) {
+                    throw new IllegalStateException("CCFiltered changed the result of " + file);
+                }
+            }
+            System.out.println(line);
+        } catch (IOException notOpen) {
+            System.out.println("cannot open " + file);
+        }
+    }
+
+    /**
+     * Creates 100,000 accounts and makes two million purchases on account numbers
+     * that do not exist, once straight into the database and once through a
+     * CCFiltered, and prints the time per purchase and the false positive rate.
+     *
+     * @param label    : name printed for the database structure.
+     * @param plain    : the empty database called directly.
+     * @param filtered : a CCFiltered in front of an empty database of the same
+     *                 structure.
+     */
+    private static void misses(String label, CCDatabase plain, CCFiltered filtered) {
+        final int accounts = 100_000;
+        final int purchases = 2_000_000;
+        Random random = new Random(11);
+        long numbers[] = new long[accounts];
+        long absent[] = new long[accounts];
+        String names[] = new String[accounts];
+        double limits[] = new double[accounts];
+        double balances[] = new double[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = random.nextLong() & Long.MAX_VALUE;
+            absent[i] = random.nextLong() & Long.MAX_VALUE;
+            names[i] = "owner";
+            limits[i] = 1000;
+        }
+        plain.createAccounts(numbers, names, names, limits, balances);
+        filtered.createAccounts(numbers, names, names, limits, balances);
+        long times[] = new long[2];
+        for (int round = 0; round < 3; round++) { // the last round is measured
+            CCDatabase databases[] = { plain, filtered };
+            for (int d = 0; d < databases.length; d++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < purchases; i++) {
+                    if (databases[d].purchase(absent[i % accounts], 1) != CCDatabase.NO_SUCH_ACCOUNT) {
+                        throw new IllegalStateException(label + " found an account that does not exist");
+                    }
+                }
+                times[d] = System.nanoTime() - start;
+            }
+        }
+        System.out.println(label + " " + accounts + " accounts, purchases on absent accounts: " + times[0] / purchases
+                + " -> " + times[1] / purchases + " ns with the filter (" + filtered.getFilter().getSize() / accounts
+                + " B/account, false positive rate "
+                + Math.round(filtered.getFalsePositiveRate() * 10000) / 100.0 + "%)");
+    }
+
+    /**
+     * Times two million lookups, half of them for absent accounts, in a sorted
+     * array of the given number of accounts with each search CCSorted has had or
+     * was measured with: the recursive search over the Account references, the
+     * branchless search over the dense account numbers, an Eytzinger search, and
+     * the search through fences, and then through CCSorted.readAccount, which
+     * also fetches the account after the search.
+     *
+     * @param accounts : number of accounts.
+     */
+    private static void search(int accounts) {
+        final int lookups = 2_000_000;
+        Random random = new Random(accounts);
+        Account sorted[] = new Account[accounts];
+        for (int i = 0; i < accounts; i++) { // made in random order, as creates would
+            sorted[i] = new Account();
+            sorted[i].accountNumber = 2 * (random.nextLong() & 0x3FFFFFFFFFFFFFFFL);
+            sorted[i].name = "owner";
+            sorted[i].address = "address";
+        }
+        Arrays.sort(sorted, (left, right) -> Long.compare(left.accountNumber, right.accountNumber));
+        long keys[] = new long[accounts];
+        String names[] = new String[accounts];
+        long zeros[] = new long[accounts];
+        for (int i = 0; i < accounts; i++) {
+            keys[i] = sorted[i].accountNumber;
+            names[i] = sorted[i].name;
+        }
+        long tree[] = new long[accounts + 1];
+        int ranks[] = new int[accounts + 1];
+        eytzinger(keys, accounts, tree, ranks);
+        long fences[] = CCSorted.fences(keys, accounts);
+        long targets[] = new long[lookups];
+        for (int i = 0; i < lookups; i++) {
+            targets[i] = keys[random.nextInt(accounts)] + (i & 1); // odd numbers are absent
+        }
+
+        long times[] = new long[5];
+        long found[] = new long[5];
+        for (int round = 0; round < 3; round++) { // the last round is measured
+            Arrays.fill(found, 0);
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int place = recursiveSearch(sorted, 0, accounts, targets[i]);
+                found[0] += place < accounts && sorted[place].accountNumber == targets[i] ? 1 : 0;
+            }
+            times[0] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int place = CCSorted.lowerBound(keys, 0, accounts, targets[i]);
+                found[1] += place < accounts && keys[place] == targets[i] ? 1 : 0;
+            }
+            times[1] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int place = ranks[eytzingerSearch(tree, accounts, targets[i])];
+                found[2] += place < accounts && keys[place] == targets[i] ? 1 : 0;
+            }
+            times[2] = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                int place = CCSorted.blockedSearch(keys, accounts, fences, targets[i]);
+                found[3] += place < accounts && keys[place] == targets[i] ? 1 : 0;
+            }
+            times[3] = System.nanoTime() - start;
+        }
+        sorted = null; // makes room for the accounts of the CCSorted
+        tree = null;
+        CCSorted structure = new CCSorted();
+        structure.load(keys, names, names, zeros, zeros);
+        Account view = new Account();
+        for (int round = 0; round < 3; round++) {
+            found[4] = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                found[4] += structure.readAccount(targets[i], view) ? 1 : 0;
+            }
+            times[4] = System.nanoTime() - start;
+        }
+        for (long count : found) {
+            if (count != lookups / 2) {
+                throw new IllegalStateException("the searches disagree on " + accounts + " accounts");
+            }
+        }
+        System.out.println(accounts + " accounts: recursive over Account " + times[0] / lookups
+                + " ns, branchless over long[] " + times[1] / lookups + " ns, Eytzinger " + times[2] / lookups
+                + " ns, fences " + times[3] / lookups + " ns, CCSorted.readAccount " + times[4] / lookups + " ns");
+    }
+
+    /**
+     * The recursive search CCSorted used before it kept the account numbers in
+     * their own array, kept as the baseline of the search benchmark.
+     *
+     * @param databaseSorted : accounts in increasing order of account number.
+     * @param start          : starting point for the search.
+     * @param end            : end point for the search.
+     * @param accountNumber  : unique number associated with the current account.
+     * @return integer : the index of the account, or where it belongs.
+     */
+    private static int recursiveSearch(Account databaseSorted[], int start, int end, long accountNumber) {
+        if (start < end) {
+            int mid = start + (end - start) / 2;
+            if (accountNumber < databaseSorted[mid].accountNumber) {
+                return recursiveSearch(databaseSorted, start, mid, accountNumber);
+            } else if (accountNumber > databaseSorted[mid].accountNumber) {
+                return recursiveSearch(databaseSorted, mid + 1, end, accountNumber);
+            } else {
+                return mid;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Lays out sorted account numbers in Eytzinger order: the root of the binary
+     * search tree at index 1 and the children of index k at 2k and 2k+1. Filled by
+     * an in-order walk of the tree, which meets the entries in sorted order.
+     *
+     * @param keys  : account numbers in increasing order.
+     * @param count : number of account numbers.
+     * @param tree  : array of count + 1 entries to fill from index 1.
+     * @param ranks : array of count + 1 entries, filled with the sorted index of
+     *              each entry of tree, and count at index 0 for "not found".
+     */
+    private static void eytzinger(long keys[], int count, long tree[], int ranks[]) {
+        int next = 0;
+        int k = 1;
+        while (next < count) { // in-order walk without recursion
+            while (k <= count) {
+                k = 2 * k;
+            }
+            k >>>= Integer.numberOfTrailingZeros(~k) + 1; // climb to the first ancestor not yet visited
+            tree[k] = keys[next];
+            ranks[k] = next++;
+            k = 2 * k + 1;
+        }
+        ranks[0] = count;
+    }
+
+    /**
+     * Searches account numbers in Eytzinger order. The walk goes down one level per
+     * step without branches, then drops the trailing right turns to get back to
+     * the last node where it went left, which is the first account number that is
+     * not smaller.
+     *
+     * @param tree          : account numbers in Eytzinger order from index 1.
+     * @param count         : number of account numbers.
+     * @param accountNumber : the account number to look for.
+     * @return integer : index in tree of the first account number that is not
+     *         smaller, or 0 if there is none.
+     */
+    private static int eytzingerSearch(long tree[], int count, long accountNumber) {
+        int k = 1;
+        while (k <= count) {
+            k = 2 * k + (tree[k] < accountNumber ? 1 : 0);
+        }
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    /**
+     * Starts the given number of ShardServer processes plus one, replays the test
+     * files through a CCShardRouter over the first ones and checks the accounts
+     * against a local CCHash, times single and pipelined purchases, then adds the
+     * last shard and checks that the accounts are unchanged and that only the
+     * accounts of the new shard moved.
+     *
+     * @param count : number of shards to start with.
+     */
+    private static void shards(int count) {
+        Process servers[] = new Process[count + 1];
+        String addresses[] = new String[count + 1];
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        try {
+            for (int i = 0; i < servers.length; i++) {
+                servers[i] = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "ShardServer", "0")
+                        .redirectErrorStream(true).start();
+                String line = new BufferedReader(new InputStreamReader(servers[i].getInputStream()))
+                        .readLine();
+                if (line == null || !line.startsWith("ShardServer listening on ")) {
+                    throw new IOException("shard server did not start: " + line);
+                }
+                addresses[i] = "127.0.0.1:" + line.substring("ShardServer listening on ".length());
+            }
+            try (CCShardRouter router = new CCShardRouter(Arrays.copyOf(addresses, count))) {
+                CCHash local = new CCHash();
+                for (String file : new String[] { "Test1.txt", "Test2.txt", "Test3.txt" }) {
+                    long routed = new Application().replay(router, file);
+                    long alone = new Application().replay(local, file);
+                    if (ParallelReplay.checksum(router) != ParallelReplay.checksum(local)) {
+                        throw new IllegalStateException("the shards differ from CCHash after " + file);
+                    }
+                    System.out.println(
+                            file + ": " + count + " shards " + routed + " ms, local CCHash " + alone + " ms");
+                }
+
+                final int purchases = 20_000;
+                long all[] = new long[1024];
+                Iterator<Account> accounts = router.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+                int total = 0;
+                while (accounts.hasNext()) {
+                    if (total == all.length) {
+                        all = Arrays.copyOf(all, total * 2);
+                    }
+                    all[total++] = accounts.next().accountNumber;
+                }
+                if (total == 0) {
+                    throw new IllegalStateException("the test files left no accounts to buy with");
+                }
+                long numbers[] = new long[purchases];
+                double prices[] = new double[purchases];
+                for (int i = 0; i < purchases; i++) { // every purchase hits a real account on its own shard
+                    numbers[i] = all[i % total];
+                    prices[i] = 0.01;
+                }
+                long single = 0;
+                long pipelined = 0;
+                for (int round = 0; round < 3; round++) { // the last round is measured
+                    long start = System.nanoTime();
+                    for (int i = 0; i < purchases; i++) {
+                        router.purchase(numbers[i], prices[i]);
+                    }
+                    single = System.nanoTime() - start;
+                    start = System.nanoTime();
+                    router.makePurchases(numbers, prices);
+                    pipelined = System.nanoTime() - start;
+                }
+                System.out.println(purchases + " purchases: one request at a time " + single / purchases
+                        + " ns each, pipelined " + pipelined / purchases + " ns each");
+
+                long before = ParallelReplay.checksum(router);
+                long start = System.nanoTime();
+                int moved = router.addShard(addresses[count]);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                int owned = 0;
+                accounts = router.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+                while (accounts.hasNext()) {
+                    owned += router.getShardIndex(accounts.next().accountNumber) == count ? 1 : 0;
+                }
+                if (ParallelReplay.checksum(router) != before || owned != moved) {
+                    throw new IllegalStateException("adding a shard changed the accounts");
+                }
+                System.out.println("added shard " + (count + 1) + ": moved " + moved + " of " + total
+                        + " accounts in " + millis + " ms");
+            }
+        } catch (IOException failed) {
+            throw new IllegalStateException("shards failed", failed);
+        } finally {
+            for (Process server : servers) {
+                if (server != null) {
+                    server.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays a command file through a CommandServer in this process with one,
+     * four and sixteen connections and windows of 1, 16 and 256 requests, prints
+     * the requests per second and the latencies, and checks that the server ends
+     * with the accounts of a local replay.
+     *
+     * @param file : path of the command file.
+     */
+    private static void server(String file) {
+        try {
+            CCHash local = new CCHash();
+            new Application().replay(local, file);
+            long expected = ParallelReplay.checksum(local);
+            System.out.println(file);
+            for (int connections : new int[] { 1, 4, 16 }) {
+                for (int window : new int[] { 1, 16, 256 }) {
+                    CCHash structure = new CCHash();
+                    CommandServer server = new CommandServer(structure, 0);
+                    Thread serving = new Thread(() -> {
+                        try {
+                            server.serve();
+                        } catch (IOException failed) {
+                            System.out.println("  server failed: " + failed.getMessage());
+                        }
+                    }, "CommandServer");
+                    serving.start();
+                    CommandClient client = new CommandClient("127.0.0.1", server.getPort());
+                    long time;
+                    try {
+                        time = client.run(file, connections, window);
+                    } finally {
+                        server.close();
+                        serving.join();
+                    }
+                    if (ParallelReplay.checksum(structure) != expected) {
+                        throw new IllegalStateException("the server differs from a local replay of " + file);
+                    }
+                    LatencyHistogram latencies = client.getLatencies();
+                    System.out.println("  " + connections + " connections, window " + window + ": "
+                            + client.getRequestCount() * 1_000_000_000L / Math.max(time, 1) + " requests/s, p50 "
+                            + latencies.getPercentile(50) / 1000 + " us, p99 " + latencies.getPercentile(99) / 1000
+                            + " us");
+                }
+            }
+        } catch (IOException failed) {
+            System.out.println("server failed: " + failed.getMessage());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs three phases against a database of 100,000 accounts: purchases mixed
+     * with short range scans, deletes each followed by a create, and reads. Prints
+     * the time and the longest single operation of each phase, and checks the
+     * accounts against a CCBTree that gets the same changes after every phase.
+     *
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     */
+    private static void adaptive(String label, CCDatabase structure) {
+        final int accounts = 100_000;
+        final int operations = 50_000;
+        final long span = Long.MAX_VALUE / accounts * 10; // about 10 accounts per scan
+        CCDatabase reference = new CCBTree();
+        Random random = new Random(5);
+        long numbers[] = new long[accounts];
+        String names[] = new String[accounts];
+        double limits[] = new double[accounts];
+        double balances[] = new double[accounts];
+        for (int i = 0; i < accounts; i++) {
+            numbers[i] = random.nextLong() & Long.MAX_VALUE;
+            names[i] = "owner " + i;
+            limits[i] = 1_000_000;
+        }
+        structure.createAccounts(numbers, names, names, limits, balances);
+        reference.createAccounts(numbers, names, names, limits, balances);
+        String phases[] = { "scans", "churn", "lookups" };
+        Account view = new Account();
+        StringBuilder line = new StringBuilder(label);
+        for (int phase = 0; phase < phases.length; phase++) {
+            long longest = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                int pick = random.nextInt(accounts);
+                long operationStart = System.nanoTime();
+                if (phase == 0 && i % 10 == 0) {
+                    long from = random.nextLong() & Long.MAX_VALUE;
+                    Iterator<Account> range = structure.scan(from, from + Math.min(span, Long.MAX_VALUE - from));
+                    while (range.hasNext()) {
+                        range.next();
+                    }
+                } else if (phase == 0) {
+                    structure.purchase(numbers[pick], 1);
+                    reference.purchase(numbers[pick], 1);
+                } else if (phase == 1) {
+                    structure.deleteAccount(numbers[pick]);
+                    reference.deleteAccount(numbers[pick]);
+                    numbers[pick] = random.nextLong() & Long.MAX_VALUE;
+                    structure.createAccount(numbers[pick], names[pick], names[pick], 1_000_000, 0);
+                    reference.createAccount(numbers[pick], names[pick], names[pick], 1_000_000, 0);
+                } else {
+                    structure.readAccount(numbers[pick], view);
+                }
+                longest = Math.max(longest, System.nanoTime() - operationStart);
+            }
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            if (ParallelReplay.checksum(structure) != ParallelReplay.checksum(reference)) {
+                throw new IllegalStateException(
+                        label + " lost track of the accounts in the " + phases[phase] + " phase");
+            }
+            line.append(", ").append(phases[phase]).append(" ").append(millis).append(" ms (longest ")
+                    .append(longest / 1000).append(" us)");
+            if (structure instanceof CCAdaptive) {
+                line.append(((CCAdaptive) structure).isSorted() ? " sorted" : " hashed");
+            }
+        }
+        if (structure instanceof CCAdaptive) {
+            line.append(", ").append(((CCAdaptive) structure).getMigrationCount()).append(" moves");
+        }
+        System.out.println(line);
+    }
+
+    /**
+     * Makes a million purchases of 10 cents on an account whose credit limit is
+     * exactly their sum, then one more cent. Every purchase but the last must go
+     * through and the balance must end exactly at the limit, where the same sum
+     * in doubles has drifted away from it.
+     *
+     * @param label     : name printed for the database structure.
+     * @param structure : the empty database to fill.
+     */
+    private static void money(String label, CCDatabase structure) {
+        int purchases = 1_000_000;
+        structure.createAccount(1, "name", "address", 100_000, 0);
+        int approved = 0;
+        double sum = 0;
+        for (int i = 0; i < purchases; i++) {
+            if (structure.purchase(1, 0.1) == CCDatabase.APPROVED) {
+                approved++;
+            }
+            sum += 0.1;
+        }
+        int last = structure.purchase(1, 0.01);
+        System.out.println(label + " " + approved + " of " + purchases + " approved, one cent more "
+                + (last == CCDatabase.APPROVED ? "approved" : "declined") + ", double sum " + sum);
+        if (approved != purchases || last != CCDatabase.DECLINED_OVER_LIMIT) {
+            throw new IllegalStateException(label + " does not add up the purchases exactly");
+        }
+    }
+
+    /**
+     * Reads a small set of hot accounts in a CCStriped from several threads while
+     * one thread keeps deleting and creating them again with a new name, address,
+     * credit limit and balance that all carry the same number, and another creates
+     * and deletes other accounts to make the stripes grow, shrink and compact
+     * their text. Every account read must show the fields of a single creation.
+     *
+     * @param threads : number of reading threads.
+     */
+    private static void reads(int threads) {
+        final int hot = 1024;
+        final int readsPerThread = 2_000_000;
+        final CCStriped structure = new CCStriped();
+        for (int i = 0; i < hot; i++) {
+            structure.createAccount(i, "owner 1", "1 Main Street", 1, 1);
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLongArray counts = new AtomicLongArray(2); // rewrites, inconsistent reads
+        Thread writer = new Thread(() -> {
+            int generation = 2;
+            while (running.get()) {
+                for (int i = 0; i < hot; i++) {
+                    structure.deleteAccount(i);
+                    structure.createAccount(i, "owner " + generation, generation + " Main Street", generation,
+                            generation);
+                }
+                counts.addAndGet(0, hot);
+                generation++;
+            }
+        });
+        Thread churn = new Thread(() -> {
+            long next = hot;
+            while (running.get()) {
+                for (int i = 0; i < 10_000; i++) {
+                    structure.createAccount(next + i, "churn " + i, i + " Churn Street", 1000, 0);
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    structure.deleteAccount(next + i);
+                }
+                next += 10_000;
+            }
+        });
+        Thread readers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            readers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < readsPerThread; i++) {
+                    AccountRecord record = structure.getAccountRecord(random.nextInt(hot));
+                    if (record == null) {
+                        continue; // caught between the delete and the create
+                    }
+                    long generation = record.getCreditLimitCents() / 100;
+                    if (record.getBalanceCents() != record.getCreditLimitCents()
+                            || !("owner " + generation).equals(record.getName())
+                            || !(generation + " Main Street").equals(record.getAddress())) {
+                        counts.incrementAndGet(1);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        writer.start();
+        churn.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        try {
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            running.set(false);
+            writer.join();
+            churn.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println("CCStriped " + threads + " readers: " + (long) threads * readsPerThread / millis
+                + " reads/ms, " + counts.get(0) / millis + " rewrites/ms, " + counts.get(1) + " inconsistent reads");
+        if (counts.get(1) != 0) {
+            throw new IllegalStateException("A read of CCStriped saw half of a change");
+        }
+    }
+
+    /**
+     * Runs purchases from several threads against a small set of hot accounts in
+     * a CCStriped while another thread creates and deletes accounts to make the
+     * stripes grow and shrink. Afterwards every hot account must have a balance
+     * below its credit limit and equal to the sum of its approved purchases.
+     *
+     * @param threads : number of purchasing threads.
+     */
+    private static void contention(int threads) {
+        final int hot = 256;
+        final int purchasesPerThread = 1_000_000;
+        final CCStriped structure = new CCStriped();
+        final AtomicLongArray approved = new AtomicLongArray(hot);
+        for (int i = 0; i < hot; i++) {
+            structure.createAccount(i, "hot " + i, "address " + i, 100_000, 0);
+        }
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread churn = new Thread(() -> {
+            long next = hot;
+            while (running.get()) {
+                for (int i = 0; i < 10_000; i++) {
+                    structure.createAccount(next + i, "churn", "churn", 1000, 0);
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    structure.deleteAccount(next + i);
+                }
+                next += 10_000;
+            }
+        });
+        Thread workers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                Account view = new Account();
+                for (int i = 0; i < purchasesPerThread; i++) {
+                    int account = random.nextInt(hot);
+                    int price = 1 + random.nextInt(100);
+                    if (structure.purchase(account, price) == CCDatabase.APPROVED) {
+                        approved.addAndGet(account, price);
+                    }
+                    if ((i & 1023) == 0) {
+                        structure.readAccount(account, view);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        churn.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            running.set(false);
+            churn.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        int violations = 0;
+        Account view = new Account();
+        for (int i = 0; i < hot; i++) {
+            structure.readAccount(i, view);
+            if (view.balance > view.creditLimit || view.balance != Money.toCents(approved.get(i))) {
+                violations++;
+            }
+        }
+        if (violations > 0) {
+            throw new IllegalStateException("CCStriped left " + violations + " inconsistent accounts");
+        }
+        System.out.println("CCStriped " + threads + " threads: "
+                + (long) threads * purchasesPerThread / Math.max(1, millis) + " purchases/ms, accounts consistent");
+    }
+
+    /**
+     * Runs the garbage collector a few times and returns the heap still in use.
+     *
+     * @return long : bytes of heap in use.
+     */
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,512 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's that picks its own structure. It starts as
+ * a CCHash and estimates after every operation how much work the recent
+ * operations would have taken in the other structure. Once the other structure
+ * would have saved more work than moving the accounts costs, they move: into a
+ * CCSorted when range scans, which walk the whole hash table, dominate, and back
+ * into a CCHash when creates and deletes, which shift the sorted array, or
+ * lookups take over again.
+ *
+ * A move runs on a background thread while operations go on. The current
+ * structure is frozen for the move: changes made in the meantime go into an
+ * overlay, a CCPrimitiveHash of the new and changed accounts plus the set of
+ * deleted account numbers, which every operation checks first. The background
+ * thread copies the frozen structure a chunk at a time and bulk loads the new
+ * structure; the next operation then applies the overlay with the batch
+ * operations of the new structure and switches to it. All operations lock the
+ * database, so it may also be shared between threads.
+ *
+ * @author Angela Li
+ */
+public class CCAdaptive implements CCDatabase {
+    private static final int WINDOW = 1 << 14; // operations after which the counts start over
+    private static final int MIN_SIZE = 4096; // smaller databases stay where they are
+    private static final double MOVE_COST = 16; // estimated work of a move per account
+    private static final int CHUNK = 4096; // accounts copied by the background thread per lock hold
+
+    private CCDatabase active; // holds the accounts, frozen during a move
+    private boolean sorted; // true, if active is a CCSorted
+    private int size; // number of accounts
+    private int operations; // operations in the current window
+    private double hashWork; // estimated work of the current window in a CCHash
+    private double sortedWork; // estimated work of the current window in a CCSorted
+    private int migrations; // number of finished moves
+    private final Account view; // reused to read the frozen structure
+
+    private CCPrimitiveHash overlay; // accounts created or changed during a move, null otherwise
+    private HashSet<Long> deleted; // accounts of the frozen structure deleted during a move
+    private CCDatabase ready; // the new structure once the background thread has built it
+
+    /**
+     * Constructor for CCAdaptive objects.
+     */
+    public CCAdaptive() {
+        this.active = new CCHash();
+        this.sorted = false;
+        this.size = 0;
+        this.migrations = 0;
+        this.view = new Account();
+        this.overlay = null;
+        this.deleted = null;
+        this.ready = null;
+        startWindow();
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public synchronized boolean createAccount(long accountNumber, String name, String address, double creditLimit,
+            double balance) {
+        step(1, depth() + size / 4.0);
+        boolean created;
+        if (overlay == null) {
+            created = active.createAccount(accountNumber, name, address, creditLimit, balance);
+        } else if (holder(accountNumber) != null) {
+            created = false; // account already exists
+        } else {
+            created = overlay.createAccount(accountNumber, name, address, creditLimit, balance);
+        }
+        if (created) {
+            size++;
+        }
+        return created;
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist. During
+     * a move an account of the frozen structure is only marked as deleted.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public synchronized boolean deleteAccount(long accountNumber) {
+        step(1, depth() + size / 4.0);
+        boolean removed;
+        if (overlay == null) {
+            removed = active.deleteAccount(accountNumber);
+        } else {
+            removed = overlay.deleteAccount(accountNumber);
+            if (!deleted.contains(accountNumber) && active.readAccount(accountNumber, view)) {
+                deleted.add(accountNumber);
+                removed = true;
+            }
+        }
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public synchronized boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        step(1, depth());
+        CCDatabase target = writable(accountNumber);
+        return target != null && target.adjustCreditLimit(accountNumber, newLimit);
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public synchronized String getAccount(long accountNumber) {
+        step(1, depth());
+        CCDatabase source = holder(accountNumber);
+        return source != null ? source.getAccount(accountNumber) : null;
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account, from the overlay or the
+     * frozen structure during a move.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public synchronized AccountRecord getAccountRecord(long accountNumber) {
+        step(1, depth());
+        CCDatabase source = holder(accountNumber);
+        return source != null ? source.getAccountRecord(accountNumber) : null;
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller, from the overlay or
+     * the frozen structure during a move.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public synchronized boolean readAccount(long accountNumber, Account view) {
+        step(1, depth());
+        CCDatabase source = holder(accountNumber);
+        return source != null && source.readAccount(accountNumber, view);
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit, i.e. the old balance plus the purchase
+     * price is not higher than the account's credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public synchronized int purchase(long accountNumber, double price) {
+        step(1, depth());
+        CCDatabase target = writable(accountNumber);
+        return target != null ? target.purchase(accountNumber, price) : NO_SUCH_ACCOUNT;
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. The account numbers of the range are collected under the lock, during
+     * a move from the overlay and the frozen structure, and each account is copied
+     * under the lock when the iterator reaches it, wherever it is by then. The
+     * iterator never reads a structure while another thread changes it.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public synchronized Iterator<Account> scan(long fromAccount, long toAccount) {
+        step(size, depth());
+        long matches[] = overlay != null ? overlay.keysInRange(fromAccount, toAccount) : new long[16];
+        int count = overlay != null ? matches.length : 0;
+        Iterator<Account> frozen = active.scan(fromAccount, toAccount);
+        while (frozen.hasNext()) {
+            long accountNumber = frozen.next().accountNumber;
+            if (overlay == null || !deleted.contains(accountNumber) && !overlay.contains(accountNumber)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, Math.max(16, count * 2));
+                }
+                matches[count++] = accountNumber;
+            }
+        }
+        return new SortedKeyIterator(Arrays.copyOf(matches, count), accountNumber -> {
+            synchronized (this) {
+                CCDatabase source = holder(accountNumber);
+                Account current = new Account();
+                return source != null && source.readAccount(accountNumber, current) ? current : null;
+            }
+        });
+    }
+
+    /**
+     * Creates the accounts through the batch operation of the current structure,
+     * or one at a time during a move.
+     */
+    @Override
+    public synchronized boolean[] createAccounts(long accountNumbers[], String names[], String addresses[],
+            double creditLimits[], double balances[]) {
+        count(accountNumbers.length, accountNumbers.length, (double) accountNumbers.length * depth() + size);
+        if (overlay != null) {
+            return CCDatabase.super.createAccounts(accountNumbers, names, addresses, creditLimits, balances);
+        }
+        boolean created[] = active.createAccounts(accountNumbers, names, addresses, creditLimits, balances);
+        for (boolean done : created) {
+            size += done ? 1 : 0;
+        }
+        return created;
+    }
+
+    /**
+     * Deletes the accounts through the batch operation of the current structure,
+     * or one at a time during a move.
+     */
+    @Override
+    public synchronized boolean[] deleteAccounts(long accountNumbers[]) {
+        count(accountNumbers.length, accountNumbers.length, (double) accountNumbers.length * depth() + size);
+        if (overlay != null) {
+            return CCDatabase.super.deleteAccounts(accountNumbers);
+        }
+        boolean removed[] = active.deleteAccounts(accountNumbers);
+        for (boolean done : removed) {
+            size -= done ? 1 : 0;
+        }
+        return removed;
+    }
+
+    /**
+     * Makes the purchases through the batch operation of the current structure,
+     * or one at a time during a move.
+     */
+    @Override
+    public synchronized boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        count(accountNumbers.length, accountNumbers.length, (double) accountNumbers.length * depth());
+        if (overlay != null) {
+            return CCDatabase.super.makePurchases(accountNumbers, prices);
+        }
+        return active.makePurchases(accountNumbers, prices);
+    }
+
+    /**
+     * Checks if the accounts are in a CCSorted at the moment.
+     *
+     * @return boolean : true, if the accounts are sorted; false, if they are
+     *         hashed.
+     */
+    public synchronized boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * Checks if the accounts are being moved into the other structure.
+     *
+     * @return boolean : true, while a move runs.
+     */
+    public synchronized boolean isMigrating() {
+        return overlay != null;
+    }
+
+    /**
+     * Returns the number of moves that finished.
+     *
+     * @return integer : the number of moves.
+     */
+    public synchronized int getMigrationCount() {
+        return migrations;
+    }
+
+    /**
+     * Counts one operation, see count.
+     *
+     * @param hashCost   : estimated work of the operation in a CCHash.
+     * @param sortedCost : estimated work of the operation in a CCSorted.
+     */
+    private void step(double hashCost, double sortedCost) {
+        count(1, hashCost, sortedCost);
+    }
+
+    /**
+     * Finishes a move whose new structure is ready, adds the estimated work of the
+     * coming operations to the current window, and starts a move if the other
+     * structure would have saved more work than a move costs. Like renting skis
+     * until the rent paid would have bought them, a workload that never settles
+     * wastes at most about as much work on moves as it would have lost by staying.
+     * The work is counted in array slots looked at: a CCHash finds an account in
+     * about one slot but walks its whole table for a scan, and a CCSorted needs a
+     * binary search for every operation and shifts on average a quarter of its
+     * accounts for a create or delete, or merges the whole array once for a
+     * batch.
+     *
+     * @param count      : number of operations.
+     * @param hashCost   : estimated work of the operations in a CCHash.
+     * @param sortedCost : estimated work of the operations in a CCSorted.
+     */
+    private void count(int count, double hashCost, double sortedCost) {
+        if (ready != null) {
+            finishMigration();
+        }
+        operations += count;
+        hashWork += hashCost;
+        sortedWork += sortedCost;
+        double saved = sorted ? sortedWork - hashWork : hashWork - sortedWork;
+        if (overlay == null && size >= MIN_SIZE && saved > MOVE_COST * size) {
+            startMigration();
+            startWindow();
+        } else if (operations >= WINDOW) {
+            startWindow();
+        }
+    }
+
+    /**
+     * Returns the number of steps of a binary search over the accounts.
+     *
+     * @return integer : the base 2 logarithm of the size, rounded up.
+     */
+    private int depth() {
+        return 32 - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * Resets the work estimates for a new window.
+     */
+    private void startWindow() {
+        operations = 0;
+        hashWork = 0;
+        sortedWork = 0;
+    }
+
+    /**
+     * Freezes the current structure and starts the background thread that copies
+     * it into the other structure.
+     */
+    private void startMigration() {
+        final CCDatabase source = active;
+        final boolean toSorted = !sorted;
+        overlay = new CCPrimitiveHash();
+        deleted = new HashSet<>();
+        Thread mover = new Thread(() -> build(source, toSorted), "CCAdaptive migration");
+        mover.setDaemon(true);
+        mover.start();
+    }
+
+    /**
+     * Copies every account of the frozen structure into arrays and bulk loads them
+     * into a new structure; runs on the background thread. The frozen structure is
+     * never changed, so the account numbers for the scan are collected without the
+     * lock. Looking an account up in a CCHash updates its probe statistics,
+     * though, so the accounts are taken out under the lock, a chunk at a time, and
+     * operations run in between.
+     *
+     * @param source   : the frozen structure.
+     * @param toSorted : true to build a CCSorted, false to build a CCHash.
+     */
+    private void build(CCDatabase source, boolean toSorted) {
+        Iterator<Account> accounts = source.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+        int count = 0;
+        long accountNumbers[] = new long[1024];
+        String names[] = new String[1024];
+        String addresses[] = new String[1024];
+        long creditLimits[] = new long[1024];
+        long balances[] = new long[1024];
+        boolean more = true;
+        while (more) {
+            synchronized (this) {
+                for (int i = 0; i < CHUNK && more; i++) {
+                    more = accounts.hasNext();
+                    if (more) {
+                        Account current = accounts.next();
+                        if (count == accountNumbers.length) {
+                            int length = count * 2;
+                            accountNumbers = Arrays.copyOf(accountNumbers, length);
+                            names = Arrays.copyOf(names, length);
+                            addresses = Arrays.copyOf(addresses, length);
+                            creditLimits = Arrays.copyOf(creditLimits, length);
+                            balances = Arrays.copyOf(balances, length);
+                        }
+                        accountNumbers[count] = current.accountNumber;
+                        names[count] = current.name;
+                        addresses[count] = current.address;
+                        creditLimits[count] = current.creditLimit;
+                        balances[count] = current.balance;
+                        count++;
+                    }
+                }
+            }
+        }
+        accountNumbers = Arrays.copyOf(accountNumbers, count);
+        names = Arrays.copyOf(names, count);
+        addresses = Arrays.copyOf(addresses, count);
+        creditLimits = Arrays.copyOf(creditLimits, count);
+        balances = Arrays.copyOf(balances, count);
+        CCDatabase target;
+        if (toSorted) {
+            CCSorted sortedTarget = new CCSorted();
+            sortedTarget.load(accountNumbers, names, addresses, creditLimits, balances); // the scan gave them in order
+            target = sortedTarget;
+        } else {
+            CCHash hashTarget = new CCHash();
+            hashTarget.load(accountNumbers, names, addresses, creditLimits, balances);
+            target = hashTarget;
+        }
+        synchronized (this) {
+            ready = target;
+        }
+    }
+
+    /**
+     * Applies the overlay to the structure built by the background thread and
+     * switches to it: the deleted and changed accounts are removed with one batch
+     * delete, and the changed and new accounts are added back with one batch
+     * create.
+     */
+    private void finishMigration() {
+        CCDatabase target = ready;
+        long changed[] = overlay.keysInRange(Long.MIN_VALUE, Long.MAX_VALUE);
+        long removed[] = Arrays.copyOf(changed, changed.length + deleted.size());
+        int index = changed.length;
+        for (long accountNumber : deleted) {
+            removed[index++] = accountNumber;
+        }
+        target.deleteAccounts(removed);
+        String names[] = new String[changed.length];
+        String addresses[] = new String[changed.length];
+        double creditLimits[] = new double[changed.length];
+        double balances[] = new double[changed.length];
+        for (int i = 0; i < changed.length; i++) {
+            overlay.readAccount(changed[i], view);
+            names[i] = view.name;
+            addresses[i] = view.address;
+            creditLimits[i] = Money.toDollars(view.creditLimit);
+            balances[i] = Money.toDollars(view.balance);
+        }
+        target.createAccounts(changed, names, addresses, creditLimits, balances);
+        active = target;
+        sorted = !sorted;
+        overlay = null;
+        deleted = null;
+        ready = null;
+        migrations++;
+    }
+
+    /**
+     * Finds the structure holding an account: the overlay if the account was
+     * created or changed during the move, nothing if it was deleted, and the
+     * current structure otherwise.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return CCDatabase : the structure holding the account, or null if it does
+     *         not exist.
+     */
+    private CCDatabase holder(long accountNumber) {
+        if (overlay == null) {
+            return active;
+        } else if (overlay.contains(accountNumber)) {
+            return overlay;
+        } else if (deleted.contains(accountNumber)) {
+            return null;
+        }
+        return active.readAccount(accountNumber, view) ? active : null;
+    }
+
+    /**
+     * Finds the structure in which an account may be changed. During a move an
+     * account of the frozen structure is first copied into the overlay.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return CCDatabase : the structure to change the account in, or null if it
+     *         does not exist.
+     */
+    private CCDatabase writable(long accountNumber) {
+        CCDatabase source = holder(accountNumber);
+        if (source == null || source == overlay || overlay == null) {
+            return source;
+        }
+        overlay.createAccount(accountNumber, view.name, view.address, Money.toDollars(view.creditLimit),
+                Money.toDollars(view.balance)); // view was filled by holder
+        return overlay;
+    }
+}
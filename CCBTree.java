@@ -0,0 +1,495 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Database of credit card account's using a B+ tree ordered by account number.
+ * Accounts live in leaves of at most 32 entries that are linked in key order,
+ * so creating or deleting an account shifts at most one node instead of the
+ * whole array as in CCSorted. Searches walk down the tree in a loop.
+ *
+ * @author Angela Li
+ */
+public class CCBTree implements CCDatabase {
+    private static final int MAX_KEYS = 32; // keys of a full node, 256 bytes of account numbers
+    private static final int MIN_KEYS = MAX_KEYS / 2; // keys of a node that is not the root
+
+    private Node root;
+    private int height; // levels of the tree, 1 if the root is a leaf
+    private int fillLevelB; // number of accounts in the tree
+    private Node pathNodes[]; // nodes passed by the last search, root first
+    private int pathSlots[]; // child (or leaf entry) index taken in each of those nodes
+
+    /**
+     * Node of the tree. Inner nodes hold size keys and size + 1 children, where
+     * keys[i] is the smallest account number below children[i + 1]. Leaves hold
+     * size keys and the account of each key. Both have room for one key more than
+     * MAX_KEYS so a node can be split after the insert that overflows it.
+     */
+    private static final class Node {
+        int size;
+        final long keys[];
+        final Node children[];
+        final Account accounts[];
+        Node next; // next leaf in account number order
+
+        Node(boolean leaf) {
+            this.size = 0;
+            this.keys = new long[MAX_KEYS + 1];
+            this.children = leaf ? null : new Node[MAX_KEYS + 2];
+            this.accounts = leaf ? new Account[MAX_KEYS + 1] : null;
+            this.next = null;
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+    }
+
+    /**
+     * Constructor for CCBTree objects.
+     */
+    public CCBTree() {
+        this.root = new Node(true);
+        this.height = 1;
+        this.fillLevelB = 0;
+        this.pathNodes = new Node[8];
+        this.pathSlots = new int[8];
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        if (search(accountNumber) != null) {
+            return false; // account already exists
+        }
+        Account newAccount = new Account();
+        newAccount.accountNumber = accountNumber;
+        newAccount.name = name;
+        newAccount.address = address;
+        newAccount.creditLimit = Money.toCents(creditLimit);
+        newAccount.balance = Money.toCents(balance);
+        insert(newAccount);
+        fillLevelB++;
+        return true;
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        if (search(accountNumber) == null) {
+            return false; // account does not already exist
+        }
+        Node leaf = pathNodes[height - 1];
+        int place = pathSlots[height - 1];
+        System.arraycopy(leaf.keys, place + 1, leaf.keys, place, leaf.size - place - 1);
+        System.arraycopy(leaf.accounts, place + 1, leaf.accounts, place, leaf.size - place - 1);
+        leaf.size--;
+        leaf.accounts[leaf.size] = null;
+        rebalance();
+        fillLevelB--;
+        return true;
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        Account current = search(accountNumber);
+        if (current != null) {
+            current.creditLimit = Money.toCents(newLimit);
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist. The string should be in the same format as for
+     * account creation, i.e. the credit card number, name of card holder, address
+     * of card holder, credit limit, and balance each on a separate line.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        Account current = search(accountNumber);
+        if (current != null) {
+            return current.toString();
+        } else {
+            return null; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        Account current = search(accountNumber);
+        return current != null ? new AccountRecord(current) : null;
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        Account current = search(accountNumber);
+        if (current == null) {
+            return false; // account does not already exist
+        }
+        view.set(accountNumber, current.name, current.address, current.creditLimit, current.balance);
+        return true;
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit, i.e. the old balance plus the purchase
+     * price is not higher than the account's credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        Account current = search(accountNumber);
+        if (current != null) {
+            long cents = Money.toCents(price);
+            if (Money.withinLimit(current.balance, cents, current.creditLimit)) {
+                current.balance = current.balance + cents;
+                return APPROVED;
+            } else {
+                return DECLINED_OVER_LIMIT;
+            }
+        } else {
+            return NO_SUCH_ACCOUNT; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order by following the links between the leaves.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        search(fromAccount);
+        final Node first = pathNodes[height - 1];
+        final int firstPlace = pathSlots[height - 1];
+        return new Iterator<Account>() {
+            private Node leaf = first;
+            private int place = firstPlace;
+
+            @Override
+            public boolean hasNext() {
+                while (leaf != null && place == leaf.size) {
+                    leaf = leaf.next;
+                    place = 0;
+                }
+                return leaf != null && leaf.keys[place] <= toAccount;
+            }
+
+            @Override
+            public Account next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return leaf.accounts[place++];
+            }
+        };
+    }
+
+    /**
+     * Walks from the root to the leaf where the account number belongs, recording
+     * the path in pathNodes and pathSlots. In the leaf the recorded slot is the
+     * index of the account or the index where it would be inserted.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return Account : the account with the account number, or null if there is
+     *         none.
+     */
+    private Account search(long accountNumber) {
+        Node node = root;
+        for (int level = 0; level < height - 1; level++) {
+            int child = upperBound(node, accountNumber);
+            pathNodes[level] = node;
+            pathSlots[level] = child;
+            node = node.children[child];
+        }
+        int place = lowerBound(node, accountNumber);
+        pathNodes[height - 1] = node;
+        pathSlots[height - 1] = place;
+        if (place < node.size && node.keys[place] == accountNumber) {
+            return node.accounts[place];
+        }
+        return null;
+    }
+
+    /**
+     * Binary search for the first key of a node that is not smaller than the
+     * account number.
+     *
+     * @param node          : the node being searched.
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : index of the first key greater than or equal to the account
+     *         number, or the size of the node.
+     */
+    private static int lowerBound(Node node, long accountNumber) {
+        int start = 0;
+        int end = node.size;
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (node.keys[mid] < accountNumber) {
+                start = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Binary search for the first key of a node that is greater than the account
+     * number, which is also the index of the child the account belongs under.
+     *
+     * @param node          : the node being searched.
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : index of the first key greater than the account number, or
+     *         the size of the node.
+     */
+    private static int upperBound(Node node, long accountNumber) {
+        int start = 0;
+        int end = node.size;
+        while (start < end) {
+            int mid = (start + end) >>> 1;
+            if (node.keys[mid] <= accountNumber) {
+                start = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Inserts an account at the place found by the last search, then splits the
+     * nodes on the path that overflowed, from the leaf up.
+     *
+     * @param newAccount : the account being inserted.
+     */
+    private void insert(Account newAccount) {
+        Node leaf = pathNodes[height - 1];
+        int place = pathSlots[height - 1];
+        System.arraycopy(leaf.keys, place, leaf.keys, place + 1, leaf.size - place);
+        System.arraycopy(leaf.accounts, place, leaf.accounts, place + 1, leaf.size - place);
+        leaf.keys[place] = newAccount.accountNumber;
+        leaf.accounts[place] = newAccount;
+        leaf.size++;
+
+        int level = height - 1;
+        Node node = leaf;
+        while (node.size > MAX_KEYS) {
+            Node right = new Node(node.isLeaf());
+            long separator;
+            int mid = node.size / 2;
+            if (node.isLeaf()) {
+                right.size = node.size - mid;
+                System.arraycopy(node.keys, mid, right.keys, 0, right.size);
+                System.arraycopy(node.accounts, mid, right.accounts, 0, right.size);
+                for (int i = mid; i < node.size; i++) {
+                    node.accounts[i] = null;
+                }
+                right.next = node.next;
+                node.next = right;
+                separator = right.keys[0];
+            } else { // the middle key moves up instead of into a half
+                right.size = node.size - mid - 1;
+                System.arraycopy(node.keys, mid + 1, right.keys, 0, right.size);
+                System.arraycopy(node.children, mid + 1, right.children, 0, right.size + 1);
+                for (int i = mid + 1; i <= node.size; i++) {
+                    node.children[i] = null;
+                }
+                separator = node.keys[mid];
+            }
+            node.size = mid;
+
+            if (level == 0) { // the root split, the tree gets a level taller
+                Node newRoot = new Node(false);
+                newRoot.keys[0] = separator;
+                newRoot.children[0] = node;
+                newRoot.children[1] = right;
+                newRoot.size = 1;
+                root = newRoot;
+                height++;
+                if (height > pathNodes.length) {
+                    pathNodes = new Node[height * 2];
+                    pathSlots = new int[height * 2];
+                }
+                return;
+            }
+            level--;
+            Node parent = pathNodes[level];
+            int slot = pathSlots[level];
+            System.arraycopy(parent.keys, slot, parent.keys, slot + 1, parent.size - slot);
+            System.arraycopy(parent.children, slot + 1, parent.children, slot + 2, parent.size - slot);
+            parent.keys[slot] = separator;
+            parent.children[slot + 1] = right;
+            parent.size++;
+            node = parent;
+        }
+    }
+
+    /**
+     * After an account was removed from the leaf of the last search, refills the
+     * nodes on the path that fell below MIN_KEYS, from the leaf up, by borrowing a
+     * key from a sibling or merging with it.
+     */
+    private void rebalance() {
+        for (int level = height - 1; level > 0; level--) {
+            Node node = pathNodes[level];
+            if (node.size >= MIN_KEYS) {
+                return;
+            }
+            Node parent = pathNodes[level - 1];
+            int slot = pathSlots[level - 1];
+            Node left = slot > 0 ? parent.children[slot - 1] : null;
+            Node right = slot < parent.size ? parent.children[slot + 1] : null;
+            if (left != null && left.size > MIN_KEYS) {
+                borrowFromLeft(parent, slot, left, node);
+                return;
+            }
+            if (right != null && right.size > MIN_KEYS) {
+                borrowFromRight(parent, slot, node, right);
+                return;
+            }
+            if (left != null) {
+                merge(parent, slot - 1, left, node);
+            } else {
+                merge(parent, slot, node, right);
+            }
+        }
+        if (!root.isLeaf() && root.size == 0) { // the root lost its last key
+            root = root.children[0];
+            height--;
+        }
+    }
+
+    /**
+     * Moves the last entry of the left sibling to the front of a node.
+     *
+     * @param parent : parent of both nodes.
+     * @param slot   : child index of the node in the parent.
+     * @param left   : the sibling on the left.
+     * @param node   : the node that is too small.
+     */
+    private static void borrowFromLeft(Node parent, int slot, Node left, Node node) {
+        System.arraycopy(node.keys, 0, node.keys, 1, node.size);
+        if (node.isLeaf()) {
+            System.arraycopy(node.accounts, 0, node.accounts, 1, node.size);
+            node.keys[0] = left.keys[left.size - 1];
+            node.accounts[0] = left.accounts[left.size - 1];
+            left.accounts[left.size - 1] = null;
+            parent.keys[slot - 1] = node.keys[0];
+        } else {
+            System.arraycopy(node.children, 0, node.children, 1, node.size + 1);
+            node.keys[0] = parent.keys[slot - 1];
+            node.children[0] = left.children[left.size];
+            left.children[left.size] = null;
+            parent.keys[slot - 1] = left.keys[left.size - 1];
+        }
+        left.size--;
+        node.size++;
+    }
+
+    /**
+     * Moves the first entry of the right sibling to the end of a node.
+     *
+     * @param parent : parent of both nodes.
+     * @param slot   : child index of the node in the parent.
+     * @param node   : the node that is too small.
+     * @param right  : the sibling on the right.
+     */
+    private static void borrowFromRight(Node parent, int slot, Node node, Node right) {
+        if (node.isLeaf()) {
+            node.keys[node.size] = right.keys[0];
+            node.accounts[node.size] = right.accounts[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            System.arraycopy(right.accounts, 1, right.accounts, 0, right.size - 1);
+            right.accounts[right.size - 1] = null;
+            parent.keys[slot] = right.keys[0];
+        } else {
+            node.keys[node.size] = parent.keys[slot];
+            node.children[node.size + 1] = right.children[0];
+            parent.keys[slot] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.size);
+            right.children[right.size] = null;
+        }
+        right.size--;
+        node.size++;
+    }
+
+    /**
+     * Appends the right node to the left node and removes the right node and the
+     * key between them from the parent.
+     *
+     * @param parent : parent of both nodes.
+     * @param slot   : child index of the left node in the parent.
+     * @param left   : the node that is kept.
+     * @param right  : the node that is emptied into the left one.
+     */
+    private static void merge(Node parent, int slot, Node left, Node right) {
+        if (left.isLeaf()) {
+            System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+            System.arraycopy(right.accounts, 0, left.accounts, left.size, right.size);
+            left.size += right.size;
+            left.next = right.next;
+        } else { // the key between them comes down from the parent
+            left.keys[left.size] = parent.keys[slot];
+            System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+            System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+            left.size += right.size + 1;
+        }
+        System.arraycopy(parent.keys, slot + 1, parent.keys, slot, parent.size - slot - 1);
+        System.arraycopy(parent.children, slot + 2, parent.children, slot + 1, parent.size - slot - 1);
+        parent.children[parent.size] = null;
+        parent.size--;
+    }
+}
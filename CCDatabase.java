@@ -1,43 +1,144 @@
-/**
- * Defines an interface for a credit card database.
- */
-public interface CCDatabase {
-
-    /**
-     * Creates an account with the given details if it does not exist. Returns
-     * <code>true</code> if the account was created; <code>false</code> otherwise.
-     */
-    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance);
-
-    /**
-     * Deletes the account with the given account number if it does exists. Returns
-     * <code>true</code> if an account was deleted; <code>false</code> otherwise.
-     */
-    public boolean deleteAccount(long accountNumber);
-
-    /**
-     * Adjusts the credit limit of the account with the given account number if it
-     * exists. Returns <code>true</code> if the account exists and was modified;
-     * <code>false</code> otherwise.
-     */
-    public boolean adjustCreditLimit(long accountNumber, double newLimit);
-
-    /**
-     * Returns the details of the given account as a string if it exists or
-     * <code>null</code> if the account does not exist. The string should be in the
-     * same format as for account creation, i.e. the credit card number, name of
-     * card holder, address of card holder, credit limit, and balance each on a
-     * separate line.
-     */
-    public String getAccount(long accountNumber);
-
-    /**
-     * Makes a purchase on the account with the given account number if it exists
-     * and the account has sufficient credit. If the account exists, but has
-     * insufficient funds (the old balance plus the purchase price is higher than
-     * the account's credit limit), then an exception will be thrown. Returns
-     * <code>true</code> if the account exists and was modified; <code>false</code>
-     * otherwise.
-     */
-    public boolean makePurchase(long accountNumber, double price) throws Exception;
-}
+import java.util.Iterator;
+
+/**
+ * Defines an interface for a credit card database.
+ */
+public interface CCDatabase {
+    /** Result of purchase: the balance was increased by the price. */
+    public static final int APPROVED = 0;
+    /** Result of purchase: the account exists but the price is over its limit. */
+    public static final int DECLINED_OVER_LIMIT = 1;
+    /** Result of purchase: there is no account with the account number. */
+    public static final int NO_SUCH_ACCOUNT = 2;
+
+    /**
+     * Creates an account with the given details if it does not exist. Returns
+     * <code>true</code> if the account was created; <code>false</code> otherwise.
+     */
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance);
+
+    /**
+     * Deletes the account with the given account number if it does exists. Returns
+     * <code>true</code> if an account was deleted; <code>false</code> otherwise.
+     */
+    public boolean deleteAccount(long accountNumber);
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists. Returns <code>true</code> if the account exists and was modified;
+     * <code>false</code> otherwise.
+     */
+    public boolean adjustCreditLimit(long accountNumber, double newLimit);
+
+    /**
+     * Returns the details of the given account as a string if it exists or
+     * <code>null</code> if the account does not exist. The string should be in the
+     * same format as for account creation, i.e. the credit card number, name of
+     * card holder, address of card holder, credit limit, and balance each on a
+     * separate line.
+     */
+    public String getAccount(long accountNumber);
+
+    /**
+     * Returns an unchangeable copy of the given account, or <code>null</code> if
+     * the account does not exist. All fields of the copy belong to the same state
+     * of the account.
+     */
+    public default AccountRecord getAccountRecord(long accountNumber) {
+        Iterator<Account> accounts = scan(accountNumber, accountNumber);
+        return accounts.hasNext() ? new AccountRecord(accounts.next()) : null;
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller, which can reuse
+     * it for every read. Returns <code>true</code> if the account exists;
+     * <code>false</code> otherwise, in which case the view is left unchanged. The
+     * name and address are the database's own Strings where it keeps them as
+     * Strings, so such a read allocates nothing.
+     */
+    public default boolean readAccount(long accountNumber, Account view) {
+        AccountRecord record = getAccountRecord(accountNumber);
+        if (record == null) {
+            return false;
+        }
+        view.set(accountNumber, record.getName(), record.getAddress(), record.getCreditLimitCents(),
+                record.getBalanceCents());
+        return true;
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit. Returns <code>APPROVED</code> if the
+     * account exists and was modified, <code>DECLINED_OVER_LIMIT</code> if the
+     * account exists but has insufficient funds (the old balance plus the purchase
+     * price is higher than the account's credit limit), and
+     * <code>NO_SUCH_ACCOUNT</code> otherwise. A decline is an ordinary result, so
+     * nothing is allocated for it.
+     */
+    public int purchase(long accountNumber, double price);
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit. If the account exists, but has
+     * insufficient funds (the old balance plus the purchase price is higher than
+     * the account's credit limit), then an exception will be thrown. Returns
+     * <code>true</code> if the account exists and was modified; <code>false</code>
+     * otherwise.
+     */
+    public default boolean makePurchase(long accountNumber, double price) throws Exception {
+        int result = purchase(accountNumber, price);
+        if (result == DECLINED_OVER_LIMIT) {
+            throw new Exception("Purchase is over this account's credit limit");
+        }
+        return result == APPROVED;
+    }
+
+    /**
+     * Returns the accounts with account numbers from <code>fromAccount</code> to
+     * <code>toAccount</code>, both included, in increasing account number order.
+     * Accounts are read as the iterator advances, so the range is never copied as
+     * a whole. The returned accounts must not be modified, and the database must
+     * not be modified while the iterator is in use.
+     */
+    public Iterator<Account> scan(long fromAccount, long toAccount);
+
+    /**
+     * Creates every account of the given arrays, which hold the details of one
+     * account at each index, as if createAccount were called for each index in
+     * order. Returns whether the account at each index was created.
+     */
+    public default boolean[] createAccounts(long accountNumbers[], String names[], String addresses[],
+            double creditLimits[], double balances[]) {
+        boolean created[] = new boolean[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            created[i] = createAccount(accountNumbers[i], names[i], addresses[i], creditLimits[i], balances[i]);
+        }
+        return created;
+    }
+
+    /**
+     * Deletes every account of the given array as if deleteAccount were called for
+     * each index in order. Returns whether the account at each index was deleted.
+     */
+    public default boolean[] deleteAccounts(long accountNumbers[]) {
+        boolean deleted[] = new boolean[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            deleted[i] = deleteAccount(accountNumbers[i]);
+        }
+        return deleted;
+    }
+
+    /**
+     * Makes the purchase at each index of the given arrays as if makePurchase were
+     * called for each index in order. Returns whether each purchase went through;
+     * a purchase over the credit limit is <code>false</code> instead of an
+     * exception, like a purchase on an account that does not exist.
+     */
+    public default boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        boolean approved[] = new boolean[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            approved[i] = purchase(accountNumbers[i], prices[i]) == APPROVED;
+        }
+        return approved;
+    }
+}
@@ -0,0 +1,339 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's that survives a restart. Wraps another
+ * database and appends every change that went through to a WriteAheadLog;
+ * opening it again replays the log into the wrapped database, which works the
+ * same for every structure. A change and its log record are made under one
+ * lock so the log holds the changes in the order they happened, while the wait
+ * for the disk happens outside it, so with group commit the changes of many
+ * threads share a single force. Each checkpoint starts a new log file, named
+ * after the first one with the number of the checkpoint appended, and deletes
+ * the old one, so a restart reads the snapshot and one short log.
+ *
+ * @author Angela Li
+ */
+public class CCDurable implements CCDatabase, Closeable {
+    private final CCDatabase structure;
+    private final String fileName; // path of the first log file
+    private final WriteAheadLog.Durability durability;
+    private final Object order; // held while a change is made and logged
+    private final String snapshotFile; // null without checkpoints
+    private WriteAheadLog log; // guarded by order
+    private int generation; // number of the current log file, guarded by order
+
+    /**
+     * Constructor for CCDurable objects. Recovers the accounts saved in the log
+     * file into the given database.
+     *
+     * @param structure  : the database holding the accounts, usually empty.
+     * @param fileName   : path of the log file, created if it does not exist.
+     * @param durability : when a change counts as saved.
+     * @throws IOException : if the log cannot be opened or read.
+     */
+    public CCDurable(CCDatabase structure, String fileName, WriteAheadLog.Durability durability) throws IOException {
+        this(structure, fileName, null, durability);
+    }
+
+    /**
+     * Constructor for CCDurable objects with checkpoints. Loads the snapshot file
+     * if there is one and replays the log file it names from the position it was
+     * taken at.
+     *
+     * @param structure    : the database holding the accounts, empty.
+     * @param fileName     : path of the first log file, created if it does not
+     *                     exist.
+     * @param snapshotFile : path of the snapshot file written by checkpoint.
+     * @param durability   : when a change counts as saved.
+     * @throws IOException : if the snapshot or the log cannot be read.
+     */
+    public CCDurable(CCDatabase structure, String fileName, String snapshotFile, WriteAheadLog.Durability durability)
+            throws IOException {
+        long position = 0;
+        int generation = 0;
+        if (snapshotFile != null && Files.exists(Paths.get(snapshotFile))) {
+            generation = Snapshot.readLogGeneration(snapshotFile);
+            position = Snapshot.restore(snapshotFile, structure);
+        }
+        this.structure = structure;
+        this.fileName = fileName;
+        this.durability = durability;
+        this.log = new WriteAheadLog(logFile(generation), durability, structure, position);
+        this.generation = generation;
+        this.order = new Object();
+        this.snapshotFile = snapshotFile;
+        if (generation > 0) {
+            Files.deleteIfExists(Paths.get(logFile(generation - 1))); // left behind by a crash in checkpoint
+        }
+    }
+
+    /**
+     * Returns the log the changes are saved in. A checkpoint replaces it.
+     *
+     * @return WriteAheadLog : the current log.
+     */
+    public WriteAheadLog getLog() {
+        synchronized (order) {
+            return log;
+        }
+    }
+
+    /**
+     * Returns the path of the log file the changes are saved in. A checkpoint
+     * replaces it.
+     *
+     * @return String : the path of the current log file.
+     */
+    public String getLogFile() {
+        synchronized (order) {
+            return logFile(generation);
+        }
+    }
+
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        try {
+            WriteAheadLog target;
+            long position;
+            synchronized (order) {
+                if (!structure.createAccount(accountNumber, name, address, creditLimit, balance)) {
+                    return false;
+                }
+                target = log;
+                position = target.appendCreate(accountNumber, name, address, creditLimit, balance);
+            }
+            target.commit(position);
+            return true;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        try {
+            WriteAheadLog target;
+            long position;
+            synchronized (order) {
+                if (!structure.deleteAccount(accountNumber)) {
+                    return false;
+                }
+                target = log;
+                position = target.appendDelete(accountNumber);
+            }
+            target.commit(position);
+            return true;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        try {
+            WriteAheadLog target;
+            long position;
+            synchronized (order) {
+                if (!structure.adjustCreditLimit(accountNumber, newLimit)) {
+                    return false;
+                }
+                target = log;
+                position = target.appendLimit(accountNumber, newLimit);
+            }
+            target.commit(position);
+            return true;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    @Override
+    public String getAccount(long accountNumber) {
+        return structure.getAccount(accountNumber);
+    }
+
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        return structure.getAccountRecord(accountNumber);
+    }
+
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        return structure.readAccount(accountNumber, view);
+    }
+
+    /**
+     * Makes a purchase on the wrapped database. Only approved purchases change an
+     * account, so only they are logged.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        try {
+            WriteAheadLog target;
+            long position;
+            synchronized (order) {
+                int result = structure.purchase(accountNumber, price);
+                if (result != APPROVED) {
+                    return result;
+                }
+                target = log;
+                position = target.appendPurchase(accountNumber, price);
+            }
+            target.commit(position);
+            return APPROVED;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        return structure.scan(fromAccount, toAccount);
+    }
+
+    /**
+     * Creates the accounts through the batch operation of the wrapped database and
+     * waits for the disk once for the whole batch.
+     */
+    @Override
+    public boolean[] createAccounts(long accountNumbers[], String names[], String addresses[], double creditLimits[],
+            double balances[]) {
+        try {
+            boolean created[];
+            WriteAheadLog target;
+            long position = 0;
+            synchronized (order) {
+                target = log;
+                created = structure.createAccounts(accountNumbers, names, addresses, creditLimits, balances);
+                for (int i = 0; i < created.length; i++) {
+                    if (created[i]) {
+                        position = target.appendCreate(accountNumbers[i], names[i], addresses[i],
+                                creditLimits[i], balances[i]);
+                    }
+                }
+            }
+            target.commit(position);
+            return created;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    /**
+     * Deletes the accounts through the batch operation of the wrapped database and
+     * waits for the disk once for the whole batch.
+     */
+    @Override
+    public boolean[] deleteAccounts(long accountNumbers[]) {
+        try {
+            boolean deleted[];
+            WriteAheadLog target;
+            long position = 0;
+            synchronized (order) {
+                target = log;
+                deleted = structure.deleteAccounts(accountNumbers);
+                for (int i = 0; i < deleted.length; i++) {
+                    if (deleted[i]) {
+                        position = target.appendDelete(accountNumbers[i]);
+                    }
+                }
+            }
+            target.commit(position);
+            return deleted;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    /**
+     * Makes the purchases through the batch operation of the wrapped database and
+     * waits for the disk once for the whole batch.
+     */
+    @Override
+    public boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        try {
+            boolean approved[];
+            WriteAheadLog target;
+            long position = 0;
+            synchronized (order) {
+                target = log;
+                approved = structure.makePurchases(accountNumbers, prices);
+                for (int i = 0; i < approved.length; i++) {
+                    if (approved[i]) {
+                        position = target.appendPurchase(accountNumbers[i], prices[i]);
+                    }
+                }
+            }
+            target.commit(position);
+            return approved;
+        } catch (IOException notSaved) {
+            throw new UncheckedIOException(notSaved);
+        }
+    }
+
+    /**
+     * Writes a snapshot of every account and starts a new, empty log file after
+     * it, so the next start only has to replay the changes made since. Changes
+     * wait until the snapshot is written. The old log is forced first in every
+     * durability mode, which also lets the calls still waiting on it return, and
+     * is deleted once the snapshot names the new one. A crash before that leaves
+     * the old snapshot and log in charge.
+     *
+     * @return integer : the number of accounts in the snapshot.
+     * @throws IOException : if the log or the snapshot cannot be written.
+     */
+    public int checkpoint() throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("No snapshot file was given");
+        }
+        synchronized (order) {
+            log.force();
+            Path next = Paths.get(logFile(generation + 1));
+            Files.deleteIfExists(next); // an empty log left behind by a crash in an earlier checkpoint
+            WriteAheadLog nextLog = new WriteAheadLog(next.toString(), durability, structure, 0);
+            int count;
+            try {
+                count = Snapshot.write(structure, snapshotFile, generation + 1, 0);
+            } catch (IOException notWritten) {
+                nextLog.close();
+                Files.deleteIfExists(next);
+                throw notWritten;
+            }
+            WriteAheadLog old = log;
+            log = nextLog;
+            generation++;
+            old.close();
+            Files.delete(Paths.get(logFile(generation - 1)));
+            return count;
+        }
+    }
+
+    /**
+     * Saves every logged change and closes the log.
+     *
+     * @throws IOException : if the log cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (order) {
+            log.close();
+        }
+    }
+
+    /**
+     * Returns the path of a log file: the first one has the given name, the one
+     * started by each later checkpoint adds its number.
+     *
+     * @param number : number of the log file.
+     * @return String : the path of the log file.
+     */
+    private String logFile(int number) {
+        return number == 0 ? fileName : fileName + "." + number;
+    }
+}
@@ -0,0 +1,344 @@
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's that wraps another database behind a
+ * CountingBloomFilter of its account numbers. A delete, credit limit change,
+ * read or purchase of an account the filter knows to be absent returns at once
+ * after reading one cache line, instead of walking a probe chain of a CCHash or
+ * a binary search of a CCSorted to its end. Accounts the filter lets through
+ * are looked up as usual, and those that turn out to be absent are counted as
+ * false positives, so the share of absent accounts the filter missed can be
+ * reported. Creates and deletes keep the filter up to date, and it is rebuilt
+ * twice as large from a scan of the database when it gets full. Like CCHash
+ * and CCSorted, it is meant for one thread at a time.
+ *
+ * @author Angela Li
+ */
+public class CCFiltered implements CCDatabase {
+    private final CCDatabase structure;
+    private CountingBloomFilter filter;
+    private long rejected; // lookups the filter answered on its own
+    private long falsePositives; // lookups the filter let through for absent accounts
+
+    /**
+     * Constructor for CCFiltered objects. Adds the accounts the database already
+     * holds to the filter.
+     *
+     * @param structure : the database to put the filter in front of.
+     */
+    public CCFiltered(CCDatabase structure) {
+        this.structure = structure;
+        rebuild(0);
+    }
+
+    /**
+     * Returns the database behind the filter.
+     *
+     * @return CCDatabase : the wrapped database.
+     */
+    public CCDatabase getStructure() {
+        return structure;
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist, and adds
+     * the account number to the filter.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        if (!structure.createAccount(accountNumber, name, address, creditLimit, balance)) {
+            return false;
+        }
+        added(accountNumber);
+        return true;
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist. An
+     * account the filter rejects is missing without asking the database.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        if (!passes(accountNumber)) {
+            return false;
+        }
+        boolean deleted = structure.deleteAccount(accountNumber);
+        if (deleted) {
+            filter.remove(accountNumber);
+        } else {
+            falsePositives++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists. An account the filter rejects is missing without asking the database.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        if (!passes(accountNumber)) {
+            return false;
+        }
+        return found(structure.adjustCreditLimit(accountNumber, newLimit));
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist. An account the filter rejects is null without
+     * asking the database.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        if (!passes(accountNumber)) {
+            return null;
+        }
+        String details = structure.getAccount(accountNumber);
+        found(details != null);
+        return details;
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account. An account the filter
+     * rejects is null without asking the database.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        if (!passes(accountNumber)) {
+            return null;
+        }
+        AccountRecord record = structure.getAccountRecord(accountNumber);
+        found(record != null);
+        return record;
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller. An account the
+     * filter rejects is missing without asking the database.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        if (!passes(accountNumber)) {
+            return false;
+        }
+        return found(structure.readAccount(accountNumber, view));
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit. An account the filter rejects is
+     * NO_SUCH_ACCOUNT without asking the database.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        if (!passes(accountNumber)) {
+            return NO_SUCH_ACCOUNT;
+        }
+        int result = structure.purchase(accountNumber, price);
+        found(result != NO_SUCH_ACCOUNT);
+        return result;
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. A range has no single account number to test, so the filter is not
+     * asked.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        return structure.scan(fromAccount, toAccount);
+    }
+
+    /**
+     * Creates the accounts through the batch operation of the wrapped database,
+     * then adds the ones that were created to the filter.
+     */
+    @Override
+    public boolean[] createAccounts(long accountNumbers[], String names[], String addresses[], double creditLimits[],
+            double balances[]) {
+        boolean created[] = structure.createAccounts(accountNumbers, names, addresses, creditLimits, balances);
+        int count = 0;
+        for (boolean result : created) {
+            if (result) {
+                count++;
+            }
+        }
+        if (filter.getCount() + count > filter.getCapacity()) {
+            rebuild(filter.getCount() + count);
+        } else {
+            for (int i = 0; i < created.length; i++) {
+                if (created[i]) {
+                    filter.add(accountNumbers[i]);
+                }
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Deletes the accounts through the batch operation of the wrapped database,
+     * then removes the ones that were deleted from the filter. The batch is passed
+     * on whole, so the filter is not asked first.
+     */
+    @Override
+    public boolean[] deleteAccounts(long accountNumbers[]) {
+        boolean deleted[] = structure.deleteAccounts(accountNumbers);
+        for (int i = 0; i < deleted.length; i++) {
+            if (deleted[i]) {
+                filter.remove(accountNumbers[i]);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Makes the purchases through the batch operation of the wrapped database. The
+     * batch is passed on whole, so the filter is not asked first.
+     *
+     * @param accountNumbers : unique numbers of the accounts.
+     * @param prices         : price of each purchase.
+     * @return boolean[] : whether each purchase went through.
+     */
+    @Override
+    public boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        return structure.makePurchases(accountNumbers, prices);
+    }
+
+    /**
+     * Returns how many lookups the filter answered on its own because the account
+     * was certainly absent.
+     *
+     * @return long : the number of rejected lookups.
+     */
+    public long getRejectedCount() {
+        return rejected;
+    }
+
+    /**
+     * Returns how many lookups the filter let through for accounts that turned
+     * out to be absent.
+     *
+     * @return long : the number of false positives.
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives;
+    }
+
+    /**
+     * Returns the share of lookups for absent accounts that the filter let
+     * through, its measured false positive rate.
+     *
+     * @return double : false positives over all lookups for absent accounts, 0 if
+     *         there were none.
+     */
+    public double getFalsePositiveRate() {
+        long absent = rejected + falsePositives;
+        return absent == 0 ? 0 : (double) falsePositives / absent;
+    }
+
+    /**
+     * Returns the filter in front of the database, for its size.
+     *
+     * @return CountingBloomFilter : the current filter.
+     */
+    public CountingBloomFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Asks the filter about an account and counts a rejection.
+     *
+     * @param accountNumber : unique number associated with the account.
+     * @return boolean : true, if the account may exist.
+     */
+    private boolean passes(long accountNumber) {
+        if (filter.mightContain(accountNumber)) {
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Counts a false positive if an account the filter let through was absent.
+     *
+     * @param found : whether the wrapped database found the account.
+     * @return boolean : found.
+     */
+    private boolean found(boolean found) {
+        if (!found) {
+            falsePositives++;
+        }
+        return found;
+    }
+
+    /**
+     * Adds a created account to the filter, or rebuilds a larger filter when the
+     * current one is full.
+     *
+     * @param accountNumber : unique number associated with the account.
+     */
+    private void added(long accountNumber) {
+        if (filter.getCount() >= filter.getCapacity()) {
+            rebuild(filter.getCount() + 1);
+        } else {
+            filter.add(accountNumber);
+        }
+    }
+
+    /**
+     * Builds a new filter from a scan of the database, sized for twice the given
+     * number of accounts.
+     *
+     * @param count : the number of accounts the database holds, or 0 to count them.
+     */
+    private void rebuild(int count) {
+        CountingBloomFilter larger = new CountingBloomFilter(count * 2);
+        Iterator<Account> accounts = structure.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+        while (accounts.hasNext()) {
+            if (larger.getCount() == larger.getCapacity()) {
+                larger = new CountingBloomFilter(larger.getCapacity() * 2);
+                accounts = structure.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+                continue;
+            }
+            larger.add(accounts.next().accountNumber);
+        }
+        filter = larger;
+    }
+}
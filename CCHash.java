@@ -1,217 +1,691 @@
-/**
- * Database of credit card account's using a hash table.
- *
- * @author Angela Li
- */
-public class CCHash implements CCDatabase {
-    private int fillLevelH; // fill level of the hash table
-    private Bucket arrayHash[];
-
-    /**
-     * Constructor for CCSorted objects.
-     */
-    public CCHash() {
-
-        this.fillLevelH = 0;
-        this.arrayHash = new Bucket[101];
-    }
-
-    /**
-     * Creates an account with the given details if it does not exist.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @param name          : name of the account owner.
-     * @param address       : address of the account owner.
-     * @param creditLimit   : purchasing limit of the acccount owners credit card.
-     * @param balance       : current balance on account owner's credit card.
-     * @return boolean : indicates if the account was created, true, if created,
-     *         false otherwise.
-     */
-    @Override
-    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
-        if ((double) fillLevelH / arrayHash.length > 0.6) {
-            resize();
-        }
-        int index = find(accountNumber);
-        Bucket newAccount = new Bucket(accountNumber, name, address, creditLimit, balance);
-        if ((arrayHash[index] == null) || (arrayHash[index].getFlag() == true)) {
-            // if bucket is null or bucket is avaliable.
-            index = find(accountNumber);
-            arrayHash[index] = newAccount;
-            fillLevelH++;
-            return true;
-        } else {
-            return false; // account already exists
-        }
-    }
-
-    /**
-     * Deletes the account with the given account number if it does exist.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @return boolean : true, if an account was deleted; false, otherwise.
-     */
-    @Override
-    public boolean deleteAccount(long accountNumber) {
-        int index = find(accountNumber);
-        if (arrayHash[index] == null && arrayHash[index].getAccount().accountNumber == accountNumber) {
-            arrayHash[index].setFlag(true);
-            fillLevelH--;
-            return true;
-        } else {
-            return false; // account does not already exist
-        }
-    }
-
-    /**
-     * Adjusts the credit limit of the account with the given account number if it
-     * exists.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @param newLimit      : the new credit limit to be adjusted on the account.
-     * @returns boolean : true, if the account exists and was modified; false,
-     *          otherwise.
-     */
-    @Override
-    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
-        int index = find(accountNumber);
-        if (arrayHash[index] != null && arrayHash[index].getAccount().accountNumber == accountNumber) {
-            arrayHash[index].setCreditLimit(newLimit);
-            return true;
-        } else {
-            return false; // account does not already exist
-        }
-    }
-
-    /**
-     * Returns the details of the given account as a string if it exists or null if
-     * the account does not exist. The string should be in the same format as for
-     * account creation, i.e. the credit card number, name of card holder, address
-     * of card holder, credit limit, and balance each on a separate line.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @return String : a string with either all account information or a error
-     *         message if it doesn't exist.
-     */
-    @Override
-    public String getAccount(long accountNumber) {
-        int index = find(accountNumber);
-        if (arrayHash[index] != null && arrayHash[index].getAccount().accountNumber == accountNumber) {
-            return arrayHash[index].getAccount().toString();
-        } else { // account does not already exist
-            return (arrayHash[index].getAccount().toString() + "cannot be printed is it does not exist");
-        }
-    }
-
-    /**
-     * Makes a purchase on the account with the given account number if it exists
-     * and the account has sufficient credit. If the account exists, but has
-     * insufficient funds (the old balance plus the purchase price is higher than
-     * the account's credit limit), then an exception will be thrown.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @param price         : price of purchase being made.
-     * @return boolean : true, if purchase went through and false, otherwise.
-     * @throws Exception : if price plus balance exceeds the credit limit.
-     */
-    @Override
-    public boolean makePurchase(long accountNumber, double price) throws Exception {
-        int index = find(accountNumber);
-        if (arrayHash[index] != null && arrayHash[index].getAccount().accountNumber == accountNumber) {
-            if (arrayHash[index].getCreditLimit() > (arrayHash[index].getBalance() + price)) {
-                arrayHash[index].setBalance(price);
-                return true;
-            } else {
-                throw new Exception("Purchase is over this account's credit limit");
-            }
-        } else {
-            return false; // account does not already exist
-        }
-    }
-
-    /**
-     * Performs a folding operation that hashes the account number by splitting a
-     * long into 4 shorts, then multiplying each short by a power of 17 and then
-     * added together.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @return integer : folded account number that will be used as the index.
-     */
-    int hash(long accountNumber) {
-        short c4 = (short) (accountNumber % 10000);
-        short c3 = (short) (((accountNumber - c4) % 100000000) / 10000);
-        short c2 = (short) (((accountNumber - (c4 + c3)) % Math.pow(10, 12)) / Math.pow(10, 8));
-        short c1 = (short) (((accountNumber - (c4 + c2 + c3)) % Math.pow(10, 16)) / Math.pow(10, 12));
-
-        return (int) ((17 * c1) + (Math.pow(17, 2) * c2) + (Math.pow(17, 3) * c3) + (Math.pow(17, 4) * c4))
-                % arrayHash.length;
-    }
-
-    /**
-     * Searches the array for the index where element belongs by hashing the account
-     * number and probing until either a bucket with a true deletion flag or a null
-     * bucket is encountered. The search also stops if the account number is already
-     * in the table.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @return index : the index where the element belongs or where the index where
-     *         the element currently already is.
-     */
-    int find(long accountNumber) {
-        int index = hash(accountNumber);
-        double counter = 0.0; // counter for probing
-        int probeIndex = 0;
-        if (arrayHash[index] == null) { // immediately hashes to a null bucket
-            return index;
-        } else if (arrayHash[index].getAccount().accountNumber == accountNumber) {
-            return index;
-        } else { // probing the hash table until a null bucket
-            do {
-                counter++;
-                probeIndex = (int) ((index + Math.pow(counter, 2.0)) % arrayHash.length);
-                if (arrayHash[probeIndex] == null) {
-                    return probeIndex;
-                } else if (arrayHash[probeIndex].getAccount().accountNumber == accountNumber) {
-                    return probeIndex;
-                }
-            } while (arrayHash[probeIndex] != null);
-        }
-        return index;
-    }
-
-    /**
-     * Resizes the hash table with the next largest prime number as the new size.
-     */
-    private void resize() {
-        int size = this.arrayHash.length * 2 + 1;
-        while (!isPrime(size)) {
-            size += 2;
-        }
-        Bucket[] temp = arrayHash;
-        arrayHash = new Bucket[size];
-        fillLevelH = 0;
-        for (int i = 0; i < temp.length; i++) { // rehashing table
-            if (temp[i] != null && temp[i].getFlag() == false) {
-                createAccount(temp[i].getAccount().accountNumber, temp[i].getAccount().name,
-                        temp[i].getAccount().address, temp[i].getAccount().creditLimit, temp[i].getAccount().balance);
-            }
-        }
-        return;
-    }
-
-    /**
-     * Checks if the integer is a prime number or not; i.e. has no other multiples
-     * besides 1 and itself.
-     *
-     * @param size : the number in question.
-     * @return boolean : true, if number is prime, false, if number is not prime.
-     */
-    private boolean isPrime(int size) {
-        for (int divisor = 2; divisor < size; divisor++) {
-            if (size % divisor == 0) {
-                return false;
-            }
-        }
-        return true;
-    }
-}
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's using a hash table. The account numbers
+ * are kept in an array next to the buckets, so probing and moving buckets
+ * during a resize never follow a Bucket or Account reference.
+ *
+ * @author Angela Li
+ */
+public class CCHash implements CCDatabase {
+    private static final int MIGRATE_STEP = 4; // old buckets moved by each operation during a resize
+    private static final long FREE = 0L; // account number of a bucket that was never used
+    private static final long DELETED = -1L; // account number of a bucket whose account was deleted
+
+    private final boolean incremental; // resize a few buckets per operation instead of all at once
+    private int fillLevelH; // fill level of the hash table
+    private int tombstonesH; // buckets of arrayHash with a true deletion flag
+    private Bucket arrayHash[];
+    private long keys[]; // account number of each bucket of arrayHash, FREE or DELETED without an account
+    private Bucket oldHash[]; // table still being moved into arrayHash, null if no resize is running
+    private long oldKeys[]; // account numbers of oldHash, DELETED once a bucket is moved
+    private int migrateIndex; // next bucket of oldHash to move
+    private long searches; // number of calls to find since the statistics were reset
+    private long probes; // buckets looked at by those calls
+    private int longestProbe; // most buckets looked at by a single call
+    private int resizes; // number of times the table was rebuilt
+    private long resizeNanos; // time spent in rebuild
+
+    /**
+     * Constructor for CCSorted objects.
+     */
+    public CCHash() {
+        this(false);
+    }
+
+    /**
+     * Constructor for CCHash objects.
+     *
+     * @param incremental : true to move the buckets of the old table a few at a
+     *                    time on every operation after a resize, so no single
+     *                    insert pays for rehashing the whole table.
+     */
+    public CCHash(boolean incremental) {
+        this.incremental = incremental;
+        this.fillLevelH = 0;
+        this.tombstonesH = 0;
+        this.arrayHash = new Bucket[101];
+        this.keys = new long[101];
+        this.oldHash = null;
+        this.oldKeys = null;
+        this.migrateIndex = 0;
+        this.resizes = 0;
+        this.resizeNanos = 0;
+        resetProbeStatistics();
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        if (!isAccount(accountNumber)) {
+            return false; // reserved to mark free and deleted buckets
+        }
+        migrate(MIGRATE_STEP);
+        if ((double) (fillLevelH + tombstonesH) / arrayHash.length > 0.6) {
+            resize();
+        }
+        if (lookup(accountNumber) != null) {
+            return false; // account already exists
+        }
+        insert(new Bucket(accountNumber, name, address, Money.toCents(creditLimit), Money.toCents(balance)),
+                accountNumber, hash(accountNumber, arrayHash.length));
+        return true;
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        migrate(MIGRATE_STEP);
+        if (!isAccount(accountNumber)) {
+            return false; // reserved to mark free and deleted buckets
+        }
+        int index = find(keys, accountNumber);
+        if (keys[index] == accountNumber) {
+            keys[index] = DELETED;
+            arrayHash[index] = null;
+            fillLevelH--;
+            tombstonesH++;
+            if (tombstonesH > arrayHash.length / 4) { // probes are mostly skipping deleted buckets
+                rebuild(arrayHash.length);
+            }
+            return true;
+        }
+        if (oldHash != null) { // not moved yet, the move skips deleted buckets
+            index = find(oldKeys, accountNumber);
+            if (oldKeys[index] == accountNumber) {
+                oldKeys[index] = DELETED;
+                oldHash[index] = null;
+                return true;
+            }
+        }
+        return false; // account does not already exist
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        migrate(MIGRATE_STEP);
+        Bucket bucket = lookup(accountNumber);
+        if (bucket != null) {
+            bucket.setCreditLimit(Money.toCents(newLimit));
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist. The string should be in the same format as for
+     * account creation, i.e. the credit card number, name of card holder, address
+     * of card holder, credit limit, and balance each on a separate line.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        migrate(MIGRATE_STEP);
+        Bucket bucket = lookup(accountNumber);
+        if (bucket != null) {
+            return bucket.getAccount().toString();
+        } else { // account does not already exist
+            return null;
+        }
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        migrate(MIGRATE_STEP);
+        Bucket bucket = lookup(accountNumber);
+        return bucket != null ? new AccountRecord(bucket.getAccount()) : null;
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        migrate(MIGRATE_STEP);
+        Bucket bucket = lookup(accountNumber);
+        if (bucket == null) {
+            return false; // account does not already exist
+        }
+        Account current = bucket.getAccount();
+        view.set(accountNumber, current.name, current.address, current.creditLimit, current.balance);
+        return true;
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit, i.e. the old balance plus the purchase
+     * price is not higher than the account's credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        migrate(MIGRATE_STEP);
+        Bucket bucket = lookup(accountNumber);
+        if (bucket != null) {
+            long cents = Money.toCents(price);
+            if (Money.withinLimit(bucket.getBalance(), cents, bucket.getCreditLimit())) {
+                bucket.setBalance(cents);
+                return APPROVED;
+            } else {
+                return DECLINED_OVER_LIMIT;
+            }
+        } else {
+            return NO_SUCH_ACCOUNT; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. The table has no order, so the account numbers in the range are
+     * collected and sorted first, and each account is looked up when the iterator
+     * reaches it.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        long matches[] = new long[16];
+        int count = 0;
+        for (int table = 0; table < 2; table++) {
+            long numbers[] = table == 0 ? keys : oldKeys;
+            int start = table == 0 ? 0 : migrateIndex; // the buckets before migrateIndex are in arrayHash
+            for (int i = start; numbers != null && i < numbers.length; i++) {
+                if (isAccount(numbers[i]) && numbers[i] >= fromAccount && numbers[i] <= toAccount) {
+                    if (count == matches.length) {
+                        matches = Arrays.copyOf(matches, count * 2);
+                    }
+                    matches[count++] = numbers[i];
+                }
+            }
+        }
+        return new SortedKeyIterator(Arrays.copyOf(matches, count), accountNumber -> {
+            Bucket bucket = lookup(accountNumber);
+            return bucket == null ? null : bucket.getAccount();
+        });
+    }
+
+    /**
+     * Creates every account of the given arrays as if createAccount were called for
+     * each index in order. The table is grown once for the whole batch, then the
+     * accounts are hashed and inserted in table order, so the table is walked from
+     * front to back instead of at random.
+     *
+     * @param accountNumbers : unique numbers of the new accounts.
+     * @param names          : names of the account owners.
+     * @param addresses      : addresses of the account owners.
+     * @param creditLimits   : purchasing limits of the accounts.
+     * @param balances       : current balances of the accounts.
+     * @return boolean[] : whether the account at each index was created.
+     */
+    @Override
+    public boolean[] createAccounts(long accountNumbers[], String names[], String addresses[], double creditLimits[],
+            double balances[]) {
+        if (oldHash != null) { // the batch needs every account in arrayHash
+            migrate(oldHash.length);
+        }
+        int size = arrayHash.length;
+        while (fillLevelH + accountNumbers.length > size * 0.6) {
+            size = nextSize(size);
+        }
+        if (size != arrayHash.length || fillLevelH + tombstonesH + accountNumbers.length > size * 0.6) {
+            rebuild(size);
+            migrate(oldHash == null ? 0 : oldHash.length);
+        }
+        boolean created[] = new boolean[accountNumbers.length];
+        long order[] = tableOrder(accountNumbers);
+        for (long entry : order) {
+            int i = (int) entry;
+            int home = (int) (entry >>> 32);
+            if (isAccount(accountNumbers[i]) && keys[find(keys, accountNumbers[i], home)] != accountNumbers[i]) {
+                insert(new Bucket(accountNumbers[i], names[i], addresses[i], Money.toCents(creditLimits[i]),
+                        Money.toCents(balances[i])), accountNumbers[i], home);
+                created[i] = true;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Deletes every account of the given array as if deleteAccount were called for
+     * each index in order, visiting the table in order like createAccounts. The
+     * table is only compacted after the whole batch.
+     *
+     * @param accountNumbers : unique numbers of the accounts being deleted.
+     * @return boolean[] : whether the account at each index was deleted.
+     */
+    @Override
+    public boolean[] deleteAccounts(long accountNumbers[]) {
+        if (oldHash != null) {
+            return CCDatabase.super.deleteAccounts(accountNumbers);
+        }
+        boolean deleted[] = new boolean[accountNumbers.length];
+        long order[] = tableOrder(accountNumbers);
+        for (long entry : order) {
+            int i = (int) entry;
+            if (!isAccount(accountNumbers[i])) {
+                continue; // reserved to mark free and deleted buckets
+            }
+            int index = find(keys, accountNumbers[i], (int) (entry >>> 32));
+            if (keys[index] == accountNumbers[i]) {
+                keys[index] = DELETED;
+                arrayHash[index] = null;
+                fillLevelH--;
+                tombstonesH++;
+                deleted[i] = true;
+            }
+        }
+        if (tombstonesH > arrayHash.length / 4) {
+            rebuild(arrayHash.length);
+        }
+        return deleted;
+    }
+
+    /**
+     * Makes the purchase at each index of the given arrays as if makePurchase were
+     * called for each index in order, visiting the table in order like
+     * createAccounts. A purchase over the credit limit is false in the result.
+     *
+     * @param accountNumbers : unique numbers of the accounts.
+     * @param prices         : price of each purchase.
+     * @return boolean[] : whether each purchase went through.
+     */
+    @Override
+    public boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        if (oldHash != null) {
+            return CCDatabase.super.makePurchases(accountNumbers, prices);
+        }
+        boolean approved[] = new boolean[accountNumbers.length];
+        long order[] = tableOrder(accountNumbers);
+        for (long entry : order) {
+            int i = (int) entry;
+            if (!isAccount(accountNumbers[i])) {
+                continue; // reserved to mark free and deleted buckets
+            }
+            int index = find(keys, accountNumbers[i], (int) (entry >>> 32));
+            Bucket bucket = arrayHash[index];
+            long cents = Money.toCents(prices[i]);
+            if (keys[index] == accountNumbers[i]
+                    && Money.withinLimit(bucket.getBalance(), cents, bucket.getCreditLimit())) {
+                bucket.setBalance(cents);
+                approved[i] = true;
+            }
+        }
+        return approved;
+    }
+
+    /**
+     * Hashes every account number of a batch and sorts the batch by hash. Each
+     * entry holds the hash in the high 32 bits and the batch index in the low 32
+     * bits, so entries of the same account keep their batch order.
+     *
+     * @param accountNumbers : account numbers of the batch.
+     * @return long[] : the batch entries in table order.
+     */
+    private long[] tableOrder(long accountNumbers[]) {
+        long order[] = new long[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            order[i] = ((long) hash(accountNumbers[i], arrayHash.length) << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * Performs a folding operation that hashes the account number by splitting a
+     * long into 4 shorts, then multiplying each short by a power of 17 and then
+     * added together. The shorts are cut out with long division by constants,
+     * which the compiler turns into multiplications.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param length        : length of the table being indexed.
+     * @return integer : folded account number that will be used as the index.
+     */
+    int hash(long accountNumber, int length) {
+        short c4 = (short) (accountNumber % 10000);
+        short c3 = (short) (accountNumber / 10000 % 10000);
+        short c2 = (short) (accountNumber / 100000000 % 10000);
+        short c1 = (short) (accountNumber / 1000000000000L % 10000);
+
+        return ((17 * c1) + (289 * c2) + (4913 * c3) + (83521 * c4)) % length; // powers of 17
+    }
+
+    /**
+     * Searches the array for the index where element belongs by hashing the account
+     * number and probing until a free bucket is encountered, going past deleted
+     * ones. The search also stops if the account number is already in the table.
+     *
+     * @param table         : account numbers of the table being searched.
+     * @param accountNumber : unique number associated with the current account.
+     * @return index : the index where the element belongs or where the index where
+     *         the element currently already is.
+     */
+    int find(long table[], long accountNumber) {
+        return find(table, accountNumber, hash(accountNumber, table.length));
+    }
+
+    /**
+     * Searches the array like find(table, accountNumber) when the hash of the
+     * account number is already known.
+     *
+     * @param table         : account numbers of the table being searched.
+     * @param accountNumber : unique number associated with the current account.
+     * @param index         : hash of the account number for this table.
+     * @return index : the index where the element belongs or where the index where
+     *         the element currently already is.
+     */
+    private int find(long table[], long accountNumber, int index) {
+        long counter = 0; // counter for probing, a long so counter * counter cannot overflow
+        int probeIndex = index;
+        // probing the hash table until a free bucket
+        while (table[probeIndex] != FREE && table[probeIndex] != accountNumber) {
+            counter++;
+            probeIndex = (int) ((index + counter * counter) % table.length);
+        }
+        searches++;
+        probes += counter + 1;
+        if (counter + 1 > longestProbe) {
+            longestProbe = (int) counter + 1;
+        }
+        return probeIndex;
+    }
+
+    /**
+     * Puts a bucket into the first free or deleted bucket of its probe sequence in
+     * the current table. The account must not be in the table already.
+     *
+     * @param newAccount    : the bucket being inserted.
+     * @param accountNumber : account number of the bucket.
+     * @param index         : hash of the account number for the current table.
+     */
+    private void insert(Bucket newAccount, long accountNumber, int index) {
+        long counter = 0; // counter for probing, a long so counter * counter cannot overflow
+        int probeIndex = index;
+        while (isAccount(keys[probeIndex])) {
+            counter++;
+            probeIndex = (int) ((index + counter * counter) % keys.length);
+        }
+        if (keys[probeIndex] == DELETED) { // reusing a deleted bucket
+            tombstonesH--;
+        }
+        keys[probeIndex] = accountNumber;
+        arrayHash[probeIndex] = newAccount;
+        fillLevelH++;
+    }
+
+    /**
+     * Returns the bucket of the account if it exists and has not been deleted. While
+     * a resize is running the account may still be in the old table, so that table
+     * is searched as well.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return Bucket : the bucket of the account, or null if it does not exist.
+     */
+    private Bucket lookup(long accountNumber) {
+        if (!isAccount(accountNumber)) {
+            return null;
+        }
+        int index = find(keys, accountNumber);
+        if (keys[index] == accountNumber) {
+            return arrayHash[index];
+        }
+        if (oldHash != null) {
+            index = find(oldKeys, accountNumber);
+            if (oldKeys[index] == accountNumber) {
+                return oldHash[index];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if an entry of a key array belongs to an account, that is if the
+     * bucket is neither free nor deleted.
+     *
+     * @param accountNumber : the entry in question.
+     * @return boolean : true, if the bucket is in use, false, if it is free or
+     *         deleted.
+     */
+    private boolean isAccount(long accountNumber) {
+        return accountNumber != FREE && accountNumber != DELETED;
+    }
+
+    /**
+     * Resizes the hash table with the next largest prime number as the new size.
+     * If most of the used buckets are deleted ones, the table is rebuilt at the
+     * same size instead, which drops them.
+     */
+    private void resize() {
+        if (oldHash != null) { // the previous resize has to finish first
+            migrate(oldHash.length);
+        }
+        int size = this.arrayHash.length;
+        if (fillLevelH > size * 0.3) {
+            size = nextSize(size);
+        }
+        rebuild(size);
+        return;
+    }
+
+    /**
+     * Returns the next table length after the given one, the first prime number
+     * past twice the length.
+     *
+     * @param size : the current table length.
+     * @return integer : the next table length.
+     */
+    private int nextSize(int size) {
+        size = size * 2 + 1;
+        while (!isPrime(size)) {
+            size += 2;
+        }
+        return size;
+    }
+
+    /**
+     * Replaces the table with an empty one of the given size and moves the accounts
+     * that are not deleted into it. The old table is kept until all its buckets are
+     * moved, which happens right away unless the table resizes incrementally.
+     *
+     * @param size : length of the new table, a prime number.
+     */
+    private void rebuild(int size) {
+        long start = System.nanoTime();
+        if (oldHash != null) { // the previous resize has to finish first
+            migrate(oldHash.length);
+        }
+        oldHash = arrayHash;
+        oldKeys = keys;
+        arrayHash = new Bucket[size];
+        keys = new long[size];
+        fillLevelH = 0;
+        tombstonesH = 0;
+        migrateIndex = 0;
+        if (!incremental) {
+            migrate(oldHash.length);
+        }
+        resizes++;
+        resizeNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Moves the next buckets of the old table into the current table. Only the
+     * account numbers are read, the Bucket objects are moved as they are. A moved
+     * bucket is marked deleted in the old table, so probing in it still works for
+     * the accounts that have not been moved yet and never finds a moved one.
+     *
+     * @param steps : number of old buckets to go through.
+     */
+    private void migrate(int steps) {
+        if (oldHash == null) {
+            return;
+        }
+        int end = Math.min(oldHash.length, migrateIndex + steps);
+        for (int i = migrateIndex; i < end; i++) { // rehashing table
+            long accountNumber = oldKeys[i];
+            if (isAccount(accountNumber)) {
+                insert(oldHash[i], accountNumber, hash(accountNumber, keys.length));
+                oldKeys[i] = DELETED;
+                oldHash[i] = null;
+            }
+        }
+        migrateIndex = end;
+        if (migrateIndex == oldHash.length) {
+            oldHash = null;
+            oldKeys = null;
+        }
+    }
+
+    /**
+     * Replaces every account with the given ones, which must have distinct account
+     * numbers. The table is sized for all of them up front and the accounts are
+     * placed straight into their buckets in table order, without the existence
+     * check and resizes of createAccount.
+     *
+     * @param accountNumbers : unique numbers of the accounts.
+     * @param names          : names of the account owners.
+     * @param addresses      : addresses of the account owners.
+     * @param creditLimits   : purchasing limits of the accounts in cents.
+     * @param balances       : current balances of the accounts in cents.
+     */
+    void load(long accountNumbers[], String names[], String addresses[], long creditLimits[], long balances[]) {
+        int size = 101;
+        while (accountNumbers.length > size * 0.3) {
+            size = nextSize(size);
+        }
+        arrayHash = new Bucket[size];
+        keys = new long[size];
+        oldHash = null;
+        oldKeys = null;
+        migrateIndex = 0;
+        fillLevelH = 0;
+        tombstonesH = 0;
+        for (long entry : tableOrder(accountNumbers)) {
+            int i = (int) entry;
+            insert(new Bucket(accountNumbers[i], names[i], addresses[i], creditLimits[i], balances[i]),
+                    accountNumbers[i], (int) (entry >>> 32));
+        }
+    }
+
+    /**
+     * Returns the average number of buckets looked at per search since the
+     * statistics were last reset.
+     *
+     * @return double : the average probe length, 0 if nothing was searched.
+     */
+    public double getAverageProbeLength() {
+        return searches == 0 ? 0.0 : (double) probes / searches;
+    }
+
+    /**
+     * Returns the most buckets looked at by a single search since the statistics
+     * were last reset.
+     *
+     * @return integer : the longest probe length.
+     */
+    public int getMaxProbeLength() {
+        return longestProbe;
+    }
+
+    /**
+     * Returns the share of the current table taken by deleted buckets.
+     *
+     * @return double : deleted buckets divided by the table length.
+     */
+    public double getTombstoneRatio() {
+        return (double) tombstonesH / arrayHash.length;
+    }
+
+    /**
+     * Returns the number of times the table was rebuilt, either to grow or to
+     * drop deleted buckets.
+     *
+     * @return integer : the number of rebuilds.
+     */
+    public int getResizeCount() {
+        return resizes;
+    }
+
+    /**
+     * Returns the total time spent rebuilding the table. With incremental resizing
+     * this leaves out the buckets moved later by the other operations.
+     *
+     * @return long : the time in nanoseconds.
+     */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    /**
+     * Starts the probe length statistics over.
+     */
+    public void resetProbeStatistics() {
+        this.searches = 0;
+        this.probes = 0;
+        this.longestProbe = 0;
+    }
+
+    /**
+     * Checks if the integer is a prime number or not; i.e. has no other multiples
+     * besides 1 and itself.
+     *
+     * @param size : the number in question.
+     * @return boolean : true, if number is prime, false, if number is not prime.
+     */
+    private boolean isPrime(int size) {
+        if (size % 2 == 0) {
+            return size == 2;
+        }
+        for (int divisor = 3; divisor <= size / divisor; divisor += 2) {
+            if (size % divisor == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,315 @@
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's that wraps another database and keeps a
+ * TextIndex of the names and one of the addresses of its accounts, so the
+ * accounts of a card holder are found by exact name or address, or by the
+ * start of one, without scanning the whole database. Only creates and deletes
+ * change a name or an address, so only they update the indexes, under one lock
+ * shared with the lookups; purchases, credit limit changes and reads go
+ * straight to the wrapped database. A delete first reads the account to know
+ * which entries to remove.
+ *
+ * @author Angela Li
+ */
+public class CCIndexed implements CCDatabase {
+    private final CCDatabase structure;
+    private final TextIndex names;
+    private final TextIndex addresses;
+    private final Account view; // the account being deleted, guarded by the indexes' lock
+    private final Object lock; // held while the accounts and the indexes change together
+
+    /**
+     * Constructor for CCIndexed objects. Indexes the accounts the database
+     * already holds.
+     *
+     * @param structure : the database to index.
+     */
+    public CCIndexed(CCDatabase structure) {
+        this.structure = structure;
+        this.names = new TextIndex();
+        this.addresses = new TextIndex();
+        this.view = new Account();
+        this.lock = new Object();
+        Iterator<Account> accounts = structure.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+        while (accounts.hasNext()) {
+            Account current = accounts.next();
+            names.add(current.name, current.accountNumber);
+            addresses.add(current.address, current.accountNumber);
+        }
+    }
+
+    /**
+     * Returns the database being indexed.
+     *
+     * @return CCDatabase : the wrapped database.
+     */
+    public CCDatabase getStructure() {
+        return structure;
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist, and adds
+     * its name and address to the indexes under the same lock.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        synchronized (lock) {
+            if (!structure.createAccount(accountNumber, name, address, creditLimit, balance)) {
+                return false;
+            }
+            names.add(name, accountNumber);
+            addresses.add(address, accountNumber);
+            return true;
+        }
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist, and
+     * removes its name and address from the indexes under the same lock.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        synchronized (lock) {
+            if (!structure.readAccount(accountNumber, view) || !structure.deleteAccount(accountNumber)) {
+                return false;
+            }
+            names.remove(view.name, accountNumber);
+            addresses.remove(view.address, accountNumber);
+            return true;
+        }
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists. The indexes do not change, so the call goes straight through.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        return structure.adjustCreditLimit(accountNumber, newLimit);
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        return structure.getAccount(accountNumber);
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        return structure.getAccountRecord(accountNumber);
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        return structure.readAccount(accountNumber, view);
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit. The indexes do not change, so the
+     * call goes straight through.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        return structure.purchase(accountNumber, price);
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order, as the wrapped database returns them.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        return structure.scan(fromAccount, toAccount);
+    }
+
+    /**
+     * Creates the accounts through the batch operation of the wrapped database,
+     * then indexes the ones that were created.
+     */
+    @Override
+    public boolean[] createAccounts(long accountNumbers[], String names[], String addresses[], double creditLimits[],
+            double balances[]) {
+        synchronized (lock) {
+            boolean created[] = structure.createAccounts(accountNumbers, names, addresses, creditLimits, balances);
+            for (int i = 0; i < created.length; i++) {
+                if (created[i]) {
+                    this.names.add(names[i], accountNumbers[i]);
+                    this.addresses.add(addresses[i], accountNumbers[i]);
+                }
+            }
+            return created;
+        }
+    }
+
+    /**
+     * Reads the name and address of every account, deletes the accounts through
+     * the batch operation of the wrapped database, then removes the ones that
+     * were deleted from the indexes.
+     */
+    @Override
+    public boolean[] deleteAccounts(long accountNumbers[]) {
+        synchronized (lock) {
+            String oldNames[] = new String[accountNumbers.length];
+            String oldAddresses[] = new String[accountNumbers.length];
+            for (int i = 0; i < accountNumbers.length; i++) {
+                if (structure.readAccount(accountNumbers[i], view)) {
+                    oldNames[i] = view.name;
+                    oldAddresses[i] = view.address;
+                }
+            }
+            boolean deleted[] = structure.deleteAccounts(accountNumbers);
+            for (int i = 0; i < deleted.length; i++) {
+                if (deleted[i]) {
+                    names.remove(oldNames[i], accountNumbers[i]);
+                    addresses.remove(oldAddresses[i], accountNumbers[i]);
+                }
+            }
+            return deleted;
+        }
+    }
+
+    /**
+     * Makes the purchases through the batch operation of the wrapped database. The
+     * indexes do not change, so the batch goes straight through.
+     *
+     * @param accountNumbers : unique numbers of the accounts.
+     * @param prices         : price of each purchase.
+     * @return boolean[] : whether each purchase went through.
+     */
+    @Override
+    public boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        return structure.makePurchases(accountNumbers, prices);
+    }
+
+    /**
+     * Returns the accounts whose owner has exactly the given name.
+     *
+     * @param name : the name to look for.
+     * @return long[] : the account numbers in increasing order, empty if none.
+     */
+    public long[] findByName(String name) {
+        synchronized (lock) {
+            return names.find(name);
+        }
+    }
+
+    /**
+     * Returns the accounts whose owner's name starts with the given prefix, in
+     * order of the name and then of the account number.
+     *
+     * @param prefix : the start of the names to look for.
+     * @param limit  : the most account numbers to return.
+     * @return long[] : the account numbers, empty if none.
+     */
+    public long[] findByNamePrefix(String prefix, int limit) {
+        synchronized (lock) {
+            return names.findPrefix(prefix, limit);
+        }
+    }
+
+    /**
+     * Returns the accounts whose owner has exactly the given address.
+     *
+     * @param address : the address to look for.
+     * @return long[] : the account numbers in increasing order, empty if none.
+     */
+    public long[] findByAddress(String address) {
+        synchronized (lock) {
+            return addresses.find(address);
+        }
+    }
+
+    /**
+     * Returns the accounts whose owner's address starts with the given prefix, in
+     * order of the address and then of the account number.
+     *
+     * @param prefix : the start of the addresses to look for.
+     * @param limit  : the most account numbers to return.
+     * @return long[] : the account numbers, empty if none.
+     */
+    public long[] findByAddressPrefix(String prefix, int limit) {
+        synchronized (lock) {
+            return addresses.findPrefix(prefix, limit);
+        }
+    }
+
+    /**
+     * Returns the number of distinct names in the name index.
+     *
+     * @return integer : the number of names.
+     */
+    public int getNameCount() {
+        synchronized (lock) {
+            return names.getTextCount();
+        }
+    }
+
+    /**
+     * Returns the number of distinct addresses in the address index.
+     *
+     * @return integer : the number of addresses.
+     */
+    public int getAddressCount() {
+        synchronized (lock) {
+            return addresses.getTextCount();
+        }
+    }
+
+    /**
+     * Returns the most accounts that have shared one name or one address so far.
+     *
+     * @return integer : the longest list of accounts in either index.
+     */
+    public int getLongestPostings() {
+        synchronized (lock) {
+            return Math.max(names.getLongestPostings(), addresses.getLongestPostings());
+        }
+    }
+}
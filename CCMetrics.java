@@ -0,0 +1,352 @@
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's that wraps another database and measures
+ * it. Every operation is counted by its outcome and its latency is recorded in
+ * a LatencyHistogram, and the internal statistics of a CCHash or CCSorted are
+ * reported with them. Recording costs two clock reads and a short lock on the
+ * histogram of the operation, so the wrapper can stay on. A CCFiltered reports
+ * the false positive rate of its filter. The metrics are written in the
+ * Prometheus text format, ready to be scraped.
+ *
+ * @author Angela Li
+ */
+public class CCMetrics implements CCDatabase {
+    private static final int CREATE = 0;
+    private static final int DELETE = 1;
+    private static final int LIMIT = 2;
+    private static final int GET = 3;
+    private static final int PURCHASE = 4;
+    private static final int SCAN = 5;
+    private static final int CREATE_BATCH = 6;
+    private static final int DELETE_BATCH = 7;
+    private static final int PURCHASE_BATCH = 8;
+    private static final String OPERATIONS[] = { "createAccount", "deleteAccount", "adjustCreditLimit",
+            "getAccount", "purchase", "scan", "createAccounts", "deleteAccounts", "makePurchases" };
+
+    private static final int OK = 0;
+    private static final int DECLINED = 1; // purchases over the credit limit
+    private static final int MISSING = 2; // the account did not exist, or already existed for a create
+    private static final String OUTCOMES[] = { "ok", "declined", "missing" };
+
+    private static final double QUANTILES[] = { 0.5, 0.9, 0.99, 0.999, 0.9999 };
+
+    private final CCDatabase structure;
+    private final LatencyHistogram latencies[];
+    private final long outcomes[][]; // accounts handled per operation and outcome, guarded by the histogram
+
+    /**
+     * Constructor for CCMetrics objects.
+     *
+     * @param structure : the database being measured.
+     */
+    public CCMetrics(CCDatabase structure) {
+        this.structure = structure;
+        this.latencies = new LatencyHistogram[OPERATIONS.length];
+        this.outcomes = new long[OPERATIONS.length][OUTCOMES.length];
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            this.latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Returns the database being measured.
+     *
+     * @return CCDatabase : the wrapped database.
+     */
+    public CCDatabase getStructure() {
+        return structure;
+    }
+
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        long start = System.nanoTime();
+        boolean created = structure.createAccount(accountNumber, name, address, creditLimit, balance);
+        record(CREATE, start, created ? OK : MISSING);
+        return created;
+    }
+
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        long start = System.nanoTime();
+        boolean deleted = structure.deleteAccount(accountNumber);
+        record(DELETE, start, deleted ? OK : MISSING);
+        return deleted;
+    }
+
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        long start = System.nanoTime();
+        boolean adjusted = structure.adjustCreditLimit(accountNumber, newLimit);
+        record(LIMIT, start, adjusted ? OK : MISSING);
+        return adjusted;
+    }
+
+    @Override
+    public String getAccount(long accountNumber) {
+        long start = System.nanoTime();
+        String details = structure.getAccount(accountNumber);
+        record(GET, start, details != null ? OK : MISSING);
+        return details;
+    }
+
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        long start = System.nanoTime();
+        AccountRecord record = structure.getAccountRecord(accountNumber);
+        record(GET, start, record != null ? OK : MISSING);
+        return record;
+    }
+
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        long start = System.nanoTime();
+        boolean found = structure.readAccount(accountNumber, view);
+        record(GET, start, found ? OK : MISSING);
+        return found;
+    }
+
+    @Override
+    public int purchase(long accountNumber, double price) {
+        long start = System.nanoTime();
+        int result = structure.purchase(accountNumber, price);
+        record(PURCHASE, start, result == APPROVED ? OK : result == DECLINED_OVER_LIMIT ? DECLINED : MISSING);
+        return result;
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. Only the time to start the scan is recorded.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        long start = System.nanoTime();
+        Iterator<Account> accounts = structure.scan(fromAccount, toAccount);
+        record(SCAN, start, OK);
+        return accounts;
+    }
+
+    /**
+     * Creates the accounts through the batch operation of the wrapped database.
+     * The latency is recorded once for the whole batch and the outcome once per
+     * account.
+     */
+    @Override
+    public boolean[] createAccounts(long accountNumbers[], String names[], String addresses[], double creditLimits[],
+            double balances[]) {
+        long start = System.nanoTime();
+        boolean created[] = structure.createAccounts(accountNumbers, names, addresses, creditLimits, balances);
+        recordBatch(CREATE_BATCH, start, created);
+        return created;
+    }
+
+    /**
+     * Deletes the accounts through the batch operation of the wrapped database.
+     * The latency is recorded once for the whole batch and the outcome once per
+     * account.
+     */
+    @Override
+    public boolean[] deleteAccounts(long accountNumbers[]) {
+        long start = System.nanoTime();
+        boolean deleted[] = structure.deleteAccounts(accountNumbers);
+        recordBatch(DELETE_BATCH, start, deleted);
+        return deleted;
+    }
+
+    /**
+     * Makes the purchases through the batch operation of the wrapped database. The
+     * latency is recorded once for the whole batch; a purchase that did not go
+     * through counts as declined, as the batch does not tell why.
+     */
+    @Override
+    public boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        long start = System.nanoTime();
+        boolean approved[] = structure.makePurchases(accountNumbers, prices);
+        recordBatch(PURCHASE_BATCH, start, approved);
+        return approved;
+    }
+
+    /**
+     * Returns how many times an operation ended with the given outcome.
+     *
+     * @param operation : name of the operation, e.g. "purchase".
+     * @param outcome   : "ok", "declined" or "missing".
+     * @return long : the count, 0 for unknown names.
+     */
+    public long getCount(String operation, String outcome) {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            for (int j = 0; j < OUTCOMES.length; j++) {
+                if (OPERATIONS[i].equals(operation) && OUTCOMES[j].equals(outcome)) {
+                    synchronized (latencies[i]) {
+                        return outcomes[i][j];
+                    }
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format: a counter of
+     * accounts handled per operation and outcome, a summary of the latencies per
+     * operation, and gauges for the statistics of the wrapped structure.
+     *
+     * @return String : the metrics, one sample per line.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        text.append("# HELP ccdb_operations_total Accounts handled per operation and outcome.\n");
+        text.append("# TYPE ccdb_operations_total counter\n");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            synchronized (latencies[i]) {
+                for (int j = 0; j < OUTCOMES.length; j++) {
+                    if (outcomes[i][j] > 0) {
+                        text.append("ccdb_operations_total{op=\"").append(OPERATIONS[i]).append("\",outcome=\"")
+                                .append(OUTCOMES[j]).append("\"} ").append(outcomes[i][j]).append('\n');
+                    }
+                }
+            }
+        }
+        text.append("# HELP ccdb_operation_latency_seconds Latency of each call.\n");
+        text.append("# TYPE ccdb_operation_latency_seconds summary\n");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            synchronized (latencies[i]) {
+                LatencyHistogram histogram = latencies[i];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                String name = "ccdb_operation_latency_seconds";
+                String label = "op=\"" + OPERATIONS[i] + "\"";
+                for (double quantile : QUANTILES) {
+                    sample(text, name, label + ",quantile=\"" + quantile + "\"",
+                            seconds(histogram.getPercentile(quantile * 100)));
+                }
+                sample(text, name + "_sum", label, seconds(histogram.getSum()));
+                sample(text, name + "_count", label, String.valueOf(histogram.getCount()));
+            }
+        }
+        if (structure instanceof CCHash) {
+            CCHash hash = (CCHash) structure;
+            gauge(text, "ccdb_hash_probe_length_average", "Buckets looked at per search.",
+                    String.valueOf(hash.getAverageProbeLength()));
+            gauge(text, "ccdb_hash_probe_length_max", "Most buckets looked at by one search.",
+                    String.valueOf(hash.getMaxProbeLength()));
+            gauge(text, "ccdb_hash_tombstone_ratio", "Share of the table taken by deleted buckets.",
+                    String.valueOf(hash.getTombstoneRatio()));
+            counter(text, "ccdb_hash_resizes_total", "Times the table was rebuilt.",
+                    String.valueOf(hash.getResizeCount()));
+            counter(text, "ccdb_hash_resize_seconds_total", "Time spent rebuilding the table.",
+                    seconds(hash.getResizeNanos()));
+        } else if (structure instanceof CCSorted) {
+            counter(text, "ccdb_sorted_shifts_total", "Accounts moved to open or close a gap.",
+                    String.valueOf(((CCSorted) structure).getShiftCount()));
+        } else if (structure instanceof CCFiltered) {
+            CCFiltered filtered = (CCFiltered) structure;
+            counter(text, "ccdb_filter_rejected_total", "Lookups of absent accounts answered by the filter alone.",
+                    String.valueOf(filtered.getRejectedCount()));
+            counter(text, "ccdb_filter_false_positives_total", "Lookups the filter let through for absent accounts.",
+                    String.valueOf(filtered.getFalsePositiveCount()));
+            gauge(text, "ccdb_filter_false_positive_ratio", "Share of lookups of absent accounts let through.",
+                    String.valueOf(filtered.getFalsePositiveRate()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Records the latency and outcome of one call.
+     *
+     * @param operation : index of the operation.
+     * @param start     : System.nanoTime() before the call.
+     * @param outcome   : index of the outcome.
+     */
+    private void record(int operation, long start, int outcome) {
+        long nanos = System.nanoTime() - start;
+        LatencyHistogram histogram = latencies[operation];
+        synchronized (histogram) {
+            histogram.record(nanos);
+            outcomes[operation][outcome]++;
+        }
+    }
+
+    /**
+     * Records the latency of a batch call and the outcome of every account in it.
+     *
+     * @param operation : index of the operation.
+     * @param start     : System.nanoTime() before the call.
+     * @param results   : whether each account of the batch succeeded.
+     */
+    private void recordBatch(int operation, long start, boolean results[]) {
+        long nanos = System.nanoTime() - start;
+        int failures = 0;
+        for (boolean result : results) {
+            if (!result) {
+                failures++;
+            }
+        }
+        int failure = operation == PURCHASE_BATCH ? DECLINED : MISSING;
+        LatencyHistogram histogram = latencies[operation];
+        synchronized (histogram) {
+            histogram.record(nanos);
+            outcomes[operation][OK] += results.length - failures;
+            outcomes[operation][failure] += failures;
+        }
+    }
+
+    /**
+     * Appends one sample line.
+     *
+     * @param text   : the metrics being written.
+     * @param name   : name of the metric.
+     * @param labels : labels of the sample without braces, or empty.
+     * @param value  : value of the sample.
+     */
+    private static void sample(StringBuilder text, String name, String labels, String value) {
+        text.append(name);
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends a gauge with its help and type lines.
+     *
+     * @param text  : the metrics being written.
+     * @param name  : name of the metric.
+     * @param help  : description of the metric.
+     * @param value : value of the gauge.
+     */
+    private static void gauge(StringBuilder text, String name, String help, String value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        sample(text, name, "", value);
+    }
+
+    /**
+     * Appends a counter with its help and type lines.
+     *
+     * @param text  : the metrics being written.
+     * @param name  : name of the metric.
+     * @param help  : description of the metric.
+     * @param value : value of the counter.
+     */
+    private static void counter(StringBuilder text, String name, String help, String value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        sample(text, name, "", value);
+    }
+
+    /**
+     * Converts nanoseconds to seconds as Prometheus expects them.
+     *
+     * @param nanos : a time in nanoseconds.
+     * @return String : the time in seconds.
+     */
+    private static String seconds(long nanos) {
+        return String.valueOf(nanos / 1e9);
+    }
+}
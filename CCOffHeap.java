@@ -0,0 +1,572 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's kept outside the Java heap. The accounts
+ * are fixed width records in an open addressing hash table, laid out like
+ * CCPrimitiveHash, inside one direct ByteBuffer: account number, credit limit,
+ * balance, and the offset of the name and address in a second buffer that
+ * holds all the text. The heap only holds the two buffer objects, however many
+ * accounts there are, so the garbage collector has nothing to trace. Given a
+ * file name, both buffers are memory mapped files instead, and the accounts are
+ * still there when the database is opened again.
+ *
+ * The table holds up to 2^25 slots, so about 20 million accounts, and the text
+ * buffer up to 2 GB.
+ *
+ * @author Angela Li
+ */
+public class CCOffHeap implements CCDatabase, Closeable {
+    private static final long FREE = Long.MIN_VALUE; // account number of an empty slot
+    private static final int INITIAL_SIZE = 1024; // slots, must be a power of two
+    private static final int MAX_SIZE = 1 << 25; // slots that fit in one buffer
+    private static final int INITIAL_TEXT = 1 << 16; // bytes of the text buffer
+
+    private static final int MAGIC = 0x43434F32; // "CCO2", amounts in cents
+    private static final int HEADER_SIZE = 64; // magic, slots, fill level, text end and unused text
+    private static final int SLOT_SIZE = 32;
+    private static final int NUMBER = 0; // offsets of the fields inside a slot
+    private static final int LIMIT = 8;
+    private static final int BALANCE = 16;
+    private static final int TEXT = 24;
+
+    private final String fileName; // base name of the mapped files, null for direct buffers
+    private ByteBuffer table; // header followed by the slots
+    private ByteBuffer text; // name and address of each account, each an int length and UTF-8 bytes
+    private int mask; // number of slots - 1
+    private int fillLevelO; // fill level of the hash table
+    private int textEnd; // bytes of text in use, including text of deleted accounts
+    private int textUnused; // bytes of text of deleted accounts
+
+    /**
+     * Constructor for CCOffHeap objects that keeps the accounts in direct buffers,
+     * freed when the database is garbage collected.
+     */
+    public CCOffHeap() {
+        this.fileName = null;
+        this.table = allocateTable(".accounts", INITIAL_SIZE);
+        this.text = allocate(".text", INITIAL_TEXT);
+        this.textEnd = 0;
+        this.textUnused = 0;
+        this.fillLevelO = 0;
+        writeHeader();
+    }
+
+    /**
+     * Constructor for CCOffHeap objects that keeps the accounts in the memory
+     * mapped files fileName.accounts and fileName.text, opening the accounts
+     * already saved there.
+     *
+     * @param fileName : base path of the two files.
+     * @throws IOException : if the files cannot be opened or are not account files.
+     */
+    public CCOffHeap(String fileName) throws IOException {
+        this.fileName = fileName;
+        Path tableFile = Paths.get(fileName + ".accounts");
+        if (Files.exists(tableFile) && Files.size(tableFile) >= HEADER_SIZE) {
+            ByteBuffer header = map(".accounts", HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(tableFile + " is not an account file");
+            }
+            int slots = header.getInt(4);
+            this.table = map(".accounts", HEADER_SIZE + (long) slots * SLOT_SIZE);
+            this.mask = slots - 1;
+            this.fillLevelO = table.getInt(8);
+            this.textEnd = table.getInt(12);
+            this.textUnused = table.getInt(16);
+            this.text = map(".text", Math.max(INITIAL_TEXT, Files.size(Paths.get(fileName + ".text"))));
+        } else {
+            this.table = allocateTable(".accounts", INITIAL_SIZE);
+            this.text = allocate(".text", INITIAL_TEXT);
+            this.textEnd = 0;
+            this.textUnused = 0;
+            this.fillLevelO = 0;
+            writeHeader();
+        }
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        if (accountNumber == FREE) {
+            return false; // reserved to mark empty slots
+        }
+        if ((double) (fillLevelO + 1) / (mask + 1) > 0.6) {
+            resize();
+        }
+        int slot = slot(find(accountNumber));
+        if (table.getLong(slot + NUMBER) != FREE) {
+            return false; // account already exists
+        }
+        int textOffset = appendText(name, address);
+        table.putLong(slot + NUMBER, accountNumber);
+        table.putLong(slot + LIMIT, Money.toCents(creditLimit));
+        table.putLong(slot + BALANCE, Money.toCents(balance));
+        table.putLong(slot + TEXT, textOffset);
+        fillLevelO++;
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist. The
+     * entries after the deleted slot are shifted back into it like in
+     * CCPrimitiveHash. The text of the account stays behind until more than half
+     * of the text buffer is unused, then the buffer is compacted.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        int index = find(accountNumber);
+        if (table.getLong(slot(index) + NUMBER) == FREE) {
+            return false; // account does not already exist
+        }
+        textUnused += textLength((int) table.getLong(slot(index) + TEXT));
+        int hole = index;
+        int next = (hole + 1) & mask;
+        long current;
+        while ((current = table.getLong(slot(next) + NUMBER)) != FREE) {
+            int home = hash(current);
+            // move the entry back if its home slot is not between the hole and itself
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table.putLong(slot(hole) + NUMBER, FREE);
+        fillLevelO--;
+        if (textUnused > textEnd / 2 && textEnd > INITIAL_TEXT) {
+            compactText();
+        }
+        writeHeader();
+        return true;
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        int slot = slot(find(accountNumber));
+        if (table.getLong(slot + NUMBER) != FREE) {
+            table.putLong(slot + LIMIT, Money.toCents(newLimit));
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        Account current = copyAccount(accountNumber);
+        if (current != null) {
+            return current.toString();
+        } else {
+            return null; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        Account current = copyAccount(accountNumber);
+        return current != null ? new AccountRecord(current) : null;
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller. The name and
+     * address are decoded from the text buffer, so they are new Strings.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        int slot = slot(find(accountNumber));
+        if (table.getLong(slot + NUMBER) == FREE) {
+            return false; // account does not already exist
+        }
+        int textOffset = (int) table.getLong(slot + TEXT);
+        view.set(accountNumber, readText(textOffset), readText(textOffset + 4 + text.getInt(textOffset)),
+                table.getLong(slot + LIMIT), table.getLong(slot + BALANCE));
+        return true;
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit, i.e. the old balance plus the purchase
+     * price is not higher than the account's credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        int slot = slot(find(accountNumber));
+        if (table.getLong(slot + NUMBER) != FREE) {
+            long balance = table.getLong(slot + BALANCE);
+            long cents = Money.toCents(price);
+            if (Money.withinLimit(balance, cents, table.getLong(slot + LIMIT))) {
+                table.putLong(slot + BALANCE, balance + cents);
+                return APPROVED;
+            } else {
+                return DECLINED_OVER_LIMIT;
+            }
+        } else {
+            return NO_SUCH_ACCOUNT; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. The account numbers in the range are collected and sorted first, and
+     * each account is copied onto the heap when the iterator reaches it.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        long matches[] = new long[16];
+        int count = 0;
+        for (int i = 0; i <= mask; i++) {
+            long current = table.getLong(slot(i) + NUMBER);
+            if (current != FREE && current >= fromAccount && current <= toAccount) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = current;
+            }
+        }
+        return new SortedKeyIterator(Arrays.copyOf(matches, count), this::copyAccount);
+    }
+
+    /**
+     * Writes the mapped files to disk. Does nothing for direct buffers, which are
+     * freed when the database is garbage collected.
+     */
+    @Override
+    public void close() {
+        if (fileName != null) {
+            ((MappedByteBuffer) table).force();
+            ((MappedByteBuffer) text).force();
+        }
+    }
+
+    /**
+     * Copies an account out of the buffers into a new Account object.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return Account : a copy of the account, or null if it does not exist.
+     */
+    private Account copyAccount(long accountNumber) {
+        Account current = new Account();
+        return readAccount(accountNumber, current) ? current : null;
+    }
+
+    /**
+     * Returns the index of the home slot of an account number, using the same hash
+     * as CCPrimitiveHash.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : the home index of the account number.
+     */
+    private int hash(long accountNumber) {
+        return (int) CCPrimitiveHash.mix(accountNumber) & mask;
+    }
+
+    /**
+     * Searches the table with linear probing from the home index of the account
+     * number until either the account number or an empty slot is found.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return index : the index where the account is or the empty index where it
+     *         belongs.
+     */
+    private int find(long accountNumber) {
+        int index = hash(accountNumber);
+        long current = table.getLong(slot(index) + NUMBER);
+        while (current != accountNumber && current != FREE) {
+            index = (index + 1) & mask;
+            current = table.getLong(slot(index) + NUMBER);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the position of a slot in the table buffer.
+     *
+     * @param index : index of the slot.
+     * @return integer : the byte offset of the slot.
+     */
+    private static int slot(int index) {
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+    /**
+     * Copies the entry in one slot to another slot.
+     *
+     * @param from : index of the entry being moved.
+     * @param to   : index the entry is moved to.
+     */
+    private void move(int from, int to) {
+        int source = slot(from);
+        int target = slot(to);
+        for (int field = 0; field < SLOT_SIZE; field += 8) {
+            table.putLong(target + field, table.getLong(source + field));
+        }
+    }
+
+    /**
+     * Doubles the table and re-inserts every entry of the old one. The text stays
+     * where it is.
+     */
+    private void resize() {
+        if (mask + 1 >= MAX_SIZE) {
+            throw new IllegalStateException("Off-heap account table is full");
+        }
+        ByteBuffer old = table;
+        int oldSize = mask + 1;
+        table = allocateTable(".accounts.tmp", oldSize * 2);
+        for (int i = 0; i < oldSize; i++) { // rehashing table
+            long current = old.getLong(slot(i) + NUMBER);
+            if (current != FREE) {
+                int target = slot(find(current));
+                for (int field = 0; field < SLOT_SIZE; field += 8) {
+                    table.putLong(target + field, old.getLong(slot(i) + field));
+                }
+            }
+        }
+        writeHeader();
+        replaceFile(".accounts.tmp", ".accounts");
+    }
+
+    /**
+     * Adds the name and address of a new account to the end of the text buffer,
+     * growing it if needed.
+     *
+     * @param name    : name of the account owner.
+     * @param address : address of the account owner.
+     * @return integer : the offset of the name in the text buffer.
+     */
+    private int appendText(String name, String address) {
+        byte nameBytes[] = name.getBytes(StandardCharsets.UTF_8);
+        byte addressBytes[] = address.getBytes(StandardCharsets.UTF_8);
+        long needed = (long) textEnd + 8 + nameBytes.length + addressBytes.length;
+        if (needed > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap text buffer is full");
+        }
+        if (needed > text.capacity()) {
+            long size = text.capacity();
+            while (size < needed) {
+                size *= 2;
+            }
+            ByteBuffer bigger = fileName == null ? allocate(".text", (int) Math.min(size, Integer.MAX_VALUE))
+                    : mapUnchecked(".text", Math.min(size, Integer.MAX_VALUE)); // the mapping keeps the old bytes
+            if (fileName == null) {
+                bigger.put(0, text, 0, textEnd);
+            }
+            text = bigger;
+        }
+        int offset = textEnd;
+        text.putInt(offset, nameBytes.length);
+        text.put(offset + 4, nameBytes);
+        text.putInt(offset + 4 + nameBytes.length, addressBytes.length);
+        text.put(offset + 8 + nameBytes.length, addressBytes);
+        textEnd = (int) needed;
+        return offset;
+    }
+
+    /**
+     * Returns the bytes taken by the name and address starting at an offset.
+     *
+     * @param offset : offset of the name in the text buffer.
+     * @return integer : the length of both texts and their lengths.
+     */
+    private int textLength(int offset) {
+        int nameLength = text.getInt(offset);
+        return 8 + nameLength + text.getInt(offset + 4 + nameLength);
+    }
+
+    /**
+     * Decodes one name or address.
+     *
+     * @param offset : offset of the length of the text.
+     * @return String : the text.
+     */
+    private String readText(int offset) {
+        byte bytes[] = new byte[text.getInt(offset)];
+        text.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies the text of every account into a new buffer without the text of the
+     * deleted accounts.
+     */
+    private void compactText() {
+        ByteBuffer compact = allocate(".text.tmp", Math.max(INITIAL_TEXT, textEnd - textUnused));
+        int end = 0;
+        for (int i = 0; i <= mask; i++) {
+            int slot = slot(i);
+            if (table.getLong(slot + NUMBER) != FREE) {
+                int offset = (int) table.getLong(slot + TEXT);
+                int length = textLength(offset);
+                compact.put(end, text, offset, length);
+                table.putLong(slot + TEXT, end);
+                end += length;
+            }
+        }
+        text = compact;
+        textEnd = end;
+        textUnused = 0;
+        replaceFile(".text.tmp", ".text");
+    }
+
+    /**
+     * Saves the size of the table and text in the header, so a mapped database can
+     * be opened again.
+     */
+    private void writeHeader() {
+        table.putInt(0, MAGIC);
+        table.putInt(4, mask + 1);
+        table.putInt(8, fillLevelO);
+        table.putInt(12, textEnd);
+        table.putInt(16, textUnused);
+    }
+
+    /**
+     * Creates an empty table with the given number of slots and makes it current
+     * for find.
+     *
+     * @param suffix : file name suffix when the database is mapped.
+     * @param size   : number of slots, a power of two.
+     * @return ByteBuffer : the table.
+     */
+    private ByteBuffer allocateTable(String suffix, int size) {
+        ByteBuffer slots = allocate(suffix, HEADER_SIZE + size * SLOT_SIZE);
+        for (int i = 0; i < size; i++) {
+            slots.putLong(slot(i) + NUMBER, FREE);
+        }
+        this.mask = size - 1;
+        return slots;
+    }
+
+    /**
+     * Creates an empty buffer, direct or mapped from a new file.
+     *
+     * @param suffix : file name suffix when the database is mapped.
+     * @param size   : size in bytes.
+     * @return ByteBuffer : the buffer.
+     */
+    private ByteBuffer allocate(String suffix, int size) {
+        if (fileName == null) {
+            return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        try {
+            Files.deleteIfExists(Paths.get(fileName + suffix));
+        } catch (IOException notDeleted) {
+            throw new IllegalStateException("Cannot replace " + fileName + suffix, notDeleted);
+        }
+        return mapUnchecked(suffix, size);
+    }
+
+    /**
+     * Maps a file of the database like map, turning an error into an unchecked
+     * exception for the CCDatabase methods that cannot throw one.
+     *
+     * @param suffix : file name suffix.
+     * @param size   : bytes to map, the file grows to this size.
+     * @return ByteBuffer : the mapped file.
+     */
+    private ByteBuffer mapUnchecked(String suffix, long size) {
+        try {
+            return map(suffix, size);
+        } catch (IOException notMapped) {
+            throw new IllegalStateException("Cannot map " + fileName + suffix, notMapped);
+        }
+    }
+
+    /**
+     * Maps the start of a file of the database into memory. The mapping stays
+     * valid after the channel is closed.
+     *
+     * @param suffix : file name suffix.
+     * @param size   : bytes to map, the file grows to this size.
+     * @return ByteBuffer : the mapped file.
+     * @throws IOException : if the file cannot be mapped.
+     */
+    private ByteBuffer map(String suffix, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName + suffix), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Moves a rebuilt file over the file it replaces, after writing it to disk.
+     *
+     * @param from : suffix of the rebuilt file.
+     * @param to   : suffix of the file being replaced.
+     */
+    private void replaceFile(String from, String to) {
+        if (fileName == null) {
+            return;
+        }
+        ((MappedByteBuffer) (from.startsWith(".accounts") ? table : text)).force();
+        try {
+            Files.move(Paths.get(fileName + from), Paths.get(fileName + to), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException notMoved) {
+            throw new IllegalStateException("Cannot replace " + fileName + to, notMoved);
+        }
+    }
+}
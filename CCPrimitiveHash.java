@@ -0,0 +1,408 @@
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's using an open addressing hash table that
+ * keeps every field in parallel primitive arrays instead of Bucket and Account
+ * objects. Lookups touch the account number array only, and purchases and
+ * credit limit changes never allocate. Names and addresses are kept in a
+ * StringArena and only rebuilt when an account is read.
+ *
+ * @author Angela Li
+ */
+public class CCPrimitiveHash implements CCDatabase {
+    private static final long FREE = Long.MIN_VALUE; // account number of an empty slot
+    private static final int INITIAL_SIZE = 128; // must be a power of two
+
+    private int fillLevelP; // fill level of the hash table
+    private int mask; // table length - 1, used in place of the modulo
+    private long accountNumbers[];
+    private long creditLimits[]; // in cents
+    private long balances[]; // in cents
+    private final StringArena text; // names and addresses, only read by getAccount
+    private int names[]; // references into text
+    private int addresses[];
+
+    /**
+     * Constructor for CCPrimitiveHash objects.
+     */
+    public CCPrimitiveHash() {
+        this.fillLevelP = 0;
+        this.text = new StringArena();
+        allocate(INITIAL_SIZE);
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        if (accountNumber == FREE) {
+            return false; // reserved to mark empty slots
+        }
+        if ((double) (fillLevelP + 1) / accountNumbers.length > 0.6) {
+            resize();
+        }
+        int index = find(accountNumber);
+        if (accountNumbers[index] == FREE) {
+            accountNumbers[index] = accountNumber;
+            creditLimits[index] = Money.toCents(creditLimit);
+            balances[index] = Money.toCents(balance);
+            names[index] = text.add(name);
+            addresses[index] = text.add(address);
+            fillLevelP++;
+            return true;
+        } else {
+            return false; // account already exists
+        }
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist. The
+     * entries after the deleted slot are shifted back into it, so the table never
+     * holds deletion markers that lookups would have to probe past. Once most of
+     * the text store holds deleted names and addresses, it is compacted.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        int index = find(accountNumber);
+        if (accountNumbers[index] == FREE) {
+            return false; // account does not already exist
+        }
+        text.remove(names[index]);
+        text.remove(addresses[index]);
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (accountNumbers[next] != FREE) {
+            int home = hash(accountNumbers[next]);
+            // move the entry back if its home slot is not between the hole and itself
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        accountNumbers[hole] = FREE;
+        names[hole] = StringArena.NONE;
+        addresses[hole] = StringArena.NONE;
+        fillLevelP--;
+        if (text.isWasteful()) {
+            text.compact(names, addresses);
+        }
+        return true;
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        int index = find(accountNumber);
+        if (accountNumbers[index] != FREE) {
+            creditLimits[index] = Money.toCents(newLimit);
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist. The string should be in the same format as for
+     * account creation, i.e. the credit card number, name of card holder, address
+     * of card holder, credit limit, and balance each on a separate line.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        Account current = copyAccount(accountNumber);
+        if (current != null) {
+            return current.toString();
+        } else {
+            return null; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        return readRecord(accountNumber);
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit, i.e. the old balance plus the purchase
+     * price is not higher than the account's credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        int index = find(accountNumber);
+        if (accountNumbers[index] != FREE) {
+            long cents = Money.toCents(price);
+            if (Money.withinLimit(balances[index], cents, creditLimits[index])) {
+                balances[index] += cents;
+                return APPROVED;
+            } else {
+                return DECLINED_OVER_LIMIT;
+            }
+        } else {
+            return NO_SUCH_ACCOUNT; // account does not already exist
+        }
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller. The name and
+     * address are rebuilt from the StringArena, so they are new Strings. Like
+     * readRecord, it may run while another thread is changing the table.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        int index = probe(accountNumber);
+        if (index < 0) {
+            return false; // account does not already exist
+        }
+        String name = text.get(names[index]);
+        String address = text.get(addresses[index]);
+        view.set(accountNumber, name, address, creditLimits[index], balances[index]);
+        return true;
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. The table has no order, so the account numbers in the range are
+     * collected and sorted first, and each account is copied out of the arrays
+     * when the iterator reaches it.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        return new SortedKeyIterator(keysInRange(fromAccount, toAccount), this::copyAccount);
+    }
+
+    /**
+     * Collects the account numbers in the given range, in table order.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return long[] : the account numbers of the range.
+     */
+    long[] keysInRange(long fromAccount, long toAccount) {
+        long matches[] = new long[16];
+        int count = 0;
+        for (int i = 0; i < accountNumbers.length; i++) {
+            long current = accountNumbers[i];
+            if (current != FREE && current >= fromAccount && current <= toAccount) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = current;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Checks if an account exists without copying anything out of it.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    boolean contains(long accountNumber) {
+        return accountNumber != FREE && accountNumbers[find(accountNumber)] != FREE;
+    }
+
+    /**
+     * Copies an account out of the arrays into a new Account object.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return Account : a copy of the account, or null if it does not exist.
+     */
+    Account copyAccount(long accountNumber) {
+        Account current = new Account();
+        return readAccount(accountNumber, current) ? current : null;
+    }
+
+    /**
+     * Copies an account into an AccountRecord. Like readAccount, it may run while
+     * another thread is changing the table.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    AccountRecord readRecord(long accountNumber) {
+        int index = probe(accountNumber);
+        if (index < 0) {
+            return null;
+        }
+        return new AccountRecord(accountNumber, text.get(names[index]), text.get(addresses[index]),
+                creditLimits[index], balances[index]);
+    }
+
+    /**
+     * Searches the table like find, but may run while another thread is changing
+     * it. The account number array is read once and the search stops after one
+     * pass over the table, so a table caught in the middle of a change gives a
+     * wrong index or makes the caller's next array access throw an
+     * IndexOutOfBoundsException, but never a search that does not end; the caller
+     * must make sure nothing changed while it ran and otherwise throw its result
+     * away.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return index : the index of the account, or -1 if it does not exist.
+     */
+    private int probe(long accountNumber) {
+        if (accountNumber == FREE) {
+            return -1;
+        }
+        long numbers[] = accountNumbers;
+        int last = numbers.length - 1;
+        int index = (int) mix(accountNumber) & last;
+        for (int probes = 0; probes <= last; probes++) {
+            long current = numbers[index];
+            if (current == accountNumber) {
+                return index;
+            } else if (current == FREE) {
+                return -1;
+            }
+            index = (index + 1) & last;
+        }
+        return -1;
+    }
+
+    /**
+     * Mixes all 64 bits of the account number (the finalizer of MurmurHash3) so
+     * that account numbers which only differ in a few digits still spread over the
+     * whole table, then keeps the low bits as the index.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : the home index of the account number.
+     */
+    int hash(long accountNumber) {
+        return (int) mix(accountNumber) & mask;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, every bit of the result depends on every bit
+     * of the account number.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return long : the mixed account number.
+     */
+    static long mix(long accountNumber) {
+        long h = accountNumber;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Searches the table with linear probing from the home index of the account
+     * number until either the account number or an empty slot is found.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return index : the index where the account is or the empty index where it
+     *         belongs.
+     */
+    int find(long accountNumber) {
+        int index = hash(accountNumber);
+        long current = accountNumbers[index];
+        while (current != accountNumber && current != FREE) {
+            index = (index + 1) & mask;
+            current = accountNumbers[index];
+        }
+        return index;
+    }
+
+    /**
+     * Copies the entry in one slot to another slot.
+     *
+     * @param from : index of the entry being moved.
+     * @param to   : index the entry is moved to.
+     */
+    private void move(int from, int to) {
+        accountNumbers[to] = accountNumbers[from];
+        creditLimits[to] = creditLimits[from];
+        balances[to] = balances[from];
+        names[to] = names[from];
+        addresses[to] = addresses[from];
+    }
+
+    /**
+     * Allocates empty arrays of the given size.
+     *
+     * @param size : the new table length, a power of two.
+     */
+    private void allocate(int size) {
+        this.mask = size - 1;
+        this.accountNumbers = new long[size];
+        this.creditLimits = new long[size];
+        this.balances = new long[size];
+        this.names = new int[size];
+        this.addresses = new int[size];
+        Arrays.fill(accountNumbers, FREE);
+        Arrays.fill(names, StringArena.NONE);
+        Arrays.fill(addresses, StringArena.NONE);
+    }
+
+    /**
+     * Doubles the table and re-inserts every entry of the old arrays.
+     */
+    private void resize() {
+        long oldNumbers[] = accountNumbers;
+        long oldLimits[] = creditLimits;
+        long oldBalances[] = balances;
+        int oldNames[] = names;
+        int oldAddresses[] = addresses;
+        allocate(oldNumbers.length * 2);
+        for (int i = 0; i < oldNumbers.length; i++) { // rehashing table
+            if (oldNumbers[i] != FREE) {
+                int index = find(oldNumbers[i]);
+                accountNumbers[index] = oldNumbers[i];
+                creditLimits[index] = oldLimits[i];
+                balances[index] = oldBalances[i];
+                names[index] = oldNames[i];
+                addresses[index] = oldAddresses[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,446 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Database of credit card account's spread over several ShardServer
+ * processes. Account numbers are placed on a consistent hash ring: every shard
+ * owns POINTS points on the ring, and an account belongs to the shard of the
+ * first point at or after the hash of its account number. Adding a shard only
+ * moves the accounts that fall just before its points, about one in every
+ * shard count of them, which addShard copies over from the other shards.
+ *
+ * A single operation is one request and answer on the connection of its
+ * shard. The batch operations send up to WINDOW requests before they read the
+ * answers, so a batch pays for one round trip per window rather than one per
+ * account; the window keeps the unread answers small enough that a shard never
+ * waits to send them while the router is still sending requests. Every call
+ * is synchronized, so calls from several threads take turns on the
+ * connections.
+ *
+ * @author Angela Li
+ */
+public class CCShardRouter implements CCDatabase, Closeable {
+    private static final int POINTS = 64; // points on the ring per shard
+    private static final int WINDOW = 4096; // requests sent before their answers are read
+
+    private final ArrayList<Shard> shards;
+    private long points[]; // the points of all shards in increasing order
+    private Shard owners[]; // the shard of each point
+
+    /**
+     * Connection to one shard server.
+     */
+    private static final class Shard {
+        final String address; // host:port
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Shard(String address) throws IOException {
+            int colon = address.lastIndexOf(':');
+            this.address = address;
+            this.socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+            this.socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+    }
+
+    /**
+     * Constructor for CCShardRouter objects. Connects to every shard server; the
+     * shards are expected to be empty.
+     *
+     * @param addresses : host:port of each shard server.
+     * @throws IOException : if a shard server cannot be reached.
+     */
+    public CCShardRouter(String... addresses) throws IOException {
+        this.shards = new ArrayList<>();
+        try {
+            for (String address : addresses) {
+                shards.add(new Shard(address));
+            }
+        } catch (IOException unreachable) {
+            close();
+            throw unreachable;
+        }
+        placeShards();
+    }
+
+    /**
+     * Connects to one more shard server, which is expected to be empty, and moves
+     * the accounts it now owns over to it from the other shards.
+     *
+     * @param address : host:port of the new shard server.
+     * @return integer : the number of accounts moved.
+     * @throws IOException : if a shard server cannot be reached.
+     */
+    public synchronized int addShard(String address) throws IOException {
+        Shard added = new Shard(address);
+        ArrayList<Shard> previous = new ArrayList<>(shards);
+        shards.add(added);
+        placeShards();
+        int moved = 0;
+        for (Shard shard : previous) {
+            ArrayList<AccountRecord> leaving = new ArrayList<>();
+            for (AccountRecord record : scanShard(shard, Long.MIN_VALUE, Long.MAX_VALUE)) {
+                if (shardOf(record.getAccountNumber()) == added) {
+                    leaving.add(record);
+                }
+            }
+            for (int first = 0; first < leaving.size(); first += WINDOW) {
+                int last = Math.min(leaving.size(), first + WINDOW);
+                for (int i = first; i < last; i++) { // copied first, so no account is ever missing from both
+                    AccountRecord record = leaving.get(i);
+                    writeCreate(added, record.getAccountNumber(), record.getName(), record.getAddress(),
+                            record.getCreditLimitCents(), record.getBalanceCents());
+                }
+                added.out.flush();
+                for (int i = first; i < last; i++) {
+                    added.in.readBoolean();
+                }
+                for (int i = first; i < last; i++) {
+                    shard.out.writeByte(ShardServer.DELETE);
+                    shard.out.writeLong(leaving.get(i).getAccountNumber());
+                }
+                shard.out.flush();
+                for (int i = first; i < last; i++) {
+                    shard.in.readBoolean();
+                }
+            }
+            moved += leaving.size();
+        }
+        return moved;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return integer : the shard count.
+     */
+    public synchronized int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Returns the index of the shard an account belongs to, in the order the
+     * shards were added.
+     *
+     * @param accountNumber : unique number associated with the account.
+     * @return integer : index of the shard.
+     */
+    public synchronized int getShardIndex(long accountNumber) {
+        return shards.indexOf(shardOf(accountNumber));
+    }
+
+    @Override
+    public synchronized boolean createAccount(long accountNumber, String name, String address, double creditLimit,
+            double balance) {
+        Shard shard = shardOf(accountNumber);
+        try {
+            writeCreate(shard, accountNumber, name, address, Money.toCents(creditLimit), Money.toCents(balance));
+            shard.out.flush();
+            return shard.in.readBoolean();
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteAccount(long accountNumber) {
+        Shard shard = shardOf(accountNumber);
+        try {
+            shard.out.writeByte(ShardServer.DELETE);
+            shard.out.writeLong(accountNumber);
+            shard.out.flush();
+            return shard.in.readBoolean();
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    @Override
+    public synchronized boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        Shard shard = shardOf(accountNumber);
+        try {
+            shard.out.writeByte(ShardServer.LIMIT);
+            shard.out.writeLong(accountNumber);
+            shard.out.writeLong(Money.toCents(newLimit));
+            shard.out.flush();
+            return shard.in.readBoolean();
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    @Override
+    public String getAccount(long accountNumber) {
+        AccountRecord record = getAccountRecord(accountNumber);
+        return record == null ? null : record.toString();
+    }
+
+    @Override
+    public synchronized AccountRecord getAccountRecord(long accountNumber) {
+        Shard shard = shardOf(accountNumber);
+        try {
+            shard.out.writeByte(ShardServer.GET);
+            shard.out.writeLong(accountNumber);
+            shard.out.flush();
+            return shard.in.readBoolean() ? ShardServer.readAccount(shard.in) : null;
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        AccountRecord record = getAccountRecord(accountNumber);
+        if (record == null) {
+            return false;
+        }
+        view.set(accountNumber, record.getName(), record.getAddress(), record.getCreditLimitCents(),
+                record.getBalanceCents());
+        return true;
+    }
+
+    @Override
+    public synchronized int purchase(long accountNumber, double price) {
+        Shard shard = shardOf(accountNumber);
+        try {
+            shard.out.writeByte(ShardServer.PURCHASE);
+            shard.out.writeLong(accountNumber);
+            shard.out.writeLong(Money.toCents(price));
+            shard.out.flush();
+            return shard.in.readByte();
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. The range is asked of every shard at once, and the answers, each in
+     * order already, are merged. Unlike a local scan the whole range is fetched
+     * before the first account is returned.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public synchronized Iterator<Account> scan(long fromAccount, long toAccount) {
+        ArrayList<Account> range = new ArrayList<>();
+        try {
+            for (Shard shard : shards) {
+                shard.out.writeByte(ShardServer.SCAN);
+                shard.out.writeLong(fromAccount);
+                shard.out.writeLong(toAccount);
+                shard.out.flush();
+            }
+            for (Shard shard : shards) {
+                int count = shard.in.readInt();
+                for (int i = 0; i < count; i++) {
+                    AccountRecord record = ShardServer.readAccount(shard.in);
+                    Account account = new Account();
+                    account.set(record.getAccountNumber(), record.getName(), record.getAddress(),
+                            record.getCreditLimitCents(), record.getBalanceCents());
+                    range.add(account);
+                }
+            }
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+        range.sort((left, right) -> Long.compare(left.accountNumber, right.accountNumber));
+        return range.iterator();
+    }
+
+    /**
+     * Creates the accounts with a window of requests sent before their answers
+     * are read.
+     */
+    @Override
+    public synchronized boolean[] createAccounts(long accountNumbers[], String names[], String addresses[],
+            double creditLimits[], double balances[]) {
+        Shard targets[] = new Shard[accountNumbers.length];
+        try {
+            boolean created[] = new boolean[accountNumbers.length];
+            for (int first = 0; first < accountNumbers.length; first += WINDOW) {
+                int last = Math.min(accountNumbers.length, first + WINDOW);
+                for (int i = first; i < last; i++) {
+                    targets[i] = shardOf(accountNumbers[i]);
+                    writeCreate(targets[i], accountNumbers[i], names[i], addresses[i], Money.toCents(creditLimits[i]),
+                            Money.toCents(balances[i]));
+                }
+                flush();
+                for (int i = first; i < last; i++) {
+                    created[i] = targets[i].in.readBoolean();
+                }
+            }
+            return created;
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    /**
+     * Deletes the accounts with a window of requests sent before their answers
+     * are read.
+     */
+    @Override
+    public synchronized boolean[] deleteAccounts(long accountNumbers[]) {
+        Shard targets[] = new Shard[accountNumbers.length];
+        try {
+            boolean deleted[] = new boolean[accountNumbers.length];
+            for (int first = 0; first < accountNumbers.length; first += WINDOW) {
+                int last = Math.min(accountNumbers.length, first + WINDOW);
+                for (int i = first; i < last; i++) {
+                    targets[i] = shardOf(accountNumbers[i]);
+                    targets[i].out.writeByte(ShardServer.DELETE);
+                    targets[i].out.writeLong(accountNumbers[i]);
+                }
+                flush();
+                for (int i = first; i < last; i++) {
+                    deleted[i] = targets[i].in.readBoolean();
+                }
+            }
+            return deleted;
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    /**
+     * Makes the purchases with a window of requests sent before their answers are
+     * read.
+     */
+    @Override
+    public synchronized boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        Shard targets[] = new Shard[accountNumbers.length];
+        try {
+            boolean approved[] = new boolean[accountNumbers.length];
+            for (int first = 0; first < accountNumbers.length; first += WINDOW) {
+                int last = Math.min(accountNumbers.length, first + WINDOW);
+                for (int i = first; i < last; i++) {
+                    targets[i] = shardOf(accountNumbers[i]);
+                    targets[i].out.writeByte(ShardServer.PURCHASE);
+                    targets[i].out.writeLong(accountNumbers[i]);
+                    targets[i].out.writeLong(Money.toCents(prices[i]));
+                }
+                flush();
+                for (int i = first; i < last; i++) {
+                    approved[i] = targets[i].in.readByte() == APPROVED;
+                }
+            }
+            return approved;
+        } catch (IOException lost) {
+            throw new UncheckedIOException(lost);
+        }
+    }
+
+    /**
+     * Closes the connections to the shard servers, which keep running.
+     */
+    @Override
+    public synchronized void close() {
+        for (Shard shard : shards) {
+            try {
+                shard.socket.close();
+            } catch (IOException ignored) {
+                // the connection is gone either way
+            }
+        }
+    }
+
+    /**
+     * Returns the shard an account belongs to: the owner of the first point on the
+     * ring at or after the hash of its account number, wrapping around to the
+     * first point.
+     *
+     * @param accountNumber : unique number associated with the account.
+     * @return Shard : the shard of the account.
+     */
+    private Shard shardOf(long accountNumber) {
+        int point = CCSorted.lowerBound(points, 0, points.length, CCPrimitiveHash.mix(accountNumber));
+        return owners[point == points.length ? 0 : point];
+    }
+
+    /**
+     * Places the points of every shard on the ring. The points of a shard only
+     * depend on its address, so the points of the other shards stay where they
+     * were when one is added.
+     */
+    private void placeShards() {
+        long placed[] = new long[shards.size() * POINTS];
+        for (int i = 0; i < shards.size(); i++) {
+            long seed = (long) shards.get(i).address.hashCode() << 32;
+            for (int j = 0; j < POINTS; j++) {
+                placed[i * POINTS + j] = CCPrimitiveHash.mix(seed | j) << 8 | i; // the shard in the low bits
+            }
+        }
+        Arrays.sort(placed);
+        owners = new Shard[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            owners[i] = shards.get((int) (placed[i] & 0xFF));
+        }
+        points = placed;
+    }
+
+    /**
+     * Writes a create request without flushing it.
+     *
+     * @param shard         : the shard to send it to.
+     * @param accountNumber : unique number associated with the account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the account in cents.
+     * @param balance       : current balance of the account in cents.
+     * @throws IOException : if the connection fails.
+     */
+    private static void writeCreate(Shard shard, long accountNumber, String name, String address, long creditLimit,
+            long balance) throws IOException {
+        shard.out.writeByte(ShardServer.CREATE);
+        ShardServer.writeAccount(shard.out, accountNumber, name, address, creditLimit, balance);
+    }
+
+    /**
+     * Reads every account of a range of one shard.
+     *
+     * @param shard       : the shard to ask.
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return ArrayList : the accounts in increasing order.
+     * @throws IOException : if the connection fails.
+     */
+    private static ArrayList<AccountRecord> scanShard(Shard shard, long fromAccount, long toAccount)
+            throws IOException {
+        shard.out.writeByte(ShardServer.SCAN);
+        shard.out.writeLong(fromAccount);
+        shard.out.writeLong(toAccount);
+        shard.out.flush();
+        int count = shard.in.readInt();
+        ArrayList<AccountRecord> range = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            range.add(ShardServer.readAccount(shard.in));
+        }
+        return range;
+    }
+
+    /**
+     * Sends every request written to the shards so far.
+     *
+     * @throws IOException : if a connection fails.
+     */
+    private void flush() throws IOException {
+        for (Shard shard : shards) {
+            shard.out.flush();
+        }
+    }
+}
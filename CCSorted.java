@@ -1,203 +1,556 @@
-/**
- * Database of credit card account's using a sorted array.
- *
- * @author Angela Li
- */
-public class CCSorted implements CCDatabase {
-    private int fillLevelS; // fill level of the sorted array
-    private Account arraySorted[];
-
-    /**
-     * Constructor for CCSorted objects.
-     */
-    public CCSorted() {
-        this.fillLevelS = 0;
-        this.arraySorted = new Account[101];
-    }
-
-    /**
-     * Creates an account with the given details if it does not exist.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @param name          : name of the account owner.
-     * @param address       : address of the account owner.
-     * @param creditLimit   : purchasing limit of the acccount owners credit card.
-     * @param balance       : current balance on account owner's credit card.
-     * @return boolean : indicates if the account was created, true, if created,
-     *         false otherwise.
-     */
-    @Override
-    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
-        int place = findIndex(arraySorted, 0, fillLevelS, accountNumber);
-        if (arraySorted[place] == null || (arraySorted[place].accountNumber != accountNumber)) {
-            Account newAccount = new Account();
-            newAccount.accountNumber = accountNumber;
-            newAccount.name = name;
-            newAccount.address = address;
-            newAccount.creditLimit = creditLimit;
-            newAccount.balance = balance;
-            insertSorted(newAccount, place);
-            return true;
-        } else {
-            return false; // account already exists
-        }
-    }
-
-    /**
-     * Deletes the account with the given account number if it does exist.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @return boolean : true, if an account was deleted; false, otherwise.
-     */
-    @Override
-    public boolean deleteAccount(long accountNumber) {
-        int place = findIndex(arraySorted, 0, fillLevelS, accountNumber);
-        if (arraySorted[place] != null && arraySorted[place].accountNumber == accountNumber) {
-            arraySorted[place] = null;
-            while (place <= fillLevelS - 1) {
-                arraySorted[place] = arraySorted[place + 1];
-                place++;
-            }
-            fillLevelS--;
-            return true;
-        } else {
-            return false; // account does not already exist
-        }
-    }
-
-    /**
-     * Inserts a new account into the sorted array by checking the fill level
-     * percent with respects to the length of the array. if it's of 60% the array
-     * will be resized before insertion. Then every index will be shifted down,
-     * starting at the end and stopping where index where the new account should be
-     * inserted. The fill level is then increased by 1.
-     *
-     * @param newAccount : the new account that will be inserted.
-     * @param index      : the index where the new account belongs.
-     */
-    private void insertSorted(Account newAccount, int index) {
-        if ((double) this.fillLevelS / arraySorted.length >= 0.6) { // resize if above 60% full
-            resize();
-        }
-        int end = fillLevelS;
-        if (fillLevelS != 0) {
-            end -= 1;
-        }
-        while (!(end < index)) {
-            arraySorted[end + 1] = arraySorted[end];
-            end--;
-        }
-        this.arraySorted[index] = newAccount;
-        fillLevelS++;
-        return;
-    }
-
-    /**
-     * Adjusts the credit limit of the account with the given account number if it
-     * exists.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @param newLimit      : the new credit limit to be adjusted on the account.
-     * @returns boolean : true if the account exists and was modified; false,
-     *          otherwise.
-     */
-    @Override
-    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
-        int place = findIndex(arraySorted, 0, fillLevelS, accountNumber);
-        if ((arraySorted[place] != null) && (arraySorted[place].accountNumber == accountNumber)) {
-            arraySorted[place].creditLimit = newLimit;
-            return true;
-        } else {
-            return false; // account does not already exist
-        }
-    }
-
-    /**
-     * Returns the details of the given account as a string if it exists or null if
-     * the account does not exist. The string should be in the same format as for
-     * account creation, i.e. the credit card number, name of card holder, address
-     * of card holder, credit limit, and balance each on a separate line.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @return String : a string with either all account information or a error
-     *         message if it doesn't exist.
-     */
-    @Override
-    public String getAccount(long accountNumber) {
-        int place = findIndex(arraySorted, 0, fillLevelS, accountNumber);
-        if ((arraySorted[place] != null && arraySorted[place].accountNumber == accountNumber)) {
-            return arraySorted[place].toString();
-        } else {
-            return (arraySorted[place].toString() + "cannot be printed is it does not exist");
-        }
-    }
-
-    /**
-     * Makes a purchase on the account with the given account number if it exists
-     * and the account has sufficient credit. If the account exists, but has
-     * insufficient funds (the old balance plus the purchase price is higher than
-     * the account's credit limit), then an exception will be thrown.
-     *
-     * @param accountNumber : unique number associated with the current account.
-     * @param price         : price of purchase being made.
-     * @return boolean : true, if purchase went through and false, otherwise.
-     * @throws Exception : if price plus balance exceeds the credit limit.
-     */
-    @Override
-    public boolean makePurchase(long accountNumber, double price) throws Exception {
-        int place = findIndex(arraySorted, 0, fillLevelS, accountNumber);
-        if (arraySorted[place] != null && arraySorted[place].accountNumber == accountNumber) {
-            if (!(price + arraySorted[place].balance > arraySorted[place].creditLimit)) {
-                arraySorted[place].balance = arraySorted[place].balance + price;
-                return true;
-            } else {
-                throw new Exception("Purchase is over this account's credit limit and will be rejected");
-            }
-        } else {
-            return false; // account does not already exist
-        }
-
-    }
-
-    /**
-     * A recursive binary search that looks for the index containing the account
-     * number and either finds it or return the index where it belongs in the hash
-     * table.
-     *
-     * @param databaseSorted : hash table of accounts.
-     * @param start          : starting point for the search.
-     * @param end            : end point for the search.
-     * @param accountNumber  : unique number associated with the current account.
-     * @return integer : representing either the index containing the account
-     *         corresponding to the account number or the index where the account
-     *         corresponding to the account number should be stored.
-     */
-    private int findIndex(Account databaseSorted[], int start, int end, long accountNumber) {
-        if (start < end) {
-            int mid = start + (end - start) / 2;
-            if (accountNumber < databaseSorted[mid].accountNumber) {
-                return findIndex(databaseSorted, start, mid, accountNumber);
-
-            } else if (accountNumber > databaseSorted[mid].accountNumber) {
-                return findIndex(databaseSorted, mid + 1, end, accountNumber);
-
-            } else {
-                return mid;
-            }
-        }
-        return start;
-    }
-
-    /**
-     * Resizes the array by making a new one double the size and then re-hashing all
-     * buckets from the old one to the new, bigger array.
-     */
-    private void resize() {
-        int size = this.arraySorted.length * 2;
-        Account temp[] = new Account[size];
-        for (int i = 0; i < fillLevelS; i++) {
-            temp[i] = this.arraySorted[i];
-        }
-        this.arraySorted = temp;
-    }
-}
\ No newline at end of file
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Database of credit card account's using a sorted array. The account numbers
+ * are also kept in a dense array of longs beside the accounts, so a search
+ * reads eight account numbers per cache line instead of following a reference
+ * to an account at every step, and an account is only read once it is found.
+ * The search halves the range with a conditional move rather than a branch, so
+ * it does not pay for mispredicted branches either.
+ *
+ * When the accounts stop changing and enough lookups have come in to pay for
+ * it, every 16th account number is also copied into a small array of fences.
+ * A search then goes through the fences, which are dense enough to stay in
+ * the cache, and ends within one block of 16 account numbers, two cache lines,
+ * instead of missing the cache on each of the last levels of the search. Any
+ * create or delete drops the fences again. (An Eytzinger layout was measured
+ * too, but without prefetching it is no faster than the plain search.)
+ *
+ * @author Angela Li
+ */
+public class CCSorted implements CCDatabase {
+    static final int BLOCK = 16; // account numbers per fence
+    private int fillLevelS; // fill level of the sorted array
+    private Account arraySorted[];
+    private long keys[]; // account number of each account in arraySorted
+    private long fences[]; // every BLOCK-th account number of keys, or null
+    private int lookups; // lookups since the account numbers last changed
+    private long shifts; // accounts moved to open or close a gap in the array
+
+    /**
+     * Constructor for CCSorted objects.
+     */
+    public CCSorted() {
+        this.fillLevelS = 0;
+        this.arraySorted = new Account[101];
+        this.keys = new long[101];
+        this.fences = null;
+        this.lookups = 0;
+        this.shifts = 0;
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        int place = findIndex(accountNumber);
+        if (place == fillLevelS || keys[place] != accountNumber) {
+            Account newAccount = new Account();
+            newAccount.accountNumber = accountNumber;
+            newAccount.name = name;
+            newAccount.address = address;
+            newAccount.creditLimit = Money.toCents(creditLimit);
+            newAccount.balance = Money.toCents(balance);
+            insertSorted(newAccount, place);
+            return true;
+        } else {
+            return false; // account already exists
+        }
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        int place = findIndex(accountNumber);
+        if (place < fillLevelS && keys[place] == accountNumber) {
+            shifts += fillLevelS - 1 - place;
+            System.arraycopy(arraySorted, place + 1, arraySorted, place, fillLevelS - 1 - place);
+            System.arraycopy(keys, place + 1, keys, place, fillLevelS - 1 - place);
+            fillLevelS--;
+            arraySorted[fillLevelS] = null;
+            changed();
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Inserts a new account into the sorted array by checking the fill level
+     * percent with respects to the length of the array. if it's of 60% the array
+     * will be resized before insertion. Then every index will be shifted down,
+     * starting at the end and stopping where index where the new account should be
+     * inserted. The fill level is then increased by 1.
+     *
+     * @param newAccount : the new account that will be inserted.
+     * @param index      : the index where the new account belongs.
+     */
+    private void insertSorted(Account newAccount, int index) {
+        if ((double) this.fillLevelS / arraySorted.length >= 0.6) { // resize if above 60% full
+            resize();
+        }
+        shifts += fillLevelS - index;
+        System.arraycopy(arraySorted, index, arraySorted, index + 1, fillLevelS - index);
+        System.arraycopy(keys, index, keys, index + 1, fillLevelS - index);
+        this.arraySorted[index] = newAccount;
+        this.keys[index] = newAccount.accountNumber;
+        fillLevelS++;
+        changed();
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        int place = findIndex(accountNumber);
+        if (place < fillLevelS && keys[place] == accountNumber) {
+            arraySorted[place].creditLimit = Money.toCents(newLimit);
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist. The string should be in the same format as for
+     * account creation, i.e. the credit card number, name of card holder, address
+     * of card holder, credit limit, and balance each on a separate line.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        int place = findIndex(accountNumber);
+        if (place < fillLevelS && keys[place] == accountNumber) {
+            return arraySorted[place].toString();
+        } else {
+            return null; // account does not already exist
+        }
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        int place = findIndex(accountNumber);
+        if (place < fillLevelS && keys[place] == accountNumber) {
+            Account current = arraySorted[place];
+            view.set(accountNumber, current.name, current.address, current.creditLimit, current.balance);
+            return true;
+        } else {
+            return false; // account does not already exist
+        }
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit, i.e. the old balance plus the purchase
+     * price is not higher than the account's credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        int place = findIndex(accountNumber);
+        if (place < fillLevelS && keys[place] == accountNumber) {
+            long cents = Money.toCents(price);
+            if (Money.withinLimit(arraySorted[place].balance, cents, arraySorted[place].creditLimit)) {
+                arraySorted[place].balance = arraySorted[place].balance + cents;
+                return APPROVED;
+            } else {
+                return DECLINED_OVER_LIMIT;
+            }
+        } else {
+            return NO_SUCH_ACCOUNT; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order, read straight out of the sorted array.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        final int first = findIndex(fromAccount);
+        return new Iterator<Account>() {
+            private int place = first;
+
+            @Override
+            public boolean hasNext() {
+                return place < fillLevelS && keys[place] <= toAccount;
+            }
+
+            @Override
+            public Account next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return arraySorted[place++];
+            }
+        };
+    }
+
+    /**
+     * Creates every account of the given arrays as if createAccount were called for
+     * each index in order. The batch is sorted, each new account is looked up
+     * starting from where the previous one was found, and then all the new
+     * accounts are merged into the array in one pass from the back, instead of
+     * shifting the array once per account.
+     *
+     * @param accountNumbers : unique numbers of the new accounts.
+     * @param names          : names of the account owners.
+     * @param addresses      : addresses of the account owners.
+     * @param creditLimits   : purchasing limits of the accounts.
+     * @param balances       : current balances of the accounts.
+     * @return boolean[] : whether the account at each index was created.
+     */
+    @Override
+    public boolean[] createAccounts(long accountNumbers[], String names[], String addresses[], double creditLimits[],
+            double balances[]) {
+        boolean created[] = new boolean[accountNumbers.length];
+        int order[] = sortedOrder(accountNumbers);
+        Account added[] = new Account[accountNumbers.length];
+        int addedCount = 0;
+        int place = 0;
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            if (k > 0 && accountNumbers[order[k - 1]] == accountNumbers[i]) {
+                continue; // created or refused by its first index already
+            }
+            place = findIndex(place, accountNumbers[i]);
+            if (place < fillLevelS && keys[place] == accountNumbers[i]) {
+                continue; // account already exists
+            }
+            Account newAccount = new Account();
+            newAccount.accountNumber = accountNumbers[i];
+            newAccount.name = names[i];
+            newAccount.address = addresses[i];
+            newAccount.creditLimit = Money.toCents(creditLimits[i]);
+            newAccount.balance = Money.toCents(balances[i]);
+            added[addedCount++] = newAccount;
+            created[i] = true;
+        }
+        while ((double) (fillLevelS + addedCount) / arraySorted.length >= 0.6) {
+            resize();
+        }
+        int from = fillLevelS - 1;
+        int to = fillLevelS + addedCount - 1;
+        for (int j = addedCount - 1; j >= 0; j--) {
+            while (from >= 0 && keys[from] > added[j].accountNumber) {
+                shifts++;
+                keys[to] = keys[from];
+                arraySorted[to--] = arraySorted[from--];
+            }
+            keys[to] = added[j].accountNumber;
+            arraySorted[to--] = added[j];
+        }
+        fillLevelS += addedCount;
+        if (addedCount > 0) {
+            changed();
+        }
+        return created;
+    }
+
+    /**
+     * Deletes every account of the given array as if deleteAccount were called for
+     * each index in order. The batch is sorted, the deleted accounts are found
+     * from front to back, and the array is closed up in one pass at the end.
+     *
+     * @param accountNumbers : unique numbers of the accounts being deleted.
+     * @return boolean[] : whether the account at each index was deleted.
+     */
+    @Override
+    public boolean[] deleteAccounts(long accountNumbers[]) {
+        boolean deleted[] = new boolean[accountNumbers.length];
+        int order[] = sortedOrder(accountNumbers);
+        int place = 0;
+        int removed = 0;
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            if (k > 0 && accountNumbers[order[k - 1]] == accountNumbers[i]) {
+                continue; // a repeat can only find the account gone
+            }
+            place = findIndex(place, accountNumbers[i]);
+            if (place < fillLevelS && keys[place] == accountNumbers[i]) {
+                arraySorted[place] = null; // later searches start past this index
+                place++;
+                removed++;
+                deleted[i] = true;
+            }
+        }
+        if (removed > 0) {
+            int to = 0;
+            for (int from = 0; from < fillLevelS; from++) {
+                if (arraySorted[from] != null) {
+                    shifts += from == to ? 0 : 1;
+                    keys[to] = keys[from];
+                    arraySorted[to++] = arraySorted[from];
+                }
+            }
+            for (int i = to; i < fillLevelS; i++) {
+                arraySorted[i] = null;
+            }
+            fillLevelS = to;
+            changed();
+        }
+        return deleted;
+    }
+
+    /**
+     * Makes the purchase at each index of the given arrays as if makePurchase were
+     * called for each index in order. The batch is sorted so every account is
+     * looked up starting from where the previous one was found. A purchase over
+     * the credit limit is false in the result.
+     *
+     * @param accountNumbers : unique numbers of the accounts.
+     * @param prices         : price of each purchase.
+     * @return boolean[] : whether each purchase went through.
+     */
+    @Override
+    public boolean[] makePurchases(long accountNumbers[], double prices[]) {
+        boolean approved[] = new boolean[accountNumbers.length];
+        int order[] = sortedOrder(accountNumbers);
+        int place = 0;
+        for (int i : order) {
+            place = findIndex(place, accountNumbers[i]);
+            if (place < fillLevelS && keys[place] == accountNumbers[i]
+                    && Money.withinLimit(arraySorted[place].balance, Money.toCents(prices[i]),
+                            arraySorted[place].creditLimit)) {
+                arraySorted[place].balance = arraySorted[place].balance + Money.toCents(prices[i]);
+                approved[i] = true;
+            }
+        }
+        return approved;
+    }
+
+    /**
+     * Sorts the indexes of a batch by account number with a merge sort, which
+     * keeps repeated account numbers in batch order.
+     *
+     * @param accountNumbers : account numbers of the batch.
+     * @return int[] : the batch indexes in increasing account number order.
+     */
+    private static int[] sortedOrder(long accountNumbers[]) {
+        int order[] = new int[accountNumbers.length];
+        int merged[] = new int[accountNumbers.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int start = 0; start < order.length; start += 2 * width) {
+                int middle = Math.min(start + width, order.length);
+                int end = Math.min(start + 2 * width, order.length);
+                int left = start;
+                int right = middle;
+                for (int to = start; to < end; to++) {
+                    if (left < middle
+                            && (right == end || accountNumbers[order[left]] <= accountNumbers[order[right]])) {
+                        merged[to] = order[left++];
+                    } else {
+                        merged[to] = order[right++];
+                    }
+                }
+            }
+            int swap[] = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Replaces every account with the given ones, which must be in increasing order
+     * of account number without repeats, so they are copied into the array as they
+     * are.
+     *
+     * @param accountNumbers : unique numbers of the accounts, in increasing order.
+     * @param names          : names of the account owners.
+     * @param addresses      : addresses of the account owners.
+     * @param creditLimits   : purchasing limits of the accounts in cents.
+     * @param balances       : current balances of the accounts in cents.
+     */
+    void load(long accountNumbers[], String names[], String addresses[], long creditLimits[], long balances[]) {
+        int count = accountNumbers.length;
+        arraySorted = new Account[Math.max(101, count * 2)];
+        keys = new long[arraySorted.length];
+        System.arraycopy(accountNumbers, 0, keys, 0, count);
+        for (int i = 0; i < count; i++) {
+            Account account = new Account();
+            account.accountNumber = accountNumbers[i];
+            account.name = names[i];
+            account.address = addresses[i];
+            account.creditLimit = creditLimits[i];
+            account.balance = balances[i];
+            arraySorted[i] = account;
+        }
+        fillLevelS = count;
+        changed();
+    }
+
+    /**
+     * Returns the number of times an account was moved to open a gap for a new
+     * account or to close the gap of a deleted one. Every single insert or delete
+     * moves all the accounts behind it.
+     *
+     * @return long : the number of accounts moved.
+     */
+    public long getShiftCount() {
+        return shifts;
+    }
+
+    /**
+     * Finds the index of the account number, or the index where it belongs, using
+     * the fences if there are any. Once the lookups since the last change add up
+     * to a 64th of the accounts, the fences are copied, as they then cost less
+     * than the searches they speed up.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : the index of the account, or of the first account with a
+     *         larger account number.
+     */
+    private int findIndex(long accountNumber) {
+        if (fences != null) {
+            return blockedSearch(keys, fillLevelS, fences, accountNumber);
+        }
+        if (++lookups > fillLevelS / 64 && fillLevelS >= 1024) {
+            fences = fences(keys, fillLevelS);
+        }
+        return lowerBound(keys, 0, fillLevelS, accountNumber);
+    }
+
+    /**
+     * Finds the index of the account number, or the index where it belongs, from
+     * the given index on, for the batch operations that walk the array in order.
+     *
+     * @param start         : index to start the search at.
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : the index of the account, or of the first account with a
+     *         larger account number.
+     */
+    private int findIndex(int start, long accountNumber) {
+        return lowerBound(keys, start, fillLevelS, accountNumber);
+    }
+
+    /**
+     * Drops the fences after a create or delete.
+     */
+    private void changed() {
+        fences = null;
+        lookups = 0;
+    }
+
+    /**
+     * A binary search without branches: the range is halved on every step by
+     * moving its start or not, which the JIT turns into a conditional move, so the
+     * number of steps only depends on the length of the range.
+     *
+     * @param keys          : account numbers in increasing order.
+     * @param start         : first index of the range.
+     * @param end           : index after the range.
+     * @param accountNumber : the account number to look for.
+     * @return integer : the index of the first account number in the range that is
+     *         not smaller, or end if there is none.
+     */
+    static int lowerBound(long keys[], int start, int end, long accountNumber) {
+        int length = end - start;
+        if (length <= 0) {
+            return start;
+        }
+        int base = start;
+        while (length > 1) {
+            int half = length >>> 1;
+            base = keys[base + half - 1] < accountNumber ? base + half : base;
+            length -= half;
+        }
+        return keys[base] < accountNumber ? base + 1 : base;
+    }
+
+    /**
+     * Copies every BLOCK-th account number, the first of each block.
+     *
+     * @param keys  : account numbers in increasing order.
+     * @param count : number of account numbers.
+     * @return long[] : the fences.
+     */
+    static long[] fences(long keys[], int count) {
+        long fences[] = new long[(count + BLOCK - 1) / BLOCK];
+        for (int i = 0; i < fences.length; i++) {
+            fences[i] = keys[i * BLOCK];
+        }
+        return fences;
+    }
+
+    /**
+     * Searches the fences for the block the account number falls in, then the
+     * block itself.
+     *
+     * @param keys          : account numbers in increasing order.
+     * @param count         : number of account numbers.
+     * @param fences        : the fences of keys.
+     * @param accountNumber : the account number to look for.
+     * @return integer : the index of the first account number that is not
+     *         smaller, or count if there is none.
+     */
+    static int blockedSearch(long keys[], int count, long fences[], long accountNumber) {
+        int block = lowerBound(fences, 0, fences.length, accountNumber);
+        if (block < fences.length && fences[block] == accountNumber) {
+            return block * BLOCK;
+        } else if (block == 0) {
+            return 0;
+        }
+        int start = (block - 1) * BLOCK; // fences[block - 1] is smaller, fences[block] larger
+        return lowerBound(keys, start + 1, Math.min(count, start + BLOCK), accountNumber);
+    }
+
+    /**
+     * Resizes the array by making a new one double the size and then re-hashing all
+     * buckets from the old one to the new, bigger array.
+     */
+    private void resize() {
+        int size = this.arraySorted.length * 2;
+        Account temp[] = new Account[size];
+        for (int i = 0; i < fillLevelS; i++) {
+            temp[i] = this.arraySorted[i];
+        }
+        this.arraySorted = temp;
+        this.keys = Arrays.copyOf(keys, size);
+    }
+}
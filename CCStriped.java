@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Database of credit card account's that can be shared between threads. The
+ * accounts are split over a fixed number of stripes by the high bits of their
+ * hash, and each stripe is a CCPrimitiveHash with its own lock, so operations
+ * on accounts in different stripes run in parallel and a stripe that grows only
+ * blocks the accounts inside it. Reads of a single account take no lock at all:
+ * they copy the account and then check the version of the stripe lock, and only
+ * read again under the lock if a change ran at the same time, so readers never
+ * hold up the writers and still never see half of a change.
+ *
+ * @author Angela Li
+ */
+public class CCStriped implements CCDatabase {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final int shift; // 64 - log2 of the number of stripes
+    private final CCPrimitiveHash stripes[];
+    private final StampedLock locks[]; // the lock of each stripe
+
+    /**
+     * Constructor for CCStriped objects with a stripe count that suits most
+     * machines.
+     */
+    public CCStriped() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructor for CCStriped objects.
+     *
+     * @param stripeCount : number of independently locked stripes, rounded up to a
+     *                    power of two.
+     */
+    public CCStriped(int stripeCount) {
+        int count = 1;
+        while (count < stripeCount) {
+            count *= 2;
+        }
+        this.shift = 64 - Integer.numberOfTrailingZeros(count);
+        this.stripes = new CCPrimitiveHash[count];
+        this.locks = new StampedLock[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new CCPrimitiveHash();
+            this.locks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Creates an account with the given details if it does not exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return boolean : indicates if the account was created, true, if created,
+     *         false otherwise.
+     */
+    @Override
+    public boolean createAccount(long accountNumber, String name, String address, double creditLimit, double balance) {
+        int index = stripeIndex(accountNumber);
+        long stamp = locks[index].writeLock();
+        try {
+            return stripes[index].createAccount(accountNumber, name, address, creditLimit, balance);
+        } finally {
+            locks[index].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Deletes the account with the given account number if it does exist.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return boolean : true, if an account was deleted; false, otherwise.
+     */
+    @Override
+    public boolean deleteAccount(long accountNumber) {
+        int index = stripeIndex(accountNumber);
+        long stamp = locks[index].writeLock();
+        try {
+            return stripes[index].deleteAccount(accountNumber);
+        } finally {
+            locks[index].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adjusts the credit limit of the account with the given account number if it
+     * exists.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit to be adjusted on the account.
+     * @returns boolean : true, if the account exists and was modified; false,
+     *          otherwise.
+     */
+    @Override
+    public boolean adjustCreditLimit(long accountNumber, double newLimit) {
+        int index = stripeIndex(accountNumber);
+        long stamp = locks[index].writeLock();
+        try {
+            return stripes[index].adjustCreditLimit(accountNumber, newLimit);
+        } finally {
+            locks[index].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the details of the given account as a string if it exists or null if
+     * the account does not exist. The account is read as by getAccountRecord and
+     * the string is built afterwards.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return String : a string with all account information or null if it
+     *         doesn't exist.
+     */
+    @Override
+    public String getAccount(long accountNumber) {
+        AccountRecord record = getAccountRecord(accountNumber);
+        if (record != null) {
+            return record.toString();
+        } else {
+            return null; // account does not already exist
+        }
+    }
+
+    /**
+     * Returns an unchangeable copy of the given account without taking the stripe
+     * lock. The copy is only kept if no change to the stripe started or finished
+     * while it was made; otherwise, including when the half-changed stripe made
+     * the copy fail, the account is copied again under the read lock. The text
+     * store checks a torn reference before it builds a String from it, so a
+     * failed copy throws instead of allocating without bound.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return AccountRecord : a copy of the account, or null if it does not exist.
+     */
+    @Override
+    public AccountRecord getAccountRecord(long accountNumber) {
+        int index = stripeIndex(accountNumber);
+        CCPrimitiveHash stripe = stripes[index];
+        StampedLock lock = locks[index];
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                AccountRecord record = stripe.readRecord(accountNumber);
+                if (lock.validate(stamp)) {
+                    return record;
+                }
+            } catch (RuntimeException torn) {
+                // the stripe changed during the copy, read it again below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return stripe.readRecord(accountNumber);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copies the given account into a view owned by the caller without taking the
+     * stripe lock, checked the same way as getAccountRecord. If the copy has to be
+     * made again under the lock and the account is gone by then, the view gets
+     * its old fields back.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param view          : the account to overwrite, unchanged on a miss.
+     * @return boolean : true, if the account exists; false, otherwise.
+     */
+    @Override
+    public boolean readAccount(long accountNumber, Account view) {
+        int index = stripeIndex(accountNumber);
+        CCPrimitiveHash stripe = stripes[index];
+        StampedLock lock = locks[index];
+        long oldNumber = view.accountNumber;
+        String oldName = view.name;
+        String oldAddress = view.address;
+        long oldLimit = view.creditLimit;
+        long oldBalance = view.balance;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean found = stripe.readAccount(accountNumber, view);
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            } catch (RuntimeException torn) {
+                // the stripe changed during the copy, read it again below
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            if (stripe.readAccount(accountNumber, view)) {
+                return true;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        view.set(oldNumber, oldName, oldAddress, oldLimit, oldBalance);
+        return false;
+    }
+
+    /**
+     * Makes a purchase on the account with the given account number if it exists
+     * and the account has sufficient credit. The credit check and the balance
+     * update happen under the same stripe lock, so concurrent purchases can never
+     * push the balance over the credit limit together.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of purchase being made.
+     * @return integer : APPROVED if the purchase went through, DECLINED_OVER_LIMIT
+     *         if it is over the credit limit, or NO_SUCH_ACCOUNT.
+     */
+    @Override
+    public int purchase(long accountNumber, double price) {
+        int index = stripeIndex(accountNumber);
+        long stamp = locks[index].writeLock();
+        try {
+            return stripes[index].purchase(accountNumber, price);
+        } finally {
+            locks[index].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the accounts with account numbers in the given range in increasing
+     * order. The account numbers are collected one stripe at a time and each
+     * account is copied under its stripe read lock when the iterator reaches it, so
+     * other threads may keep working while a scan runs; accounts deleted in the
+     * meantime are skipped.
+     *
+     * @param fromAccount : smallest account number of the range.
+     * @param toAccount   : largest account number of the range.
+     * @return Iterator : the accounts of the range.
+     */
+    @Override
+    public Iterator<Account> scan(long fromAccount, long toAccount) {
+        long matches[] = new long[0];
+        for (int i = 0; i < stripes.length; i++) {
+            long keys[];
+            long stamp = locks[i].readLock();
+            try {
+                keys = stripes[i].keysInRange(fromAccount, toAccount);
+            } finally {
+                locks[i].unlockRead(stamp);
+            }
+            int count = matches.length;
+            matches = Arrays.copyOf(matches, count + keys.length);
+            System.arraycopy(keys, 0, matches, count, keys.length);
+        }
+        return new SortedKeyIterator(matches, accountNumber -> {
+            int index = stripeIndex(accountNumber);
+            long stamp = locks[index].readLock();
+            try {
+                return stripes[index].copyAccount(accountNumber);
+            } finally {
+                locks[index].unlockRead(stamp);
+            }
+        });
+    }
+
+    /**
+     * Picks the stripe of an account from the high bits of its hash; the stripes
+     * index their own tables with the low bits.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : index of the stripe holding the account.
+     */
+    private int stripeIndex(long accountNumber) {
+        if (shift == 64) {
+            return 0;
+        }
+        return (int) (CCPrimitiveHash.mix(accountNumber) >>> shift);
+    }
+}
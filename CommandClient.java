@@ -0,0 +1,269 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Load generator for a CommandServer. Sends the commands of a command file over
+ * several connections, each with up to a window of requests on the way before
+ * it waits for an answer, and records the time from sending each request to
+ * reading its answer. The commands of one account always go over the same
+ * connection, so they reach the database in the order of the file, and the
+ * server ends with the same accounts as a replay of the file.
+ *
+ * Run as "java CommandClient host port file [connections] [window]".
+ *
+ * @author Angela Li
+ */
+public class CommandClient {
+    private static final int MAX_WINDOW = 4096; // keeps the unanswered requests within the socket buffers
+
+    private final String host;
+    private final int port;
+    private final LatencyHistogram latencies;
+    private long requestCount;
+    private long failureCount;
+
+    /**
+     * The requests of one connection, and what happened to them.
+     */
+    private static final class Connection implements Runnable {
+        final ByteArrayOutputStream requests = new ByteArrayOutputStream(1 << 16);
+        int ends[] = new int[1024]; // end of each request in the encoded requests
+        int count;
+        Socket socket;
+        int window;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        long failures; // answers other than ok
+        IOException failure;
+        private byte line[] = new byte[256];
+
+        /**
+         * Encodes one request and gives it the next request id.
+         *
+         * @param command : the command word and its operands, one per line.
+         */
+        void add(String command) {
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            byte bytes[] = (count + "\n" + command).getBytes(StandardCharsets.UTF_8);
+            requests.write(bytes, 0, bytes.length);
+            ends[count++] = requests.size();
+        }
+
+        @Override
+        public void run() {
+            byte data[] = requests.toByteArray();
+            long sent[] = new long[count]; // time each request was sent
+            try (Socket connection = socket) {
+                OutputStream out = connection.getOutputStream();
+                InputStream in = new BufferedInputStream(connection.getInputStream(), 1 << 16);
+                int sentCount = 0;
+                int answered = 0;
+                while (answered < count) {
+                    if (sentCount < count && sentCount - answered < window) {
+                        int last = Math.min(count, answered + window);
+                        int from = sentCount == 0 ? 0 : ends[sentCount - 1];
+                        long now = System.nanoTime();
+                        Arrays.fill(sent, sentCount, last, now);
+                        out.write(data, from, ends[last - 1] - from);
+                        sentCount = last;
+                    }
+                    int length = readLine(in);
+                    int space = 0;
+                    while (space < length && line[space] != ' ') {
+                        space++;
+                    }
+                    long id = CommandReader.parseLong(line, 0, space);
+                    String status = new String(line, space + 1, Math.max(length - space - 1, 0),
+                            StandardCharsets.UTF_8);
+                    if (id != answered) {
+                        throw new IOException("answer " + id + " came for request " + answered);
+                    }
+                    if (status.startsWith("error")) {
+                        throw new IOException("request " + id + ": " + status);
+                    }
+                    latencies.record(System.nanoTime() - sent[answered]);
+                    if (!status.equals("ok")) {
+                        failures++;
+                    }
+                    answered++;
+                }
+            } catch (IOException | NumberFormatException lost) {
+                failure = lost instanceof IOException ? (IOException) lost : new IOException(lost);
+            }
+        }
+
+        /**
+         * Reads one answer line into the line buffer.
+         *
+         * @param in : the connection input.
+         * @return integer : the length of the line, without the line break.
+         * @throws IOException : if the connection fails or closes.
+         */
+        private int readLine(InputStream in) throws IOException {
+            int length = 0;
+            int current;
+            while ((current = in.read()) != '\n') {
+                if (current < 0) {
+                    throw new IOException("the server closed the connection");
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = (byte) current;
+            }
+            return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        }
+    }
+
+    /**
+     * Constructor for CommandClient objects.
+     *
+     * @param host : the host of the server.
+     * @param port : the port of the server.
+     */
+    public CommandClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+        this.latencies = new LatencyHistogram();
+        this.requestCount = 0;
+        this.failureCount = 0;
+    }
+
+    /**
+     * Sends every command of a command file to the server and waits for all the
+     * answers. The start and stop commands and unknown commands are not sent.
+     * The latencies and counts of the run are added to those of earlier runs.
+     *
+     * @param fileName    : path of the command file.
+     * @param connections : number of connections to spread the accounts over.
+     * @param window      : most requests on the way per connection, at most 4096.
+     * @return long : the time in nanoseconds from the first request sent to the last answer read.
+     * @throws IOException : if the file cannot be read, or a connection fails or gets an error.
+     */
+    public long run(String fileName, int connections, int window) throws IOException {
+        Connection parts[] = new Connection[connections];
+        for (int i = 0; i < connections; i++) {
+            parts[i] = new Connection();
+            parts[i].window = Math.max(1, Math.min(window, MAX_WINDOW));
+        }
+        try (CommandReader reader = new CommandReader(fileName)) {
+            CommandReader.Command command;
+            while ((command = reader.next()) != null) {
+                long accountNumber = reader.getAccountNumber();
+                Connection part = parts[(int) ((CCPrimitiveHash.mix(accountNumber) >>> 1) % connections)];
+                switch (command) {
+                    case CREATE:
+                        part.add("cre\n" + accountNumber + "\n" + reader.getName() + "\n" + reader.getAddress() + "\n"
+                                + Money.toText(reader.getCreditLimitCents()) + "\n"
+                                + Money.toText(reader.getBalanceCents()) + "\n");
+                        break;
+                    case DELETE:
+                        part.add("del\n" + accountNumber + "\n");
+                        break;
+                    case LIMIT:
+                        part.add("lim\n" + accountNumber + "\n" + Money.toText(reader.getCreditLimitCents()) + "\n");
+                        break;
+                    case PURCHASE:
+                        part.add("pur\n" + accountNumber + "\n" + Money.toText(reader.getPriceCents()) + "\n");
+                        break;
+                    default: // start, stop and unknown commands do not reach the database
+                }
+            }
+        }
+        Thread threads[] = new Thread[connections];
+        try {
+            for (int i = 0; i < connections; i++) {
+                parts[i].socket = new Socket(host, port);
+                parts[i].socket.setTcpNoDelay(true);
+            }
+        } catch (IOException refused) {
+            for (Connection part : parts) {
+                if (part.socket != null) {
+                    part.socket.close();
+                }
+            }
+            throw refused;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            threads[i] = new Thread(parts[i], "CommandClient connection " + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for the answers");
+            }
+        }
+        long time = System.nanoTime() - start;
+        for (Connection part : parts) {
+            if (part.failure != null) {
+                throw part.failure;
+            }
+            latencies.add(part.latencies);
+            requestCount += part.count;
+            failureCount += part.failures;
+        }
+        return time;
+    }
+
+    /**
+     * Returns the latencies of every request sent so far.
+     *
+     * @return LatencyHistogram : time from sending a request to reading its answer.
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Returns the number of requests answered so far.
+     *
+     * @return long : the number of requests.
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the number of requests answered with something other than ok: an
+     * account that already exists or is missing, or a declined purchase.
+     *
+     * @return long : the number of such answers.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Replays a command file against a running CommandServer and prints the
+     * throughput and latencies.
+     *
+     * @param args : host, port, path of the command file, and optionally the
+     *             number of connections (default 4) and the window (default 64).
+     * @throws IOException : if the file cannot be read or the server fails.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: java CommandClient host port file [connections] [window]");
+            return;
+        }
+        int connections = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int window = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        CommandClient client = new CommandClient(args[0], Integer.parseInt(args[1]));
+        long time = client.run(args[2], connections, window);
+        System.out.println(client.getRequestCount() + " requests in " + time / 1_000_000 + " ms, "
+                + client.getRequestCount() * 1_000_000_000L / Math.max(time, 1) + " requests/s, "
+                + client.getFailureCount() + " not ok");
+        System.out.println("latency " + client.getLatencies());
+    }
+}
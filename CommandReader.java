@@ -0,0 +1,355 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a command file in large blocks through a FileChannel and parses the
+ * commands straight from the bytes. Account numbers and amounts never become
+ * Strings; only the name and address of a new account do. Amounts are read as
+ * whole cents, so they reach the database exactly as they appear in the file.
+ *
+ * @author Angela Li
+ */
+public class CommandReader implements Closeable {
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Kinds of commands in a command file.
+     */
+    public enum Command {
+        START, STOP, CREATE, DELETE, LIMIT, PURCHASE, INVALID
+    }
+
+    private final FileChannel channel;
+    private byte buffer[];
+    private int position; // next unread byte of the buffer
+    private int limit; // end of the bytes read into the buffer
+    private boolean endOfFile;
+    private int lineStart; // bounds of the last line read, without the line break
+    private int lineEnd;
+
+    private long accountNumber;
+    private String name;
+    private String address;
+    private long creditLimit; // in cents
+    private long balance; // in cents
+    private long price; // in cents
+    private String text;
+
+    /**
+     * Constructor for CommandReader objects.
+     *
+     * @param fileName : path of the command file.
+     * @throws IOException : if the file cannot be opened.
+     */
+    public CommandReader(String fileName) throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        this.buffer = new byte[BLOCK_SIZE];
+        this.position = 0;
+        this.limit = 0;
+        this.endOfFile = false;
+    }
+
+    /**
+     * Reads the next command and its operands. The operands are available from
+     * the getters until the next call.
+     *
+     * @return Command : the kind of command, or null at the end of the file.
+     * @throws IOException : if the file cannot be read or a command is cut short.
+     */
+    public Command next() throws IOException {
+        if (!readLine()) {
+            return null;
+        }
+        if (lineIs("pur")) {
+            accountNumber = nextLong();
+            price = nextCents();
+            return Command.PURCHASE;
+        } else if (lineIs("cre")) {
+            accountNumber = nextLong();
+            name = nextString();
+            address = nextString();
+            creditLimit = nextCents();
+            balance = nextCents();
+            return Command.CREATE;
+        } else if (lineIs("del")) {
+            accountNumber = nextLong();
+            return Command.DELETE;
+        } else if (lineIs("lim")) {
+            accountNumber = nextLong();
+            creditLimit = nextCents();
+            return Command.LIMIT;
+        } else if (lineIs("start")) {
+            return Command.START;
+        } else if (lineIs("stop")) {
+            return Command.STOP;
+        }
+        text = lineString();
+        return Command.INVALID;
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public double getCreditLimit() {
+        return Money.toDollars(creditLimit);
+    }
+
+    public double getBalance() {
+        return Money.toDollars(balance);
+    }
+
+    public double getPrice() {
+        return Money.toDollars(price);
+    }
+
+    public long getCreditLimitCents() {
+        return creditLimit;
+    }
+
+    public long getBalanceCents() {
+        return balance;
+    }
+
+    public long getPriceCents() {
+        return price;
+    }
+
+    /**
+     * Returns the text of the last command when it was not a known command.
+     *
+     * @return String : the line as it appears in the file.
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Finds the next line in the buffer, reading more of the file when the line
+     * runs past the end of what was read so far.
+     *
+     * @return boolean : true, if a line was found, false at the end of the file.
+     * @throws IOException : if the file cannot be read.
+     */
+    private boolean readLine() throws IOException {
+        int scan = position;
+        while (true) {
+            while (scan < limit && buffer[scan] != '\n') {
+                scan++;
+            }
+            if (scan < limit) { // found the line break
+                lineStart = position;
+                lineEnd = scan;
+                position = scan + 1;
+                break;
+            }
+            if (endOfFile) {
+                if (position == limit) {
+                    return false;
+                }
+                lineStart = position; // last line without a line break
+                lineEnd = limit;
+                position = limit;
+                break;
+            }
+            scan -= position;
+            fill();
+        }
+        if (lineEnd > lineStart && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads as much of the
+     * file as fits behind them, growing the buffer if a single line fills it.
+     *
+     * @throws IOException : if the file cannot be read.
+     */
+    private void fill() throws IOException {
+        int unread = limit - position;
+        if (unread == buffer.length) {
+            byte bigger[] = new byte[buffer.length * 2];
+            System.arraycopy(buffer, position, bigger, 0, unread);
+            buffer = bigger;
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, unread);
+        }
+        position = 0;
+        limit = unread;
+        ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+        while (target.hasRemaining()) {
+            int read = channel.read(target);
+            if (read < 0) {
+                endOfFile = true;
+                break;
+            }
+            if (read == 0) {
+                break;
+            }
+        }
+        limit = target.position();
+    }
+
+    /**
+     * Checks if the last line is exactly the given command word.
+     *
+     * @param word : the command word, in ASCII.
+     * @return boolean : true, if the line matches.
+     */
+    private boolean lineIs(String word) {
+        if (lineEnd - lineStart != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (buffer[lineStart + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next line as text.
+     *
+     * @return String : the line.
+     * @throws IOException : if the file ends early.
+     */
+    private String nextString() throws IOException {
+        operandLine();
+        return lineString();
+    }
+
+    /**
+     * Reads the next line as a whole number.
+     *
+     * @return long : the number on the line.
+     * @throws IOException : if the file ends early.
+     */
+    private long nextLong() throws IOException {
+        operandLine();
+        return parseLong(buffer, lineStart, lineEnd);
+    }
+
+    /**
+     * Reads the next line as an amount of money in cents.
+     *
+     * @return long : the amount on the line in cents.
+     * @throws IOException : if the file ends early.
+     */
+    private long nextCents() throws IOException {
+        operandLine();
+        return parseCents(buffer, lineStart, lineEnd);
+    }
+
+    /**
+     * Parses a whole number from ASCII digits.
+     *
+     * @param bytes : the text.
+     * @param start : index of the first character of the number.
+     * @param end   : index after the number.
+     * @return long : the number.
+     * @throws NumberFormatException : if the text is not a number.
+     */
+    static long parseLong(byte bytes[], int start, int end) {
+        int index = start;
+        boolean negative = index < end && bytes[index] == '-';
+        if (negative) {
+            index++;
+        }
+        if (index == end || end - index > 18) { // empty, or possibly outside a long
+            return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = bytes[index] - '0';
+            if (digit < 0 || digit > 9) { // throws the usual NumberFormatException
+                return Long.parseLong(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses an amount of money in cents. Plain amounts such as 1250 or 19.99 are
+     * parsed from the digits; anything else goes through Double.parseDouble and is
+     * rounded to the nearest cent.
+     *
+     * @param bytes : the text.
+     * @param start : index of the first character of the amount.
+     * @param end   : index after the amount.
+     * @return long : the amount in cents.
+     * @throws NumberFormatException : if the text is not a number.
+     */
+    static long parseCents(byte bytes[], int start, int end) {
+        int index = start;
+        boolean negative = index < end && bytes[index] == '-';
+        if (negative) {
+            index++;
+        }
+        long cents = 0;
+        int count = 0; // digits read
+        int decimals = -1; // digits after the point, -1 before the point
+        for (; index < end; index++) {
+            byte current = bytes[index];
+            if (current == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (current >= '0' && current <= '9' && count < 16 && decimals < 2) {
+                cents = cents * 10 + (current - '0');
+                count++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                return Money.toCents(Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+            }
+        }
+        if (count == 0) {
+            return Money.toCents(Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+        }
+        for (int i = Math.max(decimals, 0); i < 2; i++) {
+            cents *= 10;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Reads the line holding the next operand of a command.
+     *
+     * @throws IOException : if the file ends before the command is complete.
+     */
+    private void operandLine() throws IOException {
+        if (!readLine()) {
+            throw new IOException("Command file ends in the middle of a command");
+        }
+    }
+
+    /**
+     * Decodes the last line as UTF-8 text.
+     *
+     * @return String : the line.
+     */
+    private String lineString() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+}
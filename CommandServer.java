@@ -0,0 +1,527 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Network front end that applies a stream of commands to a database. A request
+ * is a line with its request id followed by a command in the format of the
+ * command files: cre, del, lim or pur and their operands one per line, or get
+ * and an account number. Every request is answered with a line holding its
+ * request id and a status: ok, exists (the account of a cre already exists),
+ * missing, declined (a pur over the credit limit) or error and a message. A
+ * get that finds its account is followed by the five lines of the account. A
+ * request that cannot be parsed closes the connection after its error, while
+ * a request the database fails on only gets its error.
+ *
+ * Clients may send any number of requests without waiting for the answers.
+ * One thread serves every connection through a Selector: whatever a read
+ * brings in is parsed into whole requests, runs of consecutive cre, del or pur
+ * requests go to the database through its batch operations, and the answers
+ * are written back in the order of the requests. A connection with more than
+ * OUTPUT_LIMIT bytes of unsent answers is not read until its client catches up.
+ *
+ * @author Angela Li
+ */
+public class CommandServer implements Closeable {
+    private static final int READ_SIZE = 1 << 16;
+    private static final int OUTPUT_LIMIT = 1 << 20; // unsent answers before a connection stops being read
+
+    private static final byte CREATE = 1;
+    private static final byte DELETE = 2;
+    private static final byte LIMIT = 3;
+    private static final byte PURCHASE = 4;
+    private static final byte GET = 5;
+
+    private final CCDatabase structure;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private volatile boolean closed;
+    private final Account view; // reused by get and declined purchases
+
+    // the requests parsed from one read, by position
+    private int count;
+    private long ids[];
+    private byte types[];
+    private long accountNumbers[];
+    private String names[];
+    private String addresses[];
+    private long amounts[]; // credit limit of cre and lim, price of pur
+    private long balances[];
+
+    /**
+     * State of one client connection.
+     */
+    private static final class Connection {
+        byte input[] = new byte[READ_SIZE];
+        int inputEnd; // end of the bytes read and not yet parsed
+        ByteBuffer output = ByteBuffer.allocate(READ_SIZE); // answers not yet sent, in write mode
+        boolean closing; // answer what is left, then close
+    }
+
+    /**
+     * Constructor for CommandServer objects. Binds to the loopback address, so
+     * only clients on this machine can reach the accounts.
+     *
+     * @param structure : the database to apply the commands to.
+     * @param port      : the port to listen on, or 0 for any free port.
+     * @throws IOException : if the port cannot be bound.
+     */
+    public CommandServer(CCDatabase structure, int port) throws IOException {
+        this(structure, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Constructor for CommandServer objects. The server does not check who
+     * connects, so any address other than the loopback one exposes the accounts
+     * to everyone who can reach it.
+     *
+     * @param structure : the database to apply the commands to.
+     * @param address   : the address to listen on.
+     * @param port      : the port to listen on, or 0 for any free port.
+     * @throws IOException : if the port cannot be bound.
+     */
+    public CommandServer(CCDatabase structure, InetAddress address, int port) throws IOException {
+        this.structure = structure;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(address, port));
+        this.server.configureBlocking(false);
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+        this.closed = false;
+        this.view = new Account();
+        this.ids = new long[256];
+        this.types = new byte[256];
+        this.accountNumbers = new long[256];
+        this.names = new String[256];
+        this.addresses = new String[256];
+        this.amounts = new long[256];
+        this.balances = new long[256];
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return integer : the port.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Serves every connection until close is called.
+     *
+     * @throws IOException : if the selector fails.
+     */
+    public void serve() throws IOException {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (IOException lost) {
+                        key.cancel(); // the client went away
+                        key.channel().close();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Stops serve and closes every connection.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts a new connection.
+     *
+     * @throws IOException : if the connection cannot be set up.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    /**
+     * Reads what a client sent, answers every whole request in it, and keeps the
+     * rest of a request that was cut off for the next read.
+     *
+     * @param key : the key of the connection.
+     * @throws IOException : if the connection fails.
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (connection.inputEnd == connection.input.length) {
+            connection.input = Arrays.copyOf(connection.input, connection.input.length * 2);
+        }
+        ByteBuffer target = ByteBuffer.wrap(connection.input, connection.inputEnd,
+                connection.input.length - connection.inputEnd);
+        int read = channel.read(target);
+        if (read < 0) {
+            connection.closing = true;
+        } else {
+            connection.inputEnd += read;
+            int parsed = parse(connection);
+            System.arraycopy(connection.input, parsed, connection.input, 0, connection.inputEnd - parsed);
+            connection.inputEnd -= parsed;
+            apply(connection);
+        }
+        write(key);
+    }
+
+    /**
+     * Sends as many waiting answers as the connection takes, and chooses what to
+     * wait for next: more requests, room to send the rest, or nothing once a
+     * closing connection has sent everything.
+     *
+     * @param key : the key of the connection.
+     * @throws IOException : if the connection fails.
+     */
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer output = connection.output;
+        output.flip();
+        ((SocketChannel) key.channel()).write(output);
+        output.compact();
+        if (connection.closing && output.position() == 0) {
+            key.cancel();
+            key.channel().close();
+            return;
+        }
+        int interest = 0;
+        if (output.position() > 0) {
+            interest |= SelectionKey.OP_WRITE;
+        }
+        if (!connection.closing && output.position() < OUTPUT_LIMIT) {
+            interest |= SelectionKey.OP_READ;
+        }
+        key.interestOps(interest);
+    }
+
+    /**
+     * Parses the whole requests at the start of the unparsed input into the
+     * request arrays. A request that is not understood is answered with an error,
+     * and the connection is closed after it, as the rest of the input can no
+     * longer be told apart.
+     *
+     * @param connection : the connection whose input is parsed.
+     * @return integer : the number of bytes parsed.
+     */
+    private int parse(Connection connection) {
+        byte input[] = connection.input;
+        int end = connection.inputEnd;
+        int position = 0;
+        count = 0;
+        int lines[] = new int[14]; // start and end of up to 7 lines
+        while (!connection.closing) {
+            int found = 0;
+            int start = position;
+            int operands = -1;
+            while (found < 2 + Math.max(operands, 0)) {
+                int scan = start;
+                while (scan < end && input[scan] != '\n') {
+                    scan++;
+                }
+                if (scan == end) {
+                    return position; // the request is not complete yet
+                }
+                lines[2 * found] = start;
+                lines[2 * found + 1] = scan > start && input[scan - 1] == '\r' ? scan - 1 : scan;
+                start = scan + 1;
+                found++;
+                if (found == 2) {
+                    operands = operandCount(input, lines[2], lines[3]);
+                    if (operands < 0) {
+                        error(connection, input, lines, "unknown command "
+                                + new String(input, lines[2], lines[3] - lines[2], StandardCharsets.UTF_8));
+                        return position;
+                    }
+                }
+            }
+            if (count == ids.length) {
+                grow();
+            }
+            try {
+                ids[count] = CommandReader.parseLong(input, lines[0], lines[1]);
+                types[count] = type(input, lines[2]);
+                accountNumbers[count] = CommandReader.parseLong(input, lines[4], lines[5]);
+                if (types[count] == CREATE) {
+                    names[count] = new String(input, lines[6], lines[7] - lines[6], StandardCharsets.UTF_8);
+                    addresses[count] = new String(input, lines[8], lines[9] - lines[8], StandardCharsets.UTF_8);
+                    amounts[count] = CommandReader.parseCents(input, lines[10], lines[11]);
+                    balances[count] = CommandReader.parseCents(input, lines[12], lines[13]);
+                } else if (types[count] == LIMIT || types[count] == PURCHASE) {
+                    amounts[count] = CommandReader.parseCents(input, lines[6], lines[7]);
+                }
+            } catch (NumberFormatException notNumber) {
+                error(connection, input, lines, "not a number: " + notNumber.getMessage());
+                return position;
+            }
+            count++;
+            position = start;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the number of operand lines of a command.
+     *
+     * @param input : the input holding the command word.
+     * @param start : index of the command word.
+     * @param end   : index after the command word.
+     * @return integer : the number of operands, or -1 for an unknown command.
+     */
+    private static int operandCount(byte input[], int start, int end) {
+        if (end - start != 3) {
+            return -1;
+        }
+        switch (type(input, start)) {
+            case CREATE:
+                return 5;
+            case LIMIT:
+            case PURCHASE:
+                return 2;
+            case DELETE:
+            case GET:
+                return 1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the type of a three letter command word.
+     *
+     * @param input : the input holding the command word.
+     * @param start : index of the command word.
+     * @return byte : the request type, or 0 if unknown.
+     */
+    private static byte type(byte input[], int start) {
+        int word = input[start] << 16 | input[start + 1] << 8 | input[start + 2];
+        switch (word) {
+            case 'c' << 16 | 'r' << 8 | 'e':
+                return CREATE;
+            case 'd' << 16 | 'e' << 8 | 'l':
+                return DELETE;
+            case 'l' << 16 | 'i' << 8 | 'm':
+                return LIMIT;
+            case 'p' << 16 | 'u' << 8 | 'r':
+                return PURCHASE;
+            case 'g' << 16 | 'e' << 8 | 't':
+                return GET;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Answers the requests parsed so far, then an error for the request that could
+     * not be parsed, and closes the connection once they are sent.
+     *
+     * @param connection : the connection.
+     * @param input      : the input holding the request.
+     * @param lines      : bounds of the lines of the request; the first is the id.
+     * @param message    : what was wrong.
+     */
+    private void error(Connection connection, byte input[], int lines[], String message) {
+        apply(connection);
+        count = 0;
+        answer(connection, new String(input, lines[0], lines[1] - lines[0], StandardCharsets.UTF_8) + " error "
+                + message + "\n");
+        connection.closing = true;
+    }
+
+    /**
+     * Applies the parsed requests in order and writes their answers. A run of two
+     * or more cre, del or pur requests goes through the batch operation of the
+     * database. If the database throws, the request, or every request of the
+     * run, is answered with an error and the connection goes on with the next
+     * one.
+     *
+     * @param connection : the connection to answer.
+     */
+    private void apply(Connection connection) {
+        int first = 0;
+        while (first < count) {
+            byte type = types[first];
+            int last = first + 1;
+            if (type == CREATE || type == DELETE || type == PURCHASE) {
+                while (last < count && types[last] == type) {
+                    last++;
+                }
+            }
+            try {
+                if (last - first == 1) {
+                    answer(connection, ids[first], single(first));
+                } else {
+                    String statuses[] = batch(type, first, last);
+                    for (int i = first; i < last; i++) {
+                        answer(connection, ids[i], statuses[i - first]);
+                    }
+                }
+            } catch (RuntimeException failed) {
+                String message = String.valueOf(failed).replace('\n', ' ').replace('\r', ' ');
+                for (int i = first; i < last; i++) {
+                    answer(connection, ids[i], "error " + message);
+                }
+            }
+            for (int i = first; i < last; i++) {
+                names[i] = null;
+                addresses[i] = null;
+            }
+            first = last;
+        }
+        count = 0;
+    }
+
+    /**
+     * Applies a run of requests of one type through the batch operation of the
+     * database.
+     *
+     * @param type  : the type of every request in the run.
+     * @param first : position of the first request.
+     * @param last  : position after the last request.
+     * @return String[] : the status of each request.
+     */
+    private String[] batch(byte type, int first, int last) {
+        String statuses[] = new String[last - first];
+        if (type == CREATE) {
+            double limits[] = new double[last - first];
+            double amountsOwed[] = new double[last - first];
+            for (int i = first; i < last; i++) {
+                limits[i - first] = Money.toDollars(amounts[i]);
+                amountsOwed[i - first] = Money.toDollars(balances[i]);
+            }
+            boolean created[] = structure.createAccounts(Arrays.copyOfRange(accountNumbers, first, last),
+                    Arrays.copyOfRange(names, first, last), Arrays.copyOfRange(addresses, first, last), limits,
+                    amountsOwed);
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = created[i] ? "ok" : "exists";
+            }
+        } else if (type == DELETE) {
+            boolean deleted[] = structure.deleteAccounts(Arrays.copyOfRange(accountNumbers, first, last));
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = deleted[i] ? "ok" : "missing";
+            }
+        } else {
+            double prices[] = new double[last - first];
+            for (int i = first; i < last; i++) {
+                prices[i - first] = Money.toDollars(amounts[i]);
+            }
+            boolean approved[] = structure.makePurchases(Arrays.copyOfRange(accountNumbers, first, last), prices);
+            for (int i = 0; i < statuses.length; i++) {
+                // a purchase that did not go through changed nothing, so the account is as it was
+                statuses[i] = approved[i] ? "ok"
+                        : structure.readAccount(accountNumbers[first + i], view) ? "declined" : "missing";
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Applies one request on its own.
+     *
+     * @param i : position of the request.
+     * @return String : the status of the request, for a get that finds its
+     *         account followed by the lines of the account.
+     */
+    private String single(int i) {
+        long accountNumber = accountNumbers[i];
+        switch (types[i]) {
+            case CREATE:
+                return structure.createAccount(accountNumber, names[i], addresses[i], Money.toDollars(amounts[i]),
+                        Money.toDollars(balances[i])) ? "ok" : "exists";
+            case DELETE:
+                return structure.deleteAccount(accountNumber) ? "ok" : "missing";
+            case LIMIT:
+                return structure.adjustCreditLimit(accountNumber, Money.toDollars(amounts[i])) ? "ok" : "missing";
+            case PURCHASE: {
+                int result = structure.purchase(accountNumber, Money.toDollars(amounts[i]));
+                return result == CCDatabase.APPROVED ? "ok"
+                        : result == CCDatabase.DECLINED_OVER_LIMIT ? "declined" : "missing";
+            }
+            default: // GET
+                return structure.readAccount(accountNumber, view) ? "ok\n" + view : "missing";
+        }
+    }
+
+    /**
+     * Writes a one line answer.
+     *
+     * @param connection : the connection to answer.
+     * @param id         : the request id.
+     * @param status     : the status of the request.
+     */
+    private static void answer(Connection connection, long id, String status) {
+        answer(connection, id + " " + status + "\n");
+    }
+
+    /**
+     * Appends an answer to the unsent answers of a connection.
+     *
+     * @param connection : the connection to answer.
+     * @param text       : the answer with its line breaks.
+     */
+    private static void answer(Connection connection, String text) {
+        byte bytes[] = text.getBytes(StandardCharsets.UTF_8);
+        if (connection.output.remaining() < bytes.length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(connection.output.capacity() * 2,
+                    connection.output.position() + bytes.length));
+            connection.output.flip();
+            larger.put(connection.output);
+            connection.output = larger;
+        }
+        connection.output.put(bytes);
+    }
+
+    /**
+     * Doubles the request arrays.
+     */
+    private void grow() {
+        int length = ids.length * 2;
+        ids = Arrays.copyOf(ids, length);
+        types = Arrays.copyOf(types, length);
+        accountNumbers = Arrays.copyOf(accountNumbers, length);
+        names = Arrays.copyOf(names, length);
+        addresses = Arrays.copyOf(addresses, length);
+        amounts = Arrays.copyOf(amounts, length);
+        balances = Arrays.copyOf(balances, length);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Set of account numbers that answers "certainly absent" or "maybe present"
+ * and supports removal. Every account number sets K counters of 4 bits, and it
+ * is certainly absent if any of them is 0; removing it counts them down again.
+ * The counters are grouped in blocks of 128 that fill one 64 byte cache line,
+ * and all K counters of an account number lie in one block, so a test reads a
+ * single cache line. A counter that reaches 15 stays there, since it no longer
+ * knows how many accounts share it, which can only turn an absent account into
+ * a false positive, never hide a present one.
+ *
+ * The filter holds 16 counters for each account it was sized for, which keeps
+ * the false positives below one percent. It does not grow by itself; the owner
+ * builds a larger one when getCount passes getCapacity.
+ *
+ * @author Angela Li
+ */
+public class CountingBloomFilter {
+    private static final int K = 5; // counters per account number
+    private static final int COUNTERS_PER_ACCOUNT = 16;
+    private static final int BLOCK_LONGS = 8; // 8 longs of 16 counters, one cache line
+    private static final int SATURATED = 15;
+
+    private final long counters[];
+    private final int blocks;
+    private final int capacity;
+    private int count; // account numbers added and not removed
+
+    /**
+     * Constructor for CountingBloomFilter objects.
+     *
+     * @param capacity : the number of account numbers to size the filter for.
+     */
+    public CountingBloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 1024);
+        this.blocks = (int) ((long) this.capacity * COUNTERS_PER_ACCOUNT / 128);
+        this.counters = new long[blocks * BLOCK_LONGS];
+        this.count = 0;
+    }
+
+    /**
+     * Adds an account number that is not in the set yet.
+     *
+     * @param accountNumber : the account number.
+     */
+    public void add(long accountNumber) {
+        long h = CCPrimitiveHash.mix(accountNumber);
+        int base = block(h);
+        for (int i = 0; i < K; i++) {
+            int counter = (int) (h >>> (7 * i)) & 127;
+            int index = base + (counter >>> 4);
+            int shift = (counter & 15) << 2;
+            if ((counters[index] >>> shift & 15) != SATURATED) {
+                counters[index] += 1L << shift;
+            }
+        }
+        count++;
+    }
+
+    /**
+     * Removes an account number that is in the set.
+     *
+     * @param accountNumber : the account number, added before.
+     */
+    public void remove(long accountNumber) {
+        long h = CCPrimitiveHash.mix(accountNumber);
+        int base = block(h);
+        for (int i = 0; i < K; i++) {
+            int counter = (int) (h >>> (7 * i)) & 127;
+            int index = base + (counter >>> 4);
+            int shift = (counter & 15) << 2;
+            long value = counters[index] >>> shift & 15;
+            if (value != SATURATED && value != 0) {
+                counters[index] -= 1L << shift;
+            }
+        }
+        count--;
+    }
+
+    /**
+     * Checks if an account number may be in the set.
+     *
+     * @param accountNumber : the account number.
+     * @return boolean : false, if it is certainly not in the set.
+     */
+    public boolean mightContain(long accountNumber) {
+        long h = CCPrimitiveHash.mix(accountNumber);
+        int base = block(h);
+        for (int i = 0; i < K; i++) {
+            int counter = (int) (h >>> (7 * i)) & 127;
+            if ((counters[base + (counter >>> 4)] >>> ((counter & 15) << 2) & 15) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of account numbers in the set.
+     *
+     * @return integer : the count.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of account numbers the filter was sized for.
+     *
+     * @return integer : the capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the bytes taken by the counters.
+     *
+     * @return long : the size of the counters.
+     */
+    public long getSize() {
+        return (long) counters.length * 8;
+    }
+
+    /**
+     * Returns the index of the first long of the block of a mixed account number,
+     * taken from the bits above the ones that pick the counters.
+     *
+     * @param h : the mixed account number.
+     * @return integer : the first long of the block.
+     */
+    private int block(long h) {
+        return (int) (((h >>> 35) * blocks) >>> 29) * BLOCK_LONGS;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Histogram of latencies in nanoseconds. Every power of two is split into 32
+ * buckets, so recording is a couple of shifts and any percentile is reported
+ * within about 3% of the real value, whatever the range of the latencies.
+ *
+ * @author Angela Li
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5; // 32 buckets per power of two
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long counts[];
+    private long totalCount;
+    private long totalValue; // sum of the recorded latencies
+    private long maxValue;
+
+    /**
+     * Constructor for LatencyHistogram objects.
+     */
+    public LatencyHistogram() {
+        this.counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+        this.totalCount = 0;
+        this.totalValue = 0;
+        this.maxValue = 0;
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos : the latency in nanoseconds, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[index(value)]++;
+        totalCount++;
+        totalValue += value;
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Adds every latency recorded in another histogram to this one.
+     *
+     * @param other : the histogram to add.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        totalValue += other.totalValue;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     *
+     * @return long : the number of latencies.
+     */
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the sum of the recorded latencies.
+     *
+     * @return long : the sum in nanoseconds.
+     */
+    public long getSum() {
+        return totalValue;
+    }
+
+    /**
+     * Returns the highest recorded latency.
+     *
+     * @return long : the highest latency in nanoseconds.
+     */
+    public long getMax() {
+        return maxValue;
+    }
+
+    /**
+     * Returns the latency that the given percentage of the recorded latencies are
+     * at or below.
+     *
+     * @param percentile : the percentage, between 0 and 100.
+     * @return long : the latency in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * totalCount);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(highestValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    /**
+     * Formats the usual percentiles on one line in microseconds.
+     *
+     * @return String : count, p50, p99, p99.9, p99.99 and max.
+     */
+    @Override
+    public String toString() {
+        return "count " + totalCount + ", p50 " + micros(getPercentile(50)) + " us, p99 " + micros(getPercentile(99))
+                + " us, p99.9 " + micros(getPercentile(99.9)) + " us, p99.99 " + micros(getPercentile(99.99))
+                + " us, max " + micros(maxValue) + " us";
+    }
+
+    /**
+     * Finds the bucket of a latency. Values below 32 get a bucket each, larger
+     * values share a bucket with the values that agree in their top 6 bits.
+     *
+     * @param value : the latency in nanoseconds.
+     * @return integer : index into counts.
+     */
+    private static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // at least SUB_BITS
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * Returns the largest latency that falls in the given bucket.
+     *
+     * @param index : index into counts.
+     * @return long : the largest latency of the bucket in nanoseconds.
+     */
+    private static long highestValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lowest = (long) (index % SUB_COUNT + SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Converts nanoseconds to microseconds with one decimal.
+     *
+     * @param nanos : a latency in nanoseconds.
+     * @return String : the latency in microseconds.
+     */
+    private static String micros(long nanos) {
+        return String.valueOf(Math.round(nanos / 100.0) / 10.0);
+    }
+}
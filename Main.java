@@ -1,17 +1,33 @@
-/**
- * Application runner.
- *
- * @author Angela Li
- */
-public class Main {
-    /**
-     * Runs the current application with the chosen database structure type.
-     *
-     * @param args : None.
-     */
-    public static void main(String[] args) {
-
-        CCDatabase structure = new CCHash(); // choice can be "new CCHash" or "new CCSorted"
-        new Application().run(structure);
-    }
-}
\ No newline at end of file
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * Application runner.
+ *
+ * @author Angela Li
+ */
+public class Main {
+    /**
+     * Runs the current application with the chosen database structure type.
+     *
+     * @param args : None, or "serve", a port and optionally the address to listen
+     *             on (the loopback address by default) to answer commands sent
+     *             over the network by a CommandServer instead.
+     */
+    public static void main(String[] args) {
+
+        CCDatabase structure = new CCAdaptive(); // moves between CCHash and CCSorted as the workload needs
+        if (args.length > 1 && args[0].equals("serve")) {
+            try (CommandServer server = new CommandServer(structure,
+                    args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(args[1]))) {
+                System.out.println("CommandServer listening on " + server.getPort());
+                server.serve();
+            } catch (IOException failed) {
+                System.out.println("CommandServer failed: " + failed.getMessage());
+            }
+            return;
+        }
+        new Application().run(structure);
+    }
+}
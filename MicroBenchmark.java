@@ -0,0 +1,347 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks every CCDatabase operation on each database structure at several
+ * sizes, and the replay of the test command files with the parsing done
+ * beforehand. Every benchmark runs a few warmup iterations that are thrown away
+ * and then a number of measured iterations, and reports the throughput, the
+ * average time per operation with its spread over the iterations, and the bytes
+ * allocated per operation. Pass structure names, e.g. "CCHash CCSorted", to run
+ * only those structures.
+ *
+ * @author Angela Li
+ */
+public class MicroBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final int SIZES[] = { 1_000, 10_000, 100_000 };
+    private static final int READS_PER_ITERATION = 200_000;
+    private static final int WRITES_PER_ITERATION = 1_000; // creates or deletes
+    private static final String FILES[] = { "Test1.txt", "Test2.txt", "Test3.txt" };
+
+    private static final String NAMES[] = { "CCHash", "CCPrimitiveHash", "CCSorted", "CCBTree" };
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    private static long sink; // results are added here so the JIT cannot drop the calls
+
+    /**
+     * Operation being measured; called once per operation of an iteration.
+     */
+    private interface Operation {
+        void run(int index);
+    }
+
+    /**
+     * Runs every benchmark for the structures named in the arguments, or for all
+     * structures if there are none.
+     *
+     * @param args : names of the structures to benchmark.
+     */
+    public static void main(String[] args) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (!selected(args, NAMES[i])) {
+                continue;
+            }
+            Supplier<CCDatabase> factory = factory(NAMES[i]);
+            for (int size : SIZES) {
+                operations(NAMES[i], factory, size);
+            }
+            for (String file : FILES) {
+                replay(NAMES[i], factory, file);
+            }
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * Benchmarks each operation on a structure holding the given number of
+     * accounts. Reads and updates run against one filled structure; creates and
+     * deletes get a freshly filled structure for every iteration so its size
+     * stays the same.
+     *
+     * @param label   : name printed for the database structure.
+     * @param factory : creates an empty database.
+     * @param size    : number of accounts in the database.
+     */
+    private static void operations(String label, Supplier<CCDatabase> factory, int size) {
+        Random random = new Random(size);
+        long present[] = randomNumbers(random, size);
+        long absent[] = randomNumbers(random, WRITES_PER_ITERATION);
+        int picks[] = new int[READS_PER_ITERATION];
+        double prices[] = new double[READS_PER_ITERATION];
+        for (int i = 0; i < READS_PER_ITERATION; i++) {
+            picks[i] = random.nextInt(size);
+            prices[i] = 1 + random.nextInt(100);
+        }
+        String prefix = label + " " + size + " ";
+
+        CCDatabase filled[] = new CCDatabase[1];
+        measure(prefix + "createAccount", WRITES_PER_ITERATION, () -> filled[0] = fill(factory, present),
+                index -> sink += filled[0].createAccount(absent[index], "name", "address", 1000, 0) ? 1 : 0);
+        measure(prefix + "deleteAccount", WRITES_PER_ITERATION, () -> filled[0] = fill(factory, present),
+                index -> sink += filled[0].deleteAccount(present[index]) ? 1 : 0);
+
+        CCDatabase structure = fill(factory, present);
+        measure(prefix + "getAccount", READS_PER_ITERATION, null,
+                index -> sink += structure.getAccount(present[picks[index]]).length());
+        Account view = new Account();
+        measure(prefix + "readAccount", READS_PER_ITERATION, null,
+                index -> sink += structure.readAccount(present[picks[index]], view) ? view.balance : 0);
+        measure(prefix + "readAccount miss", WRITES_PER_ITERATION, null,
+                index -> sink += structure.readAccount(absent[index], view) ? 1 : 0);
+        measure(prefix + "adjustCreditLimit", READS_PER_ITERATION, null,
+                index -> sink += structure.adjustCreditLimit(present[picks[index]], 1_000_000 + prices[index]) ? 1
+                        : 0);
+        measure(prefix + "makePurchase", READS_PER_ITERATION, null, index -> {
+            try {
+                sink += structure.makePurchase(present[picks[index]], prices[index]) ? 1 : 0;
+            } catch (Exception invalidFunds) {
+                sink--;
+            }
+        });
+        measure(prefix + "purchase", READS_PER_ITERATION, null,
+                index -> sink += structure.purchase(present[picks[index]], prices[index]));
+    }
+
+    /**
+     * Benchmarks replaying a command file into an empty structure. The file is
+     * parsed once up front, so only the database operations are measured.
+     *
+     * @param label   : name printed for the database structure.
+     * @param factory : creates an empty database.
+     * @param file    : path of the command file.
+     */
+    private static void replay(String label, Supplier<CCDatabase> factory, String file) {
+        Workload workload;
+        try {
+            workload = new Workload(file);
+        } catch (IOException notOpen) {
+            System.out.println("cannot open " + file);
+            return;
+        }
+        CCDatabase target[] = new CCDatabase[1];
+        measure(label + " replay " + file, workload.count, () -> target[0] = factory.get(),
+                index -> workload.apply(target[0], index));
+    }
+
+    /**
+     * Runs the warmup and measured iterations of one benchmark and prints the
+     * results.
+     *
+     * @param label     : name printed for the benchmark.
+     * @param count     : number of operations per iteration.
+     * @param setup     : runs before every iteration without being timed, or null.
+     * @param operation : the operation being measured.
+     */
+    private static void measure(String label, int count, Runnable setup, Operation operation) {
+        double nanosPerOp[] = new double[MEASUREMENT_ITERATIONS];
+        long allocated = 0;
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+            if (setup != null) {
+                setup.run();
+            }
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                operation.run(i);
+            }
+            long time = System.nanoTime() - start;
+            long bytes = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+            if (iteration >= WARMUP_ITERATIONS) {
+                nanosPerOp[iteration - WARMUP_ITERATIONS] = (double) time / count;
+                allocated += bytes;
+            }
+        }
+        double mean = 0;
+        for (double nanos : nanosPerOp) {
+            mean += nanos;
+        }
+        mean /= MEASUREMENT_ITERATIONS;
+        double variance = 0;
+        for (double nanos : nanosPerOp) {
+            variance += (nanos - mean) * (nanos - mean);
+        }
+        double deviation = Math.sqrt(variance / (MEASUREMENT_ITERATIONS - 1));
+        System.out.println(String.format("%-45s %12.0f ops/s %12.1f +- %.1f ns/op %10.1f B/op", label,
+                1e9 / mean, mean, deviation, (double) allocated / ((long) count * MEASUREMENT_ITERATIONS)));
+    }
+
+    /**
+     * Creates a database holding the given accounts, added as one batch.
+     *
+     * @param factory        : creates an empty database.
+     * @param accountNumbers : account numbers of the accounts.
+     * @return CCDatabase : the filled database.
+     */
+    private static CCDatabase fill(Supplier<CCDatabase> factory, long accountNumbers[]) {
+        CCDatabase structure = factory.get();
+        int count = accountNumbers.length;
+        String names[] = new String[count];
+        String addresses[] = new String[count];
+        double limits[] = new double[count];
+        double balances[] = new double[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "name";
+            addresses[i] = "address";
+            limits[i] = 1_000_000;
+        }
+        structure.createAccounts(accountNumbers, names, addresses, limits, balances);
+        return structure;
+    }
+
+    /**
+     * Returns distinct random 16 digit account numbers.
+     *
+     * @param random : source of the numbers.
+     * @param count  : how many numbers to return.
+     * @return long[] : the account numbers.
+     */
+    private static long[] randomNumbers(Random random, int count) {
+        long numbers[] = new long[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = 1_000_000_000_000_000L + (random.nextLong() & Long.MAX_VALUE) % 9_000_000_000_000_000L;
+        }
+        return numbers;
+    }
+
+    /**
+     * Returns the constructor of the structure with the given name.
+     *
+     * @param label : name of the structure.
+     * @return Supplier : creates an empty database of the structure.
+     */
+    private static Supplier<CCDatabase> factory(String label) {
+        switch (label) {
+            case "CCHash":
+                return CCHash::new;
+            case "CCPrimitiveHash":
+                return CCPrimitiveHash::new;
+            case "CCSorted":
+                return CCSorted::new;
+            default:
+                return CCBTree::new;
+        }
+    }
+
+    /**
+     * Checks if a structure was asked for on the command line.
+     *
+     * @param args  : the command line arguments.
+     * @param label : name of the structure.
+     * @return boolean : true, if there are no arguments or one of them is the name.
+     */
+    private static boolean selected(String args[], String label) {
+        if (args.length == 0) {
+            return true;
+        }
+        for (String arg : args) {
+            if (arg.equals(label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Commands of a command file parsed into parallel arrays, so they can be
+     * applied again and again without reading the file.
+     */
+    private static final class Workload {
+        private static final byte CREATE = 0;
+        private static final byte DELETE = 1;
+        private static final byte LIMIT = 2;
+        private static final byte PURCHASE = 3;
+
+        int count;
+        byte kinds[] = new byte[1024];
+        long accountNumbers[] = new long[1024];
+        double amounts[] = new double[1024]; // credit limit or price
+        double balances[] = new double[1024];
+        String names[] = new String[1024];
+        String addresses[] = new String[1024];
+
+        /**
+         * Constructor for Workload objects.
+         *
+         * @param fileName : path of the command file.
+         * @throws IOException : if the command file cannot be read.
+         */
+        Workload(String fileName) throws IOException {
+            try (CommandReader input = new CommandReader(fileName)) {
+                CommandReader.Command choice;
+                while ((choice = input.next()) != null) {
+                    if (count == kinds.length) {
+                        grow();
+                    }
+                    accountNumbers[count] = input.getAccountNumber();
+                    switch (choice) {
+                        case CREATE:
+                            kinds[count] = CREATE;
+                            names[count] = input.getName();
+                            addresses[count] = input.getAddress();
+                            amounts[count] = input.getCreditLimit();
+                            balances[count] = input.getBalance();
+                            break;
+                        case DELETE:
+                            kinds[count] = DELETE;
+                            break;
+                        case LIMIT:
+                            kinds[count] = LIMIT;
+                            amounts[count] = input.getCreditLimit();
+                            break;
+                        case PURCHASE:
+                            kinds[count] = PURCHASE;
+                            amounts[count] = input.getPrice();
+                            break;
+                        default:
+                            continue; // start, stop and invalid commands do nothing to the database
+                    }
+                    count++;
+                }
+            }
+        }
+
+        /**
+         * Applies one command to a database.
+         *
+         * @param structure : the database.
+         * @param index     : position of the command in the file.
+         */
+        void apply(CCDatabase structure, int index) {
+            long accountNumber = accountNumbers[index];
+            switch (kinds[index]) {
+                case CREATE:
+                    structure.createAccount(accountNumber, names[index], addresses[index], amounts[index],
+                            balances[index]);
+                    break;
+                case DELETE:
+                    structure.deleteAccount(accountNumber);
+                    break;
+                case LIMIT:
+                    structure.adjustCreditLimit(accountNumber, amounts[index]);
+                    break;
+                default:
+                    structure.purchase(accountNumber, amounts[index]);
+            }
+        }
+
+        /**
+         * Doubles the room for commands.
+         */
+        private void grow() {
+            int length = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, length);
+            accountNumbers = Arrays.copyOf(accountNumbers, length);
+            amounts = Arrays.copyOf(amounts, length);
+            balances = Arrays.copyOf(balances, length);
+            names = Arrays.copyOf(names, length);
+            addresses = Arrays.copyOf(addresses, length);
+        }
+    }
+}
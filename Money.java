@@ -0,0 +1,58 @@
+/**
+ * Converts between amounts in dollars, as the CCDatabase methods take them,
+ * and whole cents, as the database structures store them. Sums of cents are
+ * exact, so hundreds of thousands of purchases never drift away from the
+ * amounts in the command file, and every structure applies the credit limit
+ * through the same check.
+ *
+ * @author Angela Li
+ */
+public class Money {
+
+    /**
+     * Converts an amount in dollars to cents, rounding to the nearest cent.
+     *
+     * @param dollars : the amount in dollars.
+     * @return long : the amount in cents.
+     */
+    public static long toCents(double dollars) {
+        return Math.round(dollars * 100);
+    }
+
+    /**
+     * Converts an amount in cents to dollars. Every amount of up to 13 digits
+     * before the point converts back to the same cents with toCents.
+     *
+     * @param cents : the amount in cents.
+     * @return double : the amount in dollars.
+     */
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    /**
+     * Writes an amount in cents the way the command files write amounts, e.g.
+     * 1250 cents as 12.50, so that it is read back exactly.
+     *
+     * @param cents : the amount in cents.
+     * @return String : the amount in dollars with two decimals.
+     */
+    public static String toText(long cents) {
+        long whole = Math.abs(cents / 100);
+        long fraction = Math.abs(cents % 100);
+        return (cents < 0 ? "-" : "") + whole + (fraction < 10 ? ".0" : ".") + fraction;
+    }
+
+    /**
+     * Checks if a purchase fits on an account, i.e. the old balance plus the
+     * purchase price is not higher than the credit limit.
+     *
+     * @param balance     : current balance of the account in cents.
+     * @param price       : price of the purchase in cents.
+     * @param creditLimit : credit limit of the account in cents.
+     * @return boolean : true, if the purchase may go through.
+     */
+    public static boolean withinLimit(long balance, long price, long creditLimit) {
+        return balance + price <= creditLimit;
+    }
+}
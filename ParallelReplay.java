@@ -0,0 +1,367 @@
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Replays a command file with one thread parsing and several worker threads
+ * applying the commands. Every worker owns its own database holding a shard of
+ * the account numbers, and all the commands of an account go to the same worker
+ * in file order, so the final state is the same as replaying the file serially.
+ *
+ * @author Angela Li
+ */
+public class ParallelReplay {
+    private static final int BATCH_SIZE = 1024; // commands handed over at once
+    private static final int QUEUE_LENGTH = 8; // batches waiting per worker
+
+    private static final byte CREATE = 0;
+    private static final byte DELETE = 1;
+    private static final byte LIMIT = 2;
+    private static final byte PURCHASE = 3;
+
+    private final CCDatabase shards[];
+
+    /**
+     * Batch of parsed commands for one worker, kept as parallel arrays. A batch
+     * with a barrier holds no commands; the worker counts the barrier down once
+     * every earlier batch is applied. A batch with end set stops the worker.
+     */
+    private static final class Batch {
+        int count;
+        final byte kinds[] = new byte[BATCH_SIZE];
+        final long accountNumbers[] = new long[BATCH_SIZE];
+        final double amounts[] = new double[BATCH_SIZE]; // credit limit or price
+        final double balances[] = new double[BATCH_SIZE];
+        final String names[] = new String[BATCH_SIZE];
+        final String addresses[] = new String[BATCH_SIZE];
+        CountDownLatch barrier;
+        boolean end;
+    }
+
+    /**
+     * Constructor for ParallelReplay objects.
+     *
+     * @param workers : number of worker threads and shards.
+     * @param factory : creates the empty database of each shard.
+     */
+    public ParallelReplay(int workers, Supplier<CCDatabase> factory) {
+        this.shards = new CCDatabase[workers];
+        for (int i = 0; i < workers; i++) {
+            this.shards[i] = factory.get();
+        }
+    }
+
+    /**
+     * Returns the database of every shard; an account is in the shard picked by
+     * shardOf.
+     *
+     * @return CCDatabase[] : the shards.
+     */
+    public CCDatabase[] getShards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard that owns an account number.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return integer : index of the shard.
+     */
+    public int shardOf(long accountNumber) {
+        return (int) ((CCPrimitiveHash.mix(accountNumber) >>> 1) % shards.length);
+    }
+
+    /**
+     * Parses the command file on the calling thread and applies the commands on
+     * the worker threads.
+     *
+     * @param fileName : path of the command file.
+     * @return long : milliseconds between the start and stop commands of the file,
+     *         including the time the workers need to catch up to the stop command.
+     * @throws IOException : if the command file cannot be read.
+     * @throws IllegalStateException : if a worker failed; the cause is its error.
+     */
+    public long replay(String fileName) throws IOException {
+        int workers = shards.length;
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        BlockingQueue<Batch> full[] = new BlockingQueue[workers];
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        BlockingQueue<Batch> empty[] = new BlockingQueue[workers];
+        Batch current[] = new Batch[workers];
+        Thread threads[] = new Thread[workers];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < workers; i++) {
+            full[i] = new ArrayBlockingQueue<>(QUEUE_LENGTH);
+            empty[i] = new ArrayBlockingQueue<>(QUEUE_LENGTH + 2);
+            for (int j = 0; j < QUEUE_LENGTH + 1; j++) {
+                empty[i].add(new Batch());
+            }
+            final int shard = i;
+            threads[i] = new Thread(() -> work(shards[shard], full[shard], empty[shard], failure),
+                    "replay-" + i);
+            threads[i].start();
+        }
+
+        Instant start = null;
+        Instant stop = null;
+        try (CommandReader input = new CommandReader(fileName)) {
+            CommandReader.Command choice;
+            while ((choice = input.next()) != null) {
+                byte kind;
+                switch (choice) {
+                    case START:
+                        start = Instant.now();
+                        continue;
+                    case STOP:
+                        await(full, empty, current);
+                        check(failure);
+                        stop = Instant.now();
+                        continue;
+                    case CREATE:
+                        kind = CREATE;
+                        break;
+                    case DELETE:
+                        kind = DELETE;
+                        break;
+                    case LIMIT:
+                        kind = LIMIT;
+                        break;
+                    case PURCHASE:
+                        kind = PURCHASE;
+                        break;
+                    default:
+                        System.out.println("Invalid text commands: " + input.getText());
+                        continue;
+                }
+                int shard = shardOf(input.getAccountNumber());
+                if (current[shard] == null) {
+                    current[shard] = take(empty[shard]);
+                }
+                Batch batch = current[shard];
+                int index = batch.count++;
+                batch.kinds[index] = kind;
+                batch.accountNumbers[index] = input.getAccountNumber();
+                if (kind == CREATE) {
+                    batch.names[index] = input.getName();
+                    batch.addresses[index] = input.getAddress();
+                    batch.amounts[index] = input.getCreditLimit();
+                    batch.balances[index] = input.getBalance();
+                } else if (kind == LIMIT) {
+                    batch.amounts[index] = input.getCreditLimit();
+                } else if (kind == PURCHASE) {
+                    batch.amounts[index] = input.getPrice();
+                }
+                if (batch.count == BATCH_SIZE) {
+                    put(full[shard], batch);
+                    current[shard] = null;
+                    check(failure);
+                }
+            }
+            await(full, empty, current);
+            check(failure);
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                Batch end = new Batch();
+                end.end = true;
+                put(full[i], end);
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return Duration.between(start, stop).toMillis();
+    }
+
+    /**
+     * Hands every partly filled batch to its worker and waits until the workers
+     * have applied everything parsed so far.
+     *
+     * @param full    : queues of batches to apply, one per worker.
+     * @param empty   : queues of batches to refill, one per worker.
+     * @param current : batch being filled for each worker, or null.
+     */
+    private static void await(BlockingQueue<Batch> full[], BlockingQueue<Batch> empty[], Batch current[]) {
+        CountDownLatch barrier = new CountDownLatch(full.length);
+        for (int i = 0; i < full.length; i++) {
+            if (current[i] != null) {
+                put(full[i], current[i]);
+                current[i] = null;
+            }
+            Batch marker = take(empty[i]);
+            marker.barrier = barrier;
+            put(full[i], marker);
+        }
+        boolean interrupted = false;
+        while (barrier.getCount() > 0) {
+            try {
+                barrier.await();
+            } catch (InterruptedException again) {
+                interrupted = true; // keep waiting, the stop time needs every worker caught up
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Throws the first error of a worker, if any.
+     *
+     * @param failure : the first error of a worker, or null.
+     * @throws IllegalStateException : if a worker failed.
+     */
+    private static void check(AtomicReference<Throwable> failure) {
+        Throwable error = failure.get();
+        if (error != null) {
+            throw new IllegalStateException("Replay worker failed", error);
+        }
+    }
+
+    /**
+     * Applies batches to a shard until the end batch arrives, returning every
+     * batch to the empty queue once it is done. After an error the worker records
+     * it and only hands the batches back, so the parsing thread never waits for a
+     * worker that stopped.
+     *
+     * @param structure : the database of the shard.
+     * @param full      : batches to apply.
+     * @param empty     : batches to refill.
+     * @param failure   : where the first error of any worker is kept.
+     */
+    private static void work(CCDatabase structure, BlockingQueue<Batch> full, BlockingQueue<Batch> empty,
+            AtomicReference<Throwable> failure) {
+        boolean failed = false;
+        while (true) {
+            Batch batch = take(full);
+            if (batch.end) {
+                return;
+            }
+            if (!failed) {
+                try {
+                    apply(structure, batch);
+                } catch (RuntimeException | Error error) {
+                    failure.compareAndSet(null, error);
+                    failed = true;
+                }
+            }
+            for (int i = 0; i < batch.count; i++) {
+                batch.names[i] = null;
+                batch.addresses[i] = null;
+            }
+            batch.count = 0;
+            if (batch.barrier != null) {
+                batch.barrier.countDown();
+                batch.barrier = null;
+            }
+            put(empty, batch);
+        }
+    }
+
+    /**
+     * Applies the commands of a batch to a shard.
+     *
+     * @param structure : the database of the shard.
+     * @param batch     : the commands.
+     */
+    private static void apply(CCDatabase structure, Batch batch) {
+        for (int i = 0; i < batch.count; i++) {
+            long accountNumber = batch.accountNumbers[i];
+            switch (batch.kinds[i]) {
+                case CREATE:
+                    structure.createAccount(accountNumber, batch.names[i], batch.addresses[i], batch.amounts[i],
+                            batch.balances[i]);
+                    break;
+                case DELETE:
+                    structure.deleteAccount(accountNumber);
+                    break;
+                case LIMIT:
+                    structure.adjustCreditLimit(accountNumber, batch.amounts[i]);
+                    break;
+                default:
+                    structure.purchase(accountNumber, batch.amounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Combines every account of the given databases into one number that does
+     * not depend on the order of the accounts or how they are split between the
+     * databases, so a sharded replay can be compared with a serial one.
+     *
+     * @param databases : the databases to sum up.
+     * @return long : the checksum of all their accounts.
+     */
+    public static long checksum(CCDatabase... databases) {
+        long sum = 0;
+        for (CCDatabase database : databases) {
+            Iterator<Account> accounts = database.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+            while (accounts.hasNext()) {
+                Account current = accounts.next();
+                long h = current.accountNumber;
+                h = h * 31 + current.name.hashCode();
+                h = h * 31 + current.address.hashCode();
+                h = h * 31 + current.creditLimit;
+                h = h * 31 + current.balance;
+                sum += CCPrimitiveHash.mix(h);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Takes a batch from a queue, waiting for one if needed.
+     *
+     * @param queue : the queue.
+     * @return Batch : the batch.
+     */
+    private static Batch take(BlockingQueue<Batch> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException again) {
+                    interrupted = true; // keep waiting, the replay cannot continue without the batch
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Puts a batch into a queue, waiting for room if needed.
+     *
+     * @param queue : the queue.
+     * @param batch : the batch.
+     */
+    private static void put(BlockingQueue<Batch> queue, Batch batch) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(batch);
+                    return;
+                } catch (InterruptedException again) {
+                    interrupted = true; // keep waiting, the batch would be lost otherwise
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Process holding one shard of the accounts in a local database, reached by a
+ * CCShardRouter over a loopback socket. Every request is a type byte followed
+ * by its fields in binary, amounts in cents, and is answered in the order it
+ * came in, so a client may send many requests before it reads the answers.
+ * The answers are only flushed once no further request is waiting in the
+ * input, so a pipelined batch goes back in a few packets. Each connection has
+ * its own thread, and the requests of all connections take turns on the
+ * database. A request is read in full before it takes its turn and answered
+ * after, so a client that is slow to send or to read only holds up itself.
+ *
+ * Run as "java ShardServer port [hash|sorted|primitive]"; port 0 picks a free
+ * port. The server prints "ShardServer listening on" and the port once it
+ * accepts connections.
+ *
+ * @author Angela Li
+ */
+public class ShardServer {
+    static final byte CREATE = 1; // number, name, address, limit, balance -> boolean
+    static final byte DELETE = 2; // number -> boolean
+    static final byte LIMIT = 3; // number, limit -> boolean
+    static final byte GET = 4; // number -> boolean, then the account if found
+    static final byte PURCHASE = 5; // number, price -> result byte
+    static final byte SCAN = 6; // from, to -> count, then the accounts
+
+    private final CCDatabase structure;
+    private final ServerSocket server;
+
+    /**
+     * Constructor for ShardServer objects. Binds to the loopback address.
+     *
+     * @param structure : the database holding the shard.
+     * @param port      : the port to listen on, or 0 for any free port.
+     * @throws IOException : if the port cannot be bound.
+     */
+    public ShardServer(CCDatabase structure, int port) throws IOException {
+        this.structure = structure;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return integer : the port.
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server socket is closed, each served by its
+     * own thread.
+     */
+    public void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Thread connection = new Thread(() -> handle(socket), "ShardServer connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException closed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of one connection until the client closes it.
+     *
+     * @param socket : the connection.
+     */
+    private void handle(Socket socket) {
+        try (Socket connection = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(connection.getOutputStream(), 1 << 16))) {
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException closed) {
+                    return;
+                }
+                answer(type, in, out);
+                if (in.available() == 0) {
+                    out.flush(); // nothing more is waiting, so the client is waiting for these answers
+                }
+            }
+        } catch (IOException lost) {
+            return; // the client went away; its requests are done or never arrived
+        }
+    }
+
+    /**
+     * Reads the fields of one request, applies it to the database and writes the
+     * answer. Only the call to the database holds the lock on it; a scan copies
+     * the accounts of its range under the lock and writes them after.
+     *
+     * @param type : the type byte of the request.
+     * @param in   : the connection input, positioned after the type byte.
+     * @param out  : the connection output.
+     * @throws IOException : if the connection fails or the type is unknown.
+     */
+    private void answer(byte type, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (type) {
+            case CREATE: {
+                long accountNumber = in.readLong();
+                String name = readText(in);
+                String address = readText(in);
+                double creditLimit = Money.toDollars(in.readLong());
+                double balance = Money.toDollars(in.readLong());
+                boolean created;
+                synchronized (structure) {
+                    created = structure.createAccount(accountNumber, name, address, creditLimit, balance);
+                }
+                out.writeBoolean(created);
+                break;
+            }
+            case DELETE: {
+                long accountNumber = in.readLong();
+                boolean deleted;
+                synchronized (structure) {
+                    deleted = structure.deleteAccount(accountNumber);
+                }
+                out.writeBoolean(deleted);
+                break;
+            }
+            case LIMIT: {
+                long accountNumber = in.readLong();
+                double newLimit = Money.toDollars(in.readLong());
+                boolean adjusted;
+                synchronized (structure) {
+                    adjusted = structure.adjustCreditLimit(accountNumber, newLimit);
+                }
+                out.writeBoolean(adjusted);
+                break;
+            }
+            case GET: {
+                long accountNumber = in.readLong();
+                AccountRecord record;
+                synchronized (structure) {
+                    record = structure.getAccountRecord(accountNumber);
+                }
+                out.writeBoolean(record != null);
+                if (record != null) {
+                    writeAccount(out, record.getAccountNumber(), record.getName(), record.getAddress(),
+                            record.getCreditLimitCents(), record.getBalanceCents());
+                }
+                break;
+            }
+            case PURCHASE: {
+                long accountNumber = in.readLong();
+                double price = Money.toDollars(in.readLong());
+                int result;
+                synchronized (structure) {
+                    result = structure.purchase(accountNumber, price);
+                }
+                out.writeByte(result);
+                break;
+            }
+            case SCAN: {
+                long fromAccount = in.readLong();
+                long toAccount = in.readLong();
+                ArrayList<AccountRecord> range = new ArrayList<>();
+                synchronized (structure) {
+                    Iterator<Account> accounts = structure.scan(fromAccount, toAccount);
+                    while (accounts.hasNext()) {
+                        Account current = accounts.next(); // may be the live account, so it is copied here
+                        range.add(new AccountRecord(current.accountNumber, current.name, current.address,
+                                current.creditLimit, current.balance));
+                    }
+                }
+                out.writeInt(range.size());
+                for (AccountRecord record : range) {
+                    writeAccount(out, record.getAccountNumber(), record.getName(), record.getAddress(),
+                            record.getCreditLimitCents(), record.getBalanceCents());
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown request type " + type);
+        }
+    }
+
+    /**
+     * Writes the fields of an account.
+     *
+     * @param out           : the stream to write to.
+     * @param accountNumber : unique number associated with the account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the account in cents.
+     * @param balance       : current balance of the account in cents.
+     * @throws IOException : if the stream fails.
+     */
+    static void writeAccount(DataOutputStream out, long accountNumber, String name, String address, long creditLimit,
+            long balance) throws IOException {
+        out.writeLong(accountNumber);
+        writeText(out, name);
+        writeText(out, address);
+        out.writeLong(creditLimit);
+        out.writeLong(balance);
+    }
+
+    /**
+     * Reads the fields of an account written by writeAccount.
+     *
+     * @param in : the stream to read from.
+     * @return AccountRecord : the account.
+     * @throws IOException : if the stream fails.
+     */
+    static AccountRecord readAccount(DataInputStream in) throws IOException {
+        long accountNumber = in.readLong();
+        String name = readText(in);
+        String address = readText(in);
+        long creditLimit = in.readLong();
+        long balance = in.readLong();
+        return new AccountRecord(accountNumber, name, address, creditLimit, balance);
+    }
+
+    /**
+     * Writes a text as its length in bytes and its UTF-8 bytes, or -1 for null.
+     *
+     * @param out  : the stream to write to.
+     * @param text : the text, or null.
+     * @throws IOException : if the stream fails.
+     */
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte bytes[] = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a text written by writeText.
+     *
+     * @param in : the stream to read from.
+     * @return String : the text, or null.
+     * @throws IOException : if the stream fails.
+     */
+    static String readText(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte bytes[] = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts a shard server and serves until the process is stopped.
+     *
+     * @param args : the port, 0 for any free one, and optionally the structure:
+     *             hash (the default), sorted or primitive.
+     * @throws IOException : if the port cannot be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        String kind = args.length > 1 ? args[1] : "hash";
+        CCDatabase structure;
+        if (kind.equals("sorted")) {
+            structure = new CCSorted();
+        } else if (kind.equals("primitive")) {
+            structure = new CCPrimitiveHash();
+        } else {
+            structure = new CCHash();
+        }
+        ShardServer shard = new ShardServer(structure, port);
+        System.out.println("ShardServer listening on " + shard.getPort());
+        System.out.flush();
+        shard.serve();
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Saves every account of a database to a snapshot file and loads it back. The
+ * file is stored by column, in increasing order of account number: after a
+ * short header come all account numbers, then all credit limits, all balances,
+ * the lengths of the names and addresses, and finally the text of the names and
+ * addresses. Loading maps the file into memory and reads each column with one
+ * bulk copy; a CCSorted takes the accounts as they are and a CCHash places them
+ * straight into a table of the right size.
+ *
+ * @author Angela Li
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x4343534E; // "CCSN"
+    private static final int VERSION = 2; // amounts in cents
+    private static final int HEADER_SIZE = 24; // magic, version, count, log generation and log position
+
+    /**
+     * Writes every account of a database to a snapshot file. The file is written
+     * under a temporary name and forced to disk before it replaces the old
+     * snapshot, so a crash leaves either the old or the new snapshot.
+     *
+     * @param structure     : the database to save.
+     * @param fileName      : path of the snapshot file.
+     * @param logGeneration : number of the write-ahead log file to replay after
+     *                      the snapshot, or 0 without a log.
+     * @param logPosition   : position in that log file to replay from.
+     * @return integer : the number of accounts saved.
+     * @throws IOException : if the file cannot be written.
+     */
+    public static int write(CCDatabase structure, String fileName, int logGeneration, long logPosition)
+            throws IOException {
+        int count = 0;
+        long accountNumbers[] = new long[1024];
+        long creditLimits[] = new long[1024];
+        long balances[] = new long[1024];
+        byte names[][] = new byte[1024][];
+        byte addresses[][] = new byte[1024][];
+        long textSize = 0;
+        Iterator<Account> accounts = structure.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+        while (accounts.hasNext()) {
+            Account current = accounts.next();
+            if (count == accountNumbers.length) {
+                int length = count * 2;
+                accountNumbers = Arrays.copyOf(accountNumbers, length);
+                creditLimits = Arrays.copyOf(creditLimits, length);
+                balances = Arrays.copyOf(balances, length);
+                names = Arrays.copyOf(names, length);
+                addresses = Arrays.copyOf(addresses, length);
+            }
+            accountNumbers[count] = current.accountNumber;
+            creditLimits[count] = current.creditLimit;
+            balances[count] = current.balance;
+            names[count] = current.name.getBytes(StandardCharsets.UTF_8);
+            addresses[count] = current.address.getBytes(StandardCharsets.UTF_8);
+            textSize += names[count].length + addresses[count].length;
+            count++;
+        }
+
+        long size = HEADER_SIZE + (long) count * (8 + 8 + 8 + 4 + 4) + textSize;
+        Path target = Paths.get(fileName);
+        Path temporary = Paths.get(fileName + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer output = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            output.putInt(MAGIC);
+            output.putInt(VERSION);
+            output.putInt(count);
+            output.putInt(logGeneration);
+            output.putLong(logPosition);
+            output.asLongBuffer().put(accountNumbers, 0, count);
+            output.position(output.position() + count * 8);
+            output.asLongBuffer().put(creditLimits, 0, count);
+            output.position(output.position() + count * 8);
+            output.asLongBuffer().put(balances, 0, count);
+            output.position(output.position() + count * 8);
+            for (int i = 0; i < count; i++) {
+                output.putInt(names[i].length);
+            }
+            for (int i = 0; i < count; i++) {
+                output.putInt(addresses[i].length);
+            }
+            for (int i = 0; i < count; i++) {
+                output.put(names[i]);
+            }
+            for (int i = 0; i < count; i++) {
+                output.put(addresses[i]);
+            }
+            output.force();
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Replaces the accounts of a database with the accounts of a snapshot file. A
+     * CCSorted or CCHash is loaded in bulk; any other database gets the accounts
+     * through createAccounts.
+     *
+     * @param fileName  : path of the snapshot file.
+     * @param structure : the database to load into, empty unless it is a CCSorted
+     *                  or CCHash.
+     * @return long : the position in its log file to replay from.
+     * @throws IOException : if the file cannot be read or is not a snapshot.
+     */
+    public static long restore(String fileName, CCDatabase structure) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (input.remaining() < HEADER_SIZE || input.getInt() != MAGIC || input.getInt() != VERSION) {
+                throw new IOException(fileName + " is not a snapshot file");
+            }
+            int count = input.getInt();
+            input.getInt(); // log generation, see readLogGeneration
+            long logPosition = input.getLong();
+            if (count < 0 || input.remaining() < (long) count * (8 + 8 + 8 + 4 + 4)) {
+                throw new IOException("Snapshot file " + fileName + " is cut short");
+            }
+            long accountNumbers[] = new long[count];
+            long creditLimits[] = new long[count];
+            long balances[] = new long[count];
+            int nameLengths[] = new int[count];
+            int addressLengths[] = new int[count];
+            input.asLongBuffer().get(accountNumbers);
+            input.position(input.position() + count * 8);
+            input.asLongBuffer().get(creditLimits);
+            input.position(input.position() + count * 8);
+            input.asLongBuffer().get(balances);
+            input.position(input.position() + count * 8);
+            input.asIntBuffer().get(nameLengths);
+            input.position(input.position() + count * 4);
+            input.asIntBuffer().get(addressLengths);
+            input.position(input.position() + count * 4);
+            String names[] = readText(input, nameLengths, fileName);
+            String addresses[] = readText(input, addressLengths, fileName);
+
+            if (structure instanceof CCSorted) {
+                ((CCSorted) structure).load(accountNumbers, names, addresses, creditLimits, balances);
+            } else if (structure instanceof CCHash) {
+                ((CCHash) structure).load(accountNumbers, names, addresses, creditLimits, balances);
+            } else {
+                double limits[] = new double[count];
+                double amounts[] = new double[count];
+                for (int i = 0; i < count; i++) {
+                    limits[i] = Money.toDollars(creditLimits[i]);
+                    amounts[i] = Money.toDollars(balances[i]);
+                }
+                structure.createAccounts(accountNumbers, names, addresses, limits, amounts);
+            }
+            return logPosition;
+        }
+    }
+
+    /**
+     * Reads which write-ahead log file has to be replayed after a snapshot.
+     * Snapshots written before logs were rotated hold 0, the first log file.
+     *
+     * @param fileName : path of the snapshot file.
+     * @return integer : the number of the log file.
+     * @throws IOException : if the file cannot be read or is not a snapshot.
+     */
+    public static int readLogGeneration(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), HEADER_SIZE));
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(fileName + " is not a snapshot file");
+            }
+            header.getInt();
+            return header.getInt();
+        }
+    }
+
+    /**
+     * Decodes a column of names or addresses.
+     *
+     * @param input    : the snapshot, positioned at the text of the column.
+     * @param lengths  : length in bytes of each text.
+     * @param fileName : path of the snapshot file, for the error message.
+     * @return String[] : the texts.
+     * @throws IOException : if the column runs past the end of the file.
+     */
+    private static String[] readText(ByteBuffer input, int lengths[], String fileName) throws IOException {
+        long total = 0;
+        for (int length : lengths) {
+            if (length < 0) {
+                throw new IOException(fileName + " is not a snapshot file");
+            }
+            total += length;
+        }
+        if (total > input.remaining()) {
+            throw new IOException("Snapshot file " + fileName + " is cut short");
+        }
+        byte bytes[] = new byte[(int) total];
+        input.get(bytes);
+        String texts[] = new String[lengths.length];
+        int offset = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            texts[i] = new String(bytes, offset, lengths[i], StandardCharsets.UTF_8);
+            offset += lengths[i];
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+/**
+ * Iterator over the accounts of a list of account numbers in increasing order,
+ * used by the hash table structures to answer a range scan. Only the account
+ * numbers in the range are copied up front, each account is looked up when the
+ * iterator reaches it, and accounts deleted in between are skipped.
+ *
+ * @author Angela Li
+ */
+class SortedKeyIterator implements Iterator<Account> {
+    private final long accountNumbers[];
+    private final LongFunction<Account> lookup;
+    private int position; // next account number to look up
+    private Account nextAccount; // account found ahead by hasNext, or null
+
+    /**
+     * Constructor for SortedKeyIterator objects.
+     *
+     * @param accountNumbers : account numbers of the range, sorted in place here.
+     * @param lookup         : returns the account of an account number, or null
+     *                       if it no longer exists.
+     */
+    SortedKeyIterator(long accountNumbers[], LongFunction<Account> lookup) {
+        this.accountNumbers = accountNumbers;
+        this.lookup = lookup;
+        this.position = 0;
+        this.nextAccount = null;
+        Arrays.sort(accountNumbers);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextAccount == null && position < accountNumbers.length) {
+            nextAccount = lookup.apply(accountNumbers[position++]);
+        }
+        return nextAccount != null;
+    }
+
+    @Override
+    public Account next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Account current = nextAccount;
+        nextAccount = null;
+        return current;
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compact store for the names and addresses of accounts. Each text is split at
+ * its spaces into words, every distinct word is kept once in a dictionary, and
+ * the text is saved as its number of words followed by a code for each word,
+ * written with one byte for every 7 bits into a single byte array. Names and
+ * addresses repeat the same first names, last names and street words over and
+ * over, so a text usually takes a handful of bytes instead of a String and its
+ * array. House and street numbers hardly repeat, so a word of up to 9 digits
+ * without a leading zero is saved as its value instead of going into the
+ * dictionary. A text is only turned back into a String when it is asked for.
+ *
+ * The dictionary never forgets a word, so it grows with the number of distinct
+ * words rather than the number of accounts. The texts of removed accounts stay
+ * in the byte array until the owner compacts it.
+ *
+ * @author Angela Li
+ */
+public class StringArena {
+    public static final int NONE = -1; // reference of a missing text
+    private static final int INITIAL_SIZE = 1 << 12; // bytes of the byte array
+
+    private final HashMap<String, Integer> ids; // number of each known word
+    private String words[]; // each known word by its number
+    private int wordCount;
+    private byte codes[]; // the encoded texts, one after the other
+    private int end; // end of the used part of codes
+    private int unused; // bytes of removed texts
+
+    /**
+     * Constructor for StringArena objects.
+     */
+    public StringArena() {
+        this.ids = new HashMap<>();
+        this.words = new String[256];
+        this.wordCount = 0;
+        this.codes = new byte[INITIAL_SIZE];
+        this.end = 0;
+        this.unused = 0;
+    }
+
+    /**
+     * Saves a text.
+     *
+     * @param text : the text, or null.
+     * @return integer : the reference of the text, or NONE for null.
+     */
+    public int add(String text) {
+        if (text == null) {
+            return NONE;
+        }
+        int reference = end;
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == ' ') {
+                count++;
+            }
+        }
+        write(count);
+        int start = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || text.charAt(i) == ' ') {
+                write(wordCode(text, start, i));
+                start = i + 1;
+            }
+        }
+        return reference;
+    }
+
+    /**
+     * Rebuilds a saved text. A reference or word count that cannot be right is
+     * refused before anything is built, since a reader that does not hold the
+     * owner's lock may pass a reference torn by a concurrent change.
+     *
+     * @param reference : the reference returned by add.
+     * @return String : the text, or null for NONE.
+     * @throws IllegalArgumentException : if no text can start at the reference.
+     */
+    public String get(int reference) {
+        if (reference == NONE) {
+            return null;
+        }
+        if (reference < 0 || reference >= end) {
+            throw new IllegalArgumentException("No text at " + reference);
+        }
+        int position[] = { reference };
+        int count = read(position);
+        if (count < 0 || count > end - position[0]) { // every word takes at least one byte
+            throw new IllegalArgumentException("No text at " + reference);
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            int code = read(position);
+            if ((code & 1) == 1) {
+                text.append(code >>> 1);
+            } else {
+                text.append(words[code >>> 1]);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Marks a saved text as no longer used. Its bytes are reclaimed by compact.
+     *
+     * @param reference : the reference returned by add, or NONE.
+     */
+    public void remove(int reference) {
+        if (reference != NONE) {
+            unused += length(reference);
+        }
+    }
+
+    /**
+     * Checks if more than half of the byte array holds removed texts, so it is
+     * time to call compact.
+     *
+     * @return boolean : true, if compacting would free most of the byte array.
+     */
+    public boolean isWasteful() {
+        return unused > end / 2 && end > INITIAL_SIZE;
+    }
+
+    /**
+     * Copies every text still in use into a new byte array without the removed
+     * texts, and updates the references to them.
+     *
+     * @param references : arrays holding every reference still in use, with NONE
+     *                   in the unused entries; they are changed in place.
+     */
+    public void compact(int[]... references) {
+        byte compact[] = new byte[Math.max(INITIAL_SIZE, end - unused)];
+        int compactEnd = 0;
+        for (int array[] : references) {
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] != NONE) {
+                    int length = length(array[i]);
+                    System.arraycopy(codes, array[i], compact, compactEnd, length);
+                    array[i] = compactEnd;
+                    compactEnd += length;
+                }
+            }
+        }
+        codes = compact;
+        end = compactEnd;
+        unused = 0;
+    }
+
+    /**
+     * Returns the number of distinct words in the dictionary.
+     *
+     * @return integer : the number of words.
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Returns the bytes taken by the encoded texts, removed texts included.
+     *
+     * @return integer : the used part of the byte array.
+     */
+    public int getSize() {
+        return end;
+    }
+
+    /**
+     * Returns the code of a word: a number is saved as its value times two plus
+     * one, any other word as its number in the dictionary times two, after adding
+     * it to the dictionary if it is new.
+     *
+     * @param text  : the text holding the word.
+     * @param start : index of the first character of the word.
+     * @param end   : index after the last character of the word.
+     * @return integer : the code of the word.
+     */
+    private int wordCode(String text, int start, int end) {
+        int length = end - start;
+        if (length > 0 && length <= 9 && (text.charAt(start) != '0' || length == 1)) {
+            int value = 0;
+            int i = start;
+            while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                value = value * 10 + (text.charAt(i) - '0');
+                i++;
+            }
+            if (i == end) {
+                return value << 1 | 1;
+            }
+        }
+        String word = text.substring(start, end);
+        Integer id = ids.get(word);
+        if (id != null) {
+            return id << 1;
+        }
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, wordCount * 2);
+        }
+        words[wordCount] = word;
+        ids.put(word, wordCount);
+        return wordCount++ << 1;
+    }
+
+    /**
+     * Appends a number to the byte array, 7 bits per byte with the high bit set on
+     * every byte but the last.
+     *
+     * @param value : the number, not negative.
+     */
+    private void write(int value) {
+        if (end + 5 > codes.length) {
+            codes = Arrays.copyOf(codes, codes.length * 2);
+        }
+        while (value >= 0x80) {
+            codes[end++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        codes[end++] = (byte) value;
+    }
+
+    /**
+     * Reads a number written by write.
+     *
+     * @param position : one element holding the offset of the number, moved past
+     *                 it.
+     * @return integer : the number.
+     */
+    private int read(int position[]) {
+        int offset = position[0];
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = codes[offset++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while (current < 0);
+        position[0] = offset;
+        return value;
+    }
+
+    /**
+     * Returns the length in bytes of a saved text.
+     *
+     * @param reference : the reference returned by add.
+     * @return integer : the bytes of the text.
+     */
+    private int length(int reference) {
+        int position[] = { reference };
+        int count = read(position);
+        for (int i = 0; i < count; i++) {
+            read(position);
+        }
+        return position[0] - reference;
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index from a text, such as the name or address of an account, to the account
+ * numbers that have it. The distinct texts are kept in sorted order, each with
+ * a posting list of its account numbers, so both an exact text and every text
+ * that starts with a prefix are found without looking at the other accounts.
+ *
+ * Adding or removing an account costs one search of the sorted texts, which
+ * grows with the logarithm of the number of distinct texts, plus a pass over
+ * the posting list of its text, which only grows with the number of accounts
+ * sharing that exact text. A posting list is kept unordered so adding is a
+ * single store, and removing fills the gap with the last account number.
+ *
+ * @author Angela Li
+ */
+public class TextIndex {
+    private final TreeMap<String, Postings> texts;
+    private int longest; // accounts in the longest posting list so far
+
+    /**
+     * Account numbers sharing one text.
+     */
+    private static class Postings {
+        long accountNumbers[] = new long[2];
+        int count;
+    }
+
+    /**
+     * Constructor for TextIndex objects.
+     */
+    public TextIndex() {
+        this.texts = new TreeMap<>();
+        this.longest = 0;
+    }
+
+    /**
+     * Adds an account to the posting list of its text.
+     *
+     * @param text          : the text of the account, or null to skip it.
+     * @param accountNumber : number of the account.
+     */
+    public void add(String text, long accountNumber) {
+        if (text == null) {
+            return;
+        }
+        Postings postings = texts.get(text);
+        if (postings == null) {
+            postings = new Postings();
+            texts.put(text, postings);
+        }
+        if (postings.count == postings.accountNumbers.length) {
+            postings.accountNumbers = Arrays.copyOf(postings.accountNumbers, postings.count * 2);
+        }
+        postings.accountNumbers[postings.count++] = accountNumber;
+        longest = Math.max(longest, postings.count);
+    }
+
+    /**
+     * Removes an account from the posting list of its text, and the text itself
+     * once no account has it.
+     *
+     * @param text          : the text the account was added with, or null.
+     * @param accountNumber : number of the account.
+     * @return boolean : true, if the account was in the index.
+     */
+    public boolean remove(String text, long accountNumber) {
+        if (text == null) {
+            return false;
+        }
+        Postings postings = texts.get(text);
+        if (postings == null) {
+            return false;
+        }
+        for (int i = 0; i < postings.count; i++) {
+            if (postings.accountNumbers[i] == accountNumber) {
+                postings.accountNumbers[i] = postings.accountNumbers[--postings.count];
+                if (postings.count == 0) {
+                    texts.remove(text);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the accounts whose text is exactly the given text.
+     *
+     * @param text : the text to look for.
+     * @return long[] : the account numbers in increasing order, empty if none.
+     */
+    public long[] find(String text) {
+        Postings postings = text == null ? null : texts.get(text);
+        if (postings == null) {
+            return new long[0];
+        }
+        long found[] = Arrays.copyOf(postings.accountNumbers, postings.count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Returns the accounts whose text starts with the given prefix, in order of
+     * their text and then of their account number. Only the texts that match are
+     * visited, and the search stops once enough accounts are found.
+     *
+     * @param prefix : the start of the texts to look for; empty matches all.
+     * @param limit  : the most account numbers to return.
+     * @return long[] : the account numbers, empty if none or if limit is not positive.
+     */
+    public long[] findPrefix(String prefix, int limit) {
+        if (limit <= 0) {
+            return new long[0];
+        }
+        long found[] = new long[Math.min(limit, 16)];
+        int count = 0;
+        for (Map.Entry<String, Postings> entry : texts.tailMap(prefix, true).entrySet()) {
+            if (count >= limit || !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            Postings postings = entry.getValue();
+            int take = Math.min(postings.count, limit - count);
+            if (count + take > found.length) {
+                found = Arrays.copyOf(found, Math.min(limit, Math.max(found.length * 2, count + take)));
+            }
+            if (take == postings.count) {
+                System.arraycopy(postings.accountNumbers, 0, found, count, take);
+                Arrays.sort(found, count, count + take);
+            } else {
+                long sorted[] = Arrays.copyOf(postings.accountNumbers, postings.count);
+                Arrays.sort(sorted);
+                System.arraycopy(sorted, 0, found, count, take);
+            }
+            count += take;
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Returns the number of distinct texts in the index.
+     *
+     * @return integer : the number of texts.
+     */
+    public int getTextCount() {
+        return texts.size();
+    }
+
+    /**
+     * Returns the most accounts that ever shared one text, which bounds the pass
+     * over a posting list when an account is added or removed.
+     *
+     * @return integer : the length of the longest posting list so far.
+     */
+    public int getLongestPostings() {
+        return longest;
+    }
+}
@@ -0,0 +1,575 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only binary log of the changes made to a database. Every record holds
+ * its length, a CRC32C checksum, a type byte, the account number and the new
+ * values, so a record cut short by a crash is recognised and dropped when the
+ * log is opened again. Records are gathered in a buffer and written through a
+ * FileChannel; how often the file is forced to disk depends on the durability
+ * mode.
+ *
+ * @author Angela Li
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int HEADER_SIZE = 8; // length and checksum
+    private static final int ASYNC_INTERVAL = 10; // milliseconds between forces in ASYNC mode
+
+    private static final byte CREATE = 1;
+    private static final byte DELETE = 2;
+    private static final byte LIMIT = 3;
+    private static final byte PURCHASE = 4;
+
+    /**
+     * When a change counts as saved.
+     */
+    public enum Durability {
+        /** Every record is forced to disk before its call returns. */
+        SYNC,
+        /**
+         * Every call waits until its record is forced to disk, but the records of
+         * all calls made during one force share the next one.
+         */
+        GROUP,
+        /** Records are forced every few milliseconds; calls do not wait. */
+        ASYNC,
+        /**
+         * Records are written to the file before the call returns, so they survive
+         * the process, but only forced to disk on close.
+         */
+        NONE
+    }
+
+    private final FileChannel channel;
+    private final Durability durability;
+    private final Thread flusher; // forces the GROUP and ASYNC records, null otherwise
+    private ByteBuffer pending; // records not written yet, guarded by this
+    private ByteBuffer writing; // records being written by the flusher
+    private final CRC32C checksum;
+    private int recordStart; // start in pending of the record being appended
+    private long appended; // end of the last appended record in the file
+    private long durable; // end of the records that count as saved
+    private long forced; // end of the records forced to disk
+    private long records; // records appended since the log was opened
+    private long syncs; // number of forces since the log was opened
+    private boolean closed;
+    private IOException failure; // error of the flusher, reported to every later call
+
+    /**
+     * Constructor for WriteAheadLog objects. Opens or creates the log file, replays
+     * the records already in it into the given database, and cuts off a record
+     * left incomplete by a crash so new records follow the last good one.
+     *
+     * @param fileName   : path of the log file.
+     * @param durability : when a change counts as saved.
+     * @param structure  : the database to recover into, usually empty.
+     * @throws IOException : if the file cannot be opened or read.
+     */
+    public WriteAheadLog(String fileName, Durability durability, CCDatabase structure) throws IOException {
+        this(fileName, durability, structure, 0);
+    }
+
+    /**
+     * Constructor for WriteAheadLog objects that recovers on top of a snapshot.
+     * Reading starts at the given position, as the snapshot already holds the
+     * changes before it.
+     *
+     * @param fileName     : path of the log file.
+     * @param durability   : when a change counts as saved.
+     * @param structure    : the database to recover into, holding the snapshot.
+     * @param fromPosition : position of the log the snapshot was taken at.
+     * @throws IOException : if the file cannot be opened or read, or is shorter
+     *                     than the snapshot expects.
+     */
+    public WriteAheadLog(String fileName, Durability durability, CCDatabase structure, long fromPosition)
+            throws IOException {
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.durability = durability;
+        this.pending = ByteBuffer.allocate(BUFFER_SIZE);
+        this.writing = ByteBuffer.allocate(BUFFER_SIZE);
+        this.checksum = new CRC32C();
+        long end = replay(channel, structure, fromPosition);
+        if (end < fromPosition) {
+            channel.close();
+            throw new IOException("Write-ahead log " + fileName + " ends before the snapshot position");
+        }
+        channel.truncate(end);
+        channel.position(end);
+        this.appended = end;
+        this.durable = end;
+        this.forced = end;
+        this.records = 0;
+        this.syncs = 0;
+        this.closed = false;
+        if (durability == Durability.GROUP || durability == Durability.ASYNC) {
+            this.flusher = new Thread(this::flush, "wal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Applies every complete record of a log file to a database without opening
+     * the log for appending.
+     *
+     * @param fileName  : path of the log file.
+     * @param structure : the database to apply the records to.
+     * @return long : the length of the complete records in bytes.
+     * @throws IOException : if the file cannot be read.
+     */
+    public static long replay(String fileName, CCDatabase structure) throws IOException {
+        try (FileChannel input = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            return replay(input, structure, 0);
+        }
+    }
+
+    /**
+     * Appends the creation of an account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param name          : name of the account owner.
+     * @param address       : address of the account owner.
+     * @param creditLimit   : purchasing limit of the acccount owners credit card.
+     * @param balance       : current balance on account owner's credit card.
+     * @return long : the position to pass to commit.
+     * @throws IOException : if the log cannot be written.
+     */
+    public long appendCreate(long accountNumber, String name, String address, double creditLimit, double balance)
+            throws IOException {
+        byte nameBytes[] = text(name);
+        byte addressBytes[] = text(address);
+        synchronized (this) {
+            ByteBuffer record = begin(CREATE, accountNumber, 16 + 4 + nameBytes.length + addressBytes.length);
+            record.putDouble(creditLimit);
+            record.putDouble(balance);
+            record.putShort((short) nameBytes.length);
+            record.put(nameBytes);
+            record.putShort((short) addressBytes.length);
+            record.put(addressBytes);
+            return end();
+        }
+    }
+
+    /**
+     * Appends the deletion of an account.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @return long : the position to pass to commit.
+     * @throws IOException : if the log cannot be written.
+     */
+    public synchronized long appendDelete(long accountNumber) throws IOException {
+        begin(DELETE, accountNumber, 0);
+        return end();
+    }
+
+    /**
+     * Appends a new credit limit.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param newLimit      : the new credit limit of the account.
+     * @return long : the position to pass to commit.
+     * @throws IOException : if the log cannot be written.
+     */
+    public synchronized long appendLimit(long accountNumber, double newLimit) throws IOException {
+        begin(LIMIT, accountNumber, 8).putDouble(newLimit);
+        return end();
+    }
+
+    /**
+     * Appends an approved purchase.
+     *
+     * @param accountNumber : unique number associated with the current account.
+     * @param price         : price of the purchase.
+     * @return long : the position to pass to commit.
+     * @throws IOException : if the log cannot be written.
+     */
+    public synchronized long appendPurchase(long accountNumber, double price) throws IOException {
+        begin(PURCHASE, accountNumber, 8).putDouble(price);
+        return end();
+    }
+
+    /**
+     * Waits until the records up to the given position count as saved. Only GROUP
+     * mode has to wait; the other modes are done when the record is appended.
+     *
+     * @param position : position returned by an append.
+     * @throws IOException : if the log could not be written.
+     */
+    public synchronized void commit(long position) throws IOException {
+        if (durability != Durability.GROUP) {
+            check();
+            return;
+        }
+        while (durable < position) {
+            check();
+            waitForFlusher();
+        }
+        check();
+    }
+
+    /**
+     * Writes every appended record and forces it to disk, whatever the durability
+     * mode. A snapshot may only name a position the log on disk reaches, so a
+     * checkpoint calls this first.
+     *
+     * @throws IOException : if the log could not be written.
+     */
+    public synchronized void force() throws IOException {
+        check();
+        if (flusher != null) {
+            long position = appended;
+            while (durable < position) {
+                notifyAll();
+                waitForFlusher();
+                check();
+            }
+            return;
+        }
+        writeOut(pending);
+        channel.force(false);
+        syncs++;
+        durable = appended;
+        forced = appended;
+    }
+
+    /**
+     * Returns the end of the last appended record, the position a snapshot taken
+     * now has to be replayed from.
+     *
+     * @return long : the position in bytes.
+     */
+    public synchronized long getPosition() {
+        return appended;
+    }
+
+    /**
+     * Returns the end of the records forced to disk, the part of the log a crash
+     * of the machine cannot take back. In NONE mode this stays behind the records
+     * written to the file until close or force.
+     *
+     * @return long : the position in bytes.
+     */
+    public synchronized long getForcedPosition() {
+        return forced;
+    }
+
+    /**
+     * Returns the number of records appended since the log was opened.
+     *
+     * @return long : the number of records.
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Returns the number of times the file was forced to disk since the log was
+     * opened. With group commit this is lower than the number of records.
+     *
+     * @return long : the number of forces.
+     */
+    public synchronized long getSyncCount() {
+        return syncs;
+    }
+
+    /**
+     * Writes and forces every appended record and closes the file.
+     *
+     * @throws IOException : if the log cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            try {
+                check();
+                writeOut(pending);
+                channel.force(false);
+                syncs++;
+                forced = appended;
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Starts a record in the pending buffer, making room for it first.
+     *
+     * @param type          : kind of record.
+     * @param accountNumber : unique number associated with the current account.
+     * @param payload       : bytes that follow the account number.
+     * @return ByteBuffer : the pending buffer, positioned after the account number.
+     * @throws IOException : if the log cannot be written.
+     */
+    private ByteBuffer begin(byte type, long accountNumber, int payload) throws IOException {
+        check();
+        if (closed) {
+            throw new IOException("Write-ahead log is closed");
+        }
+        int bodyLength = 1 + 8 + payload;
+        while (pending.remaining() < HEADER_SIZE + bodyLength) {
+            if (flusher == null) {
+                writeOut(pending);
+            } else {
+                notifyAll();
+                waitForFlusher();
+                check();
+            }
+        }
+        recordStart = pending.position();
+        pending.putInt(bodyLength);
+        pending.putInt(0); // checksum, filled in by end
+        pending.put(type);
+        pending.putLong(accountNumber);
+        return pending;
+    }
+
+    /**
+     * Finishes the record started by begin: fills in its checksum and writes or
+     * hands it on as the durability mode asks.
+     *
+     * @return long : the end of the record in the file.
+     * @throws IOException : if the log cannot be written.
+     */
+    private long end() throws IOException {
+        int recordEnd = pending.position();
+        checksum.reset();
+        checksum.update(pending.array(), recordStart + HEADER_SIZE, recordEnd - recordStart - HEADER_SIZE);
+        pending.putInt(recordStart + 4, (int) checksum.getValue());
+        appended += recordEnd - recordStart;
+        records++;
+        if (durability == Durability.SYNC) {
+            writeOut(pending);
+            channel.force(false);
+            syncs++;
+            durable = appended;
+            forced = appended;
+        } else if (durability == Durability.NONE) {
+            writeOut(pending);
+            durable = appended;
+        } else {
+            notifyAll(); // wakes the flusher of GROUP and ASYNC, which waits while nothing is pending
+        }
+        return appended;
+    }
+
+    /**
+     * Writes and forces the pending records in the background until the log is
+     * closed. While the file is being forced new records gather in the other
+     * buffer and all go out with the next force.
+     */
+    private void flush() {
+        while (true) {
+            long end;
+            synchronized (this) {
+                while (pending.position() == 0 && !closed) {
+                    waitForFlusher();
+                }
+                if (pending.position() == 0) {
+                    return; // closed and everything is written
+                }
+            }
+            if (durability == Durability.ASYNC) {
+                try {
+                    Thread.sleep(ASYNC_INTERVAL);
+                } catch (InterruptedException interrupted) {
+                    // flush now
+                }
+            }
+            synchronized (this) {
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                end = appended;
+                notifyAll(); // there is room for new records again
+            }
+            try {
+                writeOut(writing);
+                channel.force(false);
+            } catch (IOException error) {
+                synchronized (this) {
+                    failure = error;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durable = end;
+                forced = end;
+                syncs++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes the records of a buffer to the end of the file and empties it.
+     *
+     * @param buffer : records to write.
+     * @throws IOException : if the file cannot be written.
+     */
+    private void writeOut(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Waits for the flusher to make progress.
+     */
+    private void waitForFlusher() {
+        try {
+            wait();
+        } catch (InterruptedException interrupted) {
+            // keep waiting, the record has to be saved first
+        }
+    }
+
+    /**
+     * Throws the error the flusher ran into, if any.
+     *
+     * @throws IOException : the error of the flusher.
+     */
+    private void check() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log could not be written", failure);
+        }
+    }
+
+    /**
+     * Encodes a name or address for a record.
+     *
+     * @param value : the text.
+     * @return byte[] : the text in UTF-8.
+     */
+    private static byte[] text(String value) {
+        byte bytes[] = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Text is too long for the write-ahead log");
+        }
+        return bytes;
+    }
+
+    /**
+     * Applies the complete records of a log file to a database, starting at the
+     * given position. The records before it are not read at all; the position was
+     * the end of a record when the snapshot was taken. Reading stops at the first
+     * record that is cut short or does not match its checksum.
+     *
+     * @param input        : the log file.
+     * @param structure    : the database to apply the records to.
+     * @param fromPosition : position of the first record to apply.
+     * @return long : the end of the last complete record, or the length of the
+     *         file if it ends before the given position.
+     * @throws IOException : if the file cannot be read.
+     */
+    private static long replay(FileChannel input, CCDatabase structure, long fromPosition) throws IOException {
+        if (input.size() < fromPosition) {
+            return input.size();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32C check = new CRC32C();
+        long position = fromPosition;
+        long end = fromPosition;
+        input.position(fromPosition);
+        while (true) {
+            int read = input.read(buffer);
+            buffer.flip();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int bodyLength = buffer.getInt(start);
+                int expected = buffer.getInt(start + 4);
+                if (bodyLength < 9 || bodyLength > BUFFER_SIZE / 2) {
+                    return end; // garbage after the last good record
+                }
+                if (buffer.remaining() < HEADER_SIZE + bodyLength) {
+                    break; // the rest of the record is not read yet
+                }
+                check.reset();
+                check.update(buffer.array(), start + HEADER_SIZE, bodyLength);
+                if ((int) check.getValue() != expected) {
+                    return end;
+                }
+                buffer.position(start + HEADER_SIZE);
+                apply(buffer, structure);
+                buffer.position(start + HEADER_SIZE + bodyLength);
+                position += HEADER_SIZE + bodyLength;
+                end = position;
+            }
+            if (read < 0) {
+                return end;
+            }
+            buffer.compact();
+        }
+    }
+
+    /**
+     * Applies one record to a database.
+     *
+     * @param record    : the record, positioned at its type byte.
+     * @param structure : the database.
+     */
+    private static void apply(ByteBuffer record, CCDatabase structure) {
+        byte type = record.get();
+        long accountNumber = record.getLong();
+        switch (type) {
+            case CREATE:
+                double creditLimit = record.getDouble();
+                double balance = record.getDouble();
+                String name = readText(record);
+                String address = readText(record);
+                structure.createAccount(accountNumber, name, address, creditLimit, balance);
+                break;
+            case DELETE:
+                structure.deleteAccount(accountNumber);
+                break;
+            case LIMIT:
+                structure.adjustCreditLimit(accountNumber, record.getDouble());
+                break;
+            case PURCHASE:
+                structure.purchase(accountNumber, record.getDouble());
+                break;
+            default:
+                break; // unknown records from a newer version are skipped
+        }
+    }
+
+    /**
+     * Reads a name or address of a record.
+     *
+     * @param record : the record, positioned at the length of the text.
+     * @return String : the text.
+     */
+    private static String readText(ByteBuffer record) {
+        int length = record.getShort() & 0xFFFF;
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+}